@@ -0,0 +1,135 @@
+package dev.paprikar.caching.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and latency percentiles of the get / put / remove operations
+ * of the cache engines under different workloads, capacities and capacity factors.
+ *
+ * <p>
+ * Every benchmark iterates over a precomputed key sequence (see {@link Workload}),
+ * so neither key generation nor boxing is included in the measurements.
+ * The cache is filled with the same sequence before the measurements.
+ *
+ * <p>
+ * Run with:<pre>
+ * ./mvnw -P benchmark test-compile exec:exec -Djmh.args="CacheBenchmark -p engine=LruCache -p workload=ZIPFIAN"</pre>
+ *
+ * @author paprikar
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The number of keys in the precomputed sequence. Must be a power of two.
+     */
+    static final int SEQUENCE_SIZE = 1 << 20;
+
+    static final int SEQUENCE_MASK = SEQUENCE_SIZE - 1;
+
+    @Param({"LruCache", "IntrusiveLruCache", "LfuCache", "ArrayLfuCache", "Cache.LRU", "Cache.LFU", "StripedCache.LRU",
+            "StripedCache.LFU", "WTinyLfuCache", "ArcCache", "S3FifoCache", "ClockProCache", "AdaptiveCache"})
+    String engine;
+
+    @Param({"1024", "65536"})
+    int capacity;
+
+    @Param({"1.0", "1.5", "2.0"})
+    float capacityFactor;
+
+    @Param({"HIT_HEAVY", "MISS_HEAVY", "UNIFORM", "ZIPFIAN", "SCAN"})
+    Workload workload;
+
+    ICache<Integer, Integer> cache;
+
+    Integer[] keys;
+
+    int index;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static ICache<Integer, Integer> newCache(String engine, int capacity, float capacityFactor) {
+        switch (engine) {
+            case "LruCache":
+                return new LruCache<>(capacity, capacityFactor);
+            case "IntrusiveLruCache":
+                return new IntrusiveLruCache<>(capacity, capacityFactor);
+            case "LfuCache":
+                return new LfuCache<>(capacity, capacityFactor);
+            case "ArrayLfuCache":
+                return new ArrayLfuCache<>(capacity, capacityFactor);
+            case "Cache.LRU":
+                return new Cache<>(capacity, capacityFactor, CacheDeletionStrategy.LRU, CacheConcurrencyMode.NONE);
+            case "Cache.LFU":
+                return new Cache<>(capacity, capacityFactor, CacheDeletionStrategy.LFU, CacheConcurrencyMode.NONE);
+            case "WTinyLfuCache":
+                return new WTinyLfuCache<>(capacity, capacityFactor);
+            case "ArcCache":
+                return new ArcCache<>(capacity, capacityFactor);
+            case "S3FifoCache":
+                return new S3FifoCache<>(capacity, capacityFactor);
+            case "ClockProCache":
+                return new ClockProCache<>(capacity, capacityFactor);
+            case "AdaptiveCache":
+                return new AdaptiveCache<>(capacity, capacityFactor);
+            case "StripedCache.LRU":
+                return new StripedCache<>(capacity, capacityFactor, CacheDeletionStrategy.LRU,
+                        StripedCache.DEFAULT_CONCURRENCY_LEVEL);
+            case "StripedCache.LFU":
+                return new StripedCache<>(capacity, capacityFactor, CacheDeletionStrategy.LFU,
+                        StripedCache.DEFAULT_CONCURRENCY_LEVEL);
+            default:
+                throw new IllegalArgumentException("Illegal engine: " + engine);
+        }
+    }
+
+    Integer nextKey() {
+        return keys[index++ & SEQUENCE_MASK];
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Benchmarks
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = newCache(engine, capacity, capacityFactor);
+        keys = workload.keys(capacity, SEQUENCE_SIZE);
+        for (Integer key : keys) {
+            cache.put(key, key);
+        }
+        index = 0;
+    }
+
+    @Benchmark
+    public Integer get() {
+        return cache.get(nextKey());
+    }
+
+    @Benchmark
+    public Integer put() {
+        Integer key = nextKey();
+        return cache.put(key, key);
+    }
+
+    /**
+     * Removes a key and puts it back, so that the occupancy of the cache stays the same.
+     */
+    @Benchmark
+    public Integer remove() {
+        Integer key = nextKey();
+        Integer value = cache.remove(key);
+        cache.put(key, key);
+        return value;
+    }
+}
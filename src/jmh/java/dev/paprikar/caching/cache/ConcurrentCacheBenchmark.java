@@ -0,0 +1,98 @@
+package dev.paprikar.caching.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of thread-safe caches shared between several threads.
+ * The {@code Synchronized.*} engines wrap a whole engine in a single global lock and are used as a baseline.
+ *
+ * <p>
+ * Run with:<pre>
+ * ./mvnw -P benchmark test-compile exec:exec -Djmh.args="ConcurrentCacheBenchmark -t 8"</pre>
+ *
+ * @author paprikar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ConcurrentCacheBenchmark {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final int SEQUENCE_SIZE = 1 << 20;
+
+    static final int SEQUENCE_MASK = SEQUENCE_SIZE - 1;
+
+    @Param({"Synchronized.LRU", "Synchronized.LFU", "StripedCache.LRU", "StripedCache.LFU",
+            "ConcurrentLruCache"})
+    String engine;
+
+    @Param({"65536"})
+    int capacity;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    Workload workload;
+
+    Map<Integer, Integer> cache;
+
+    Integer[] keys;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        int index = ThreadLocalRandom.current().nextInt(SEQUENCE_SIZE);
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static Map<Integer, Integer> newCache(String engine, int capacity) {
+        switch (engine) {
+            case "Synchronized.LRU":
+                return Collections.synchronizedMap(new LruCache<>(capacity));
+            case "Synchronized.LFU":
+                return Collections.synchronizedMap(new LfuCache<>(capacity));
+            case "StripedCache.LRU":
+                return new StripedCache<>(capacity, CacheDeletionStrategy.LRU);
+            case "StripedCache.LFU":
+                return new StripedCache<>(capacity, CacheDeletionStrategy.LFU);
+            case "ConcurrentLruCache":
+                return new ConcurrentLruCache<>(capacity);
+            default:
+                throw new IllegalArgumentException("Illegal engine: " + engine);
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Benchmarks
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = newCache(engine, capacity);
+        keys = workload.keys(capacity, SEQUENCE_SIZE);
+        for (Integer key : keys) {
+            cache.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public Integer get(ThreadState state) {
+        return cache.get(keys[state.index++ & SEQUENCE_MASK]);
+    }
+
+    @Benchmark
+    public Integer put(ThreadState state) {
+        Integer key = keys[state.index++ & SEQUENCE_MASK];
+        return cache.put(key, key);
+    }
+}
@@ -0,0 +1,91 @@
+package dev.paprikar.caching.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the caches with primitive {@code long} keys against the generic engines with boxed keys.
+ * The keys are generated as primitives, so the boxing cost of the generic engines is included.
+ *
+ * <p>
+ * Run with the allocation profiler:<pre>
+ * ./mvnw -P benchmark test-compile exec:exec -Djmh.args="LongCacheBenchmark -prof gc"</pre>
+ *
+ * @author paprikar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongCacheBenchmark {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final int SEQUENCE_SIZE = 1 << 20;
+
+    static final int SEQUENCE_MASK = SEQUENCE_SIZE - 1;
+
+    @Param({"LRU", "LFU"})
+    CacheDeletionStrategy strategy;
+
+    @Param({"65536"})
+    int capacity;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    Workload workload;
+
+    ILongCache<String> longCache;
+
+    ICache<Long, String> cache;
+
+    long[] keys;
+
+    String value;
+
+    int index;
+
+    /* ---------------------------------------------------------------- */
+    // Benchmarks
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        longCache = Cache.newLongCache(capacity, strategy);
+        cache = Cache.newEngine(capacity, Cache.DEFAULT_CAPACITY_FACTOR, strategy);
+        int[] generated = workload.generate(capacity, SEQUENCE_SIZE, new Random(Workload.SEED));
+        keys = new long[SEQUENCE_SIZE];
+        for (int i = 0; i < SEQUENCE_SIZE; i++) {
+            // spread the keys over the whole long range, like real identifiers
+            keys[i] = generated[i] * 0x9E3779B97F4A7C15L;
+        }
+        value = "value";
+        for (long key : keys) {
+            longCache.put(key, value);
+            cache.put(key, value);
+        }
+    }
+
+    @Benchmark
+    public String primitiveGet() {
+        return longCache.get(keys[index++ & SEQUENCE_MASK]);
+    }
+
+    @Benchmark
+    public String primitivePut() {
+        return longCache.put(keys[index++ & SEQUENCE_MASK], value);
+    }
+
+    @Benchmark
+    public String boxedGet() {
+        return cache.get(keys[index++ & SEQUENCE_MASK]);
+    }
+
+    @Benchmark
+    public String boxedPut() {
+        return cache.put(keys[index++ & SEQUENCE_MASK], value);
+    }
+}
@@ -0,0 +1,120 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Random;
+
+/**
+ * Key access patterns used by the benchmarks.
+ * Each workload produces a fixed sequence of keys relative to the cache capacity,
+ * so that the same sequence is replayed against every engine.
+ *
+ * @author paprikar
+ */
+public enum Workload {
+
+    /**
+     * Uniform keys over half of the capacity: almost every access is a hit.
+     */
+    HIT_HEAVY {
+        int[] generate(int capacity, int count, Random random) {
+            return uniform(Math.max(1, capacity / 2), count, random);
+        }
+    },
+
+    /**
+     * Uniform keys over sixteen times the capacity: almost every access is a miss.
+     */
+    MISS_HEAVY {
+        int[] generate(int capacity, int count, Random random) {
+            return uniform(capacity * 16, count, random);
+        }
+    },
+
+    /**
+     * Uniform keys over twice the capacity: about a half of accesses are hits.
+     */
+    UNIFORM {
+        int[] generate(int capacity, int count, Random random) {
+            return uniform(capacity * 2, count, random);
+        }
+    },
+
+    /**
+     * Zipfian (s = 0.99) keys over sixteen times the capacity: a small set of hot keys.
+     */
+    ZIPFIAN {
+        int[] generate(int capacity, int count, Random random) {
+            return zipfian(capacity * 16, 0.99, count, random);
+        }
+    },
+
+    /**
+     * Cyclic sequential scan over four times the capacity: the worst case for recency based policies.
+     */
+    SCAN {
+        int[] generate(int capacity, int count, Random random) {
+            int range = capacity * 4;
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = i % range;
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * The seed used to generate key sequences, so that runs are reproducible.
+     */
+    static final long SEED = 0x5DEECE66DL;
+
+    abstract int[] generate(int capacity, int count, Random random);
+
+    /**
+     * Generates a sequence of keys for the specified capacity.
+     *
+     * @param capacity the cache capacity.
+     * @param count    the number of keys in the sequence.
+     * @return the key sequence.
+     */
+    public final Integer[] keys(int capacity, int count) {
+        int[] keys = generate(capacity, count, new Random(SEED));
+        Integer[] boxed = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            boxed[i] = keys[i];
+        }
+        return boxed;
+    }
+
+    static int[] uniform(int range, int count, Random random) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = random.nextInt(range);
+        }
+        return keys;
+    }
+
+    static int[] zipfian(int range, double skew, int count, Random random) {
+        // cumulative distribution of the ranks
+        double[] cdf = new double[range];
+        double sum = 0;
+        for (int i = 0; i < range; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            double u = random.nextDouble() * sum;
+            int low = 0;
+            int high = range - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cdf[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            keys[i] = low;
+        }
+        return keys;
+    }
+}
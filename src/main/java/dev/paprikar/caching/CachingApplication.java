@@ -2,8 +2,10 @@ package dev.paprikar.caching;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
+@EnableCaching
 public class CachingApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,499 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The base of the caches with primitive {@code long} keys.
+ * The entries are stored in parallel arrays ({@code keys[]} and {@code values[]}) indexed by slot,
+ * the slots are located by {@link LongIndex}, and the freed slots are reused through a stack of free slots.
+ * The eviction order of the slots is maintained by the subclass.
+ *
+ * <p>
+ * All the arrays are allocated in constructor, so the primitive operations
+ * neither box the keys nor allocate memory. {@code null} keys are not supported
+ * by the {@link Map} operations.
+ *
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+abstract class AbstractLongCache<V> implements ILongCache<V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The absent slot.
+     */
+    static final int NIL = -1;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The keys, per slot.
+     */
+    final long[] keys;
+
+    /**
+     * The values, per slot.
+     */
+    final Object[] values;
+
+    /**
+     * The index for locating the slots of keys.
+     */
+    final LongIndex index;
+
+    /**
+     * The stack of free slots.
+     */
+    final int[] freeSlots;
+
+    /**
+     * The number of free slots in the stack.
+     */
+    int freeCount;
+
+    /**
+     * The number of never used slots, which follow the used ones.
+     */
+    int nextUnused;
+
+    /**
+     * The number of entries.
+     */
+    int size;
+
+    /**
+     * The number of times this cache has been structurally modified.
+     * This field is used to make iterators on Collection-views of the cache fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<Long> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> valuesView;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<Long, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Eviction order
+
+    /**
+     * Adds the new slot to the eviction order.
+     */
+    abstract void onAdd(int slot);
+
+    /**
+     * Records the access to the slot.
+     */
+    abstract void onAccess(int slot);
+
+    /**
+     * Removes the slot from the eviction order.
+     */
+    abstract void onRemove(int slot);
+
+    /**
+     * Returns the next slot to evict.
+     */
+    abstract int victim();
+
+    /**
+     * Returns the slot following the specified one in the eviction order, or {@link #NIL}.
+     */
+    abstract int nextSlot(int slot);
+
+    /**
+     * Removes all slots from the eviction order.
+     */
+    abstract void onClear();
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    int allocateSlot() {
+        return freeCount > 0 ? freeSlots[--freeCount] : nextUnused++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    final class SlotEntry implements Map.Entry<Long, V> {
+
+        final int slot;
+        final long key;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = keys[slot];
+        }
+
+        public Long getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return valueAt(slot);
+        }
+
+        public V setValue(V value) {
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Long.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(getValue(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    final class KeySet extends AbstractSet<Long> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            AbstractLongCache.this.clear();
+        }
+
+        public Iterator<Long> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            if (containsKey(key)) {
+                AbstractLongCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super Long> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = victim(); s != NIL; s = nextSlot(s)) {
+                action.accept(keys[s]);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            AbstractLongCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = victim(); s != NIL; s = nextSlot(s)) {
+                action.accept(valueAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<Long, V>> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            AbstractLongCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<Long, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            if (!(key instanceof Long)) {
+                return false;
+            }
+            int slot = index.find((Long) key, keys);
+            return slot >= 0 && Objects.equals(e.getValue(), values[slot]);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                AbstractLongCache.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        int next;
+        int current;
+        int expectedModCount;
+
+        final int nextSlotIndex() {
+            int slot = next;
+            if (slot == NIL) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = slot;
+            next = nextSlot(slot);
+            return slot;
+        }
+
+        public CacheIterator() {
+            next = victim();
+            current = NIL;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != NIL;
+        }
+
+        public final void remove() {
+            int slot = current;
+            if (slot == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = NIL;
+            AbstractLongCache.this.remove(keys[slot]);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<Long> {
+        public final Long next() {
+            return keys[nextSlotIndex()];
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return valueAt(nextSlotIndex());
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<Long, V>> {
+        public final Map.Entry<Long, V> next() {
+            return new SlotEntry(nextSlotIndex());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a cache with the specified capacity and capacity factor.
+     * The index is created with the power of two length not less than {@code capacity * capacityFactor}
+     * and large enough to keep its load factor not greater than 0.75.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    AbstractLongCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        index = new LongIndex(capacity, capacityFactor);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return index.find(key, keys) >= 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey((long) (Long) key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (int s = victim(); s != NIL; s = nextSlot(s)) {
+            if (Objects.equals(value, values[s]))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(long key) {
+        int slot = index.find(key, keys);
+        if (slot < 0) {
+            return null;
+        }
+        onAccess(slot);
+        modCount++;
+        return valueAt(slot);
+    }
+
+    public V get(Object key) {
+        return key instanceof Long ? get((long) (Long) key) : null;
+    }
+
+    public V put(long key, V value) {
+        int slot = index.find(key, keys);
+        if (slot >= 0) {
+            // key is already added
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            onAccess(slot);
+            modCount++;
+            return oldValue;
+        }
+        if (size >= capacity) {
+            // do eviction, reusing the slot of the victim
+            slot = victim();
+            index.remove(keys[slot], keys);
+            onRemove(slot);
+            size--;
+        } else {
+            slot = allocateSlot();
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        index.insert(key, slot);
+        onAdd(slot);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    public V remove(long key) {
+        int slot = index.remove(key, keys);
+        if (slot < 0) {
+            return null;
+        }
+        onRemove(slot);
+        V value = valueAt(slot);
+        values[slot] = null;
+        freeSlots[freeCount++] = slot;
+        size--;
+        modCount++;
+        return value;
+    }
+
+    public V remove(Object key) {
+        return key instanceof Long ? remove((long) (Long) key) : null;
+    }
+
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        for (Map.Entry<? extends Long, ? extends V> e : m.entrySet()) {
+            Long k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        index.clear();
+        onClear();
+        Arrays.fill(values, null);
+        freeCount = 0;
+        nextUnused = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public Set<Long> keySet() {
+        Set<Long> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = valuesView) == null ?
+                (valuesView = new Values()) : v;
+    }
+
+    public Set<Map.Entry<Long, V>> entrySet() {
+        Set<Map.Entry<Long, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,493 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+
+/**
+ * This implementation chooses between the LRU and LFU policies at runtime. It uses the following data structures:
+ * <ul>
+ *     <li>the engine - an {@link LruCache} or an {@link LfuCache} that stores the entries.</li>
+ *     <li>two shadow caches, an {@link LruCache} and an {@link LfuCache}, that store only the sampled keys
+ *     (a fixed subset of the keys selected by hash) and have the same part of the capacity.</li>
+ * </ul>
+ *
+ * <p>
+ * Every operation on a sampled key is repeated on both shadow caches, and the hits of the shadow caches
+ * are counted. When the number of the sampled reads reaches the window size, the hit counts are compared,
+ * and then all the counts are halved, so that the recent reads weigh more than the older ones.
+ * If the other policy has more hits than the current one by at least {@link #SWITCH_THRESHOLD} of the reads,
+ * the engine is replaced by a new one of the other policy, and all the entries are moved to it
+ * in the eviction order of the old engine: the next victims of the old engine stay the first victims.
+ * The capacity of the engines is the same, so no entry is dropped by the switch.
+ *
+ * <p>
+ * The sampled keys take a sixteenth of the capacity of a large cache, or all the capacity of a small one.
+ * The operations take the time of the engine operations, plus the shadow operations for the sampled keys,
+ * plus an {@code O(n)} time of the switch, which is amortized as the switch happens at most once per
+ * half of the window, and the window is ten times the capacity of the shadow caches.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class AdaptiveCache<K, V> implements CacheEngine<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The maximum binary logarithm of the ratio of all keys to the sampled ones.
+     */
+    static final int MAX_SAMPLE_SHIFT = 4;
+
+    /**
+     * The minimum capacity of the shadow caches, unless the cache capacity is less.
+     */
+    static final int MIN_SHADOW_CAPACITY = 256;
+
+    /**
+     * The multiplier of the shadow capacity used as the number of the sampled reads per window.
+     */
+    static final int WINDOW_FACTOR = 10;
+
+    /**
+     * The part of the sampled reads which the other policy has to hit more to be switched to.
+     */
+    static final double SWITCH_THRESHOLD = 0.02;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The capacity factor of the engines.
+     */
+    final float capacityFactor;
+
+    /**
+     * The binary logarithm of the ratio of all keys to the sampled ones.
+     */
+    final int sampleShift;
+
+    /**
+     * The number of the sampled reads after which the policies are compared.
+     */
+    final int windowSize;
+
+    /**
+     * The shadow LRU cache of the sampled keys.
+     */
+    final LruCache<Object, Boolean> lruShadow;
+
+    /**
+     * The shadow LFU cache of the sampled keys.
+     */
+    final LfuCache<Object, Boolean> lfuShadow;
+
+    /**
+     * The number of the sampled reads, halved after every comparison.
+     */
+    int sampledReads;
+
+    /**
+     * The number of the hits of the shadow LRU cache, halved after every comparison.
+     */
+    int lruHits;
+
+    /**
+     * The number of the hits of the shadow LFU cache, halved after every comparison.
+     */
+    int lfuHits;
+
+    /**
+     * The engine, an {@link LruCache} or an {@link LfuCache}.
+     */
+    CacheEngine<K, V> cache;
+
+    /**
+     * The policy of the engine, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     */
+    CacheDeletionStrategy strategy;
+
+    /**
+     * The number of times the engine has been replaced.
+     * This field is used to make iterators on Collection-views of the {@link AdaptiveCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int switchCount;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    boolean isSampled(Object key) {
+        // the high bits of the hash, so that the sample does not depend on the buckets of the engine
+        return sampleShift == 0 || (Objects.hashCode(key) * 0x9E3779B9) >>> (32 - sampleShift) == 0;
+    }
+
+    CacheEngine<K, V> newEngine(CacheDeletionStrategy strategy) {
+        if (strategy == CacheDeletionStrategy.LRU) {
+            return new LruCache<>(capacity, capacityFactor);
+        }
+        return new LfuCache<>(capacity, capacityFactor);
+    }
+
+    /**
+     * Passes the listeners and the statistics of this cache to the engine.
+     */
+    void configure(CacheEngine<K, V> engine) {
+        engine.setEvictionListener(evictionListener);
+        engine.setRemovalListener(removalListener);
+        engine.setStatsCounter(statsCounter);
+    }
+
+    void onSampledRead(Object key) {
+        if (lruShadow.get(key) != null) {
+            lruHits++;
+        }
+        if (lfuShadow.get(key) != null) {
+            lfuHits++;
+        }
+        if (++sampledReads >= windowSize) {
+            int currentHits = strategy == CacheDeletionStrategy.LRU ? lruHits : lfuHits;
+            int otherHits = strategy == CacheDeletionStrategy.LRU ? lfuHits : lruHits;
+            if (otherHits - currentHits >= sampledReads * SWITCH_THRESHOLD) {
+                switchTo(strategy == CacheDeletionStrategy.LRU ? CacheDeletionStrategy.LFU : CacheDeletionStrategy.LRU);
+            }
+            sampledReads >>= 1;
+            lruHits >>= 1;
+            lfuHits >>= 1;
+        }
+    }
+
+    /**
+     * Moves all the entries to a new engine of the specified policy in the eviction order of the current engine.
+     */
+    void switchTo(CacheDeletionStrategy strategy) {
+        CacheEngine<K, V> engine = newEngine(strategy);
+        for (Map.Entry<K, V> e : cache.entrySet()) {
+            engine.put(e.getKey(), e.getValue());
+        }
+        // the moved entries are neither put nor removed by the user
+        configure(engine);
+        cache = engine;
+        this.strategy = strategy;
+        switchCount++;
+    }
+
+    final class SwitchCheckingIterator<T> implements Iterator<T> {
+
+        final Iterator<T> iterator;
+        final int expectedSwitchCount;
+
+        SwitchCheckingIterator(Iterator<T> iterator) {
+            this.iterator = iterator;
+            expectedSwitchCount = switchCount;
+        }
+
+        void checkSwitch() {
+            if (switchCount != expectedSwitchCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean hasNext() {
+            checkSwitch();
+            return iterator.hasNext();
+        }
+
+        public T next() {
+            checkSwitch();
+            return iterator.next();
+        }
+
+        public void remove() {
+            checkSwitch();
+            iterator.remove();
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            AdaptiveCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new SwitchCheckingIterator<>(cache.keySet().iterator());
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            if (containsKey(key)) {
+                AdaptiveCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            AdaptiveCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new SwitchCheckingIterator<>(cache.values().iterator());
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            AdaptiveCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new SwitchCheckingIterator<>(cache.entrySet().iterator());
+        }
+
+        public final boolean contains(Object o) {
+            return cache.entrySet().contains(o);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                AdaptiveCache.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link AdaptiveCache} with the specified capacity and capacity factor,
+     * which starts with the LRU policy.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public AdaptiveCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1.0f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        this.capacityFactor = capacityFactor;
+        int shift = 0;
+        while (shift < MAX_SAMPLE_SHIFT && capacity >> (shift + 1) >= MIN_SHADOW_CAPACITY) {
+            shift++;
+        }
+        sampleShift = shift;
+        int shadowCapacity = capacity >> shift;
+        windowSize = shadowCapacity * WINDOW_FACTOR;
+        lruShadow = new LruCache<>(shadowCapacity, capacityFactor);
+        lfuShadow = new LfuCache<>(shadowCapacity, capacityFactor);
+        strategy = CacheDeletionStrategy.LRU;
+        cache = newEngine(strategy);
+    }
+
+    /**
+     * Constructs a {@link AdaptiveCache} with the specified capacity and the default capacity factor (1.5),
+     * which starts with the LRU policy.
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public AdaptiveCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    /**
+     * Returns the current policy.
+     *
+     * @return {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     */
+    public CacheDeletionStrategy strategy() {
+        return strategy;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        return cache.containsValue(value);
+    }
+
+    public V get(Object key) {
+        V value = cache.get(key);
+        if (isSampled(key)) {
+            onSampledRead(key);
+        }
+        return value;
+    }
+
+    public V put(K key, V value) {
+        if (isSampled(key)) {
+            lruShadow.put(key, Boolean.TRUE);
+            lfuShadow.put(key, Boolean.TRUE);
+        }
+        return cache.put(key, value);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        if (isSampled(key)) {
+            lruShadow.remove(key);
+            lfuShadow.remove(key);
+        }
+        return cache.remove(key);
+    }
+
+    public V discard(Object key) {
+        if (isSampled(key)) {
+            lruShadow.remove(key);
+            lfuShadow.remove(key);
+        }
+        return cache.discard(key);
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+        cache.setRemovalListener(listener);
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+        cache.setEvictionListener(listener);
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+        cache.setStatsCounter(statsCounter);
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+            configure(cache);
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+        lruShadow.clear();
+        lfuShadow.clear();
+        sampledReads = 0;
+        lruHits = 0;
+        lfuHits = 0;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,770 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation of the Adaptive Replacement Cache (ARC) policy uses the following data structures:
+ * <ul>
+ *     <li>two doubly linked lists of nodes of type {@link Node} in the recency order:
+ *     {@code T1} - the entries seen once recently, and {@code T2} - the entries seen at least twice.</li>
+ *     <li>{@code HashMap<KEY, Node>} - to store information
+ *     about the keys and corresponding nodes.</li>
+ *     <li>two {@code LinkedHashSet<KEY>} ghost lists in the order of eviction: {@code B1} - the keys
+ *     recently evicted from {@code T1}, and {@code B2} - the keys recently evicted from {@code T2}.</li>
+ * </ul>
+ *
+ * <p>
+ * A new entry is added to {@code T1}, a hit moves the entry to the end of {@code T2}.
+ * The target size {@code p} of {@code T1} decides which list loses its least recently used entry
+ * when the cache is full, the key of the evicted entry is remembered in the corresponding ghost list.
+ * A put of a key found in {@code B1} means that {@code T1} was too small, so {@code p} grows,
+ * and a put of a key found in {@code B2} shrinks it. In both cases the entry is added to {@code T2}.
+ * So the cache adapts itself between the recency-heavy and the frequency-heavy workloads.
+ *
+ * <p>
+ * The ghost lists hold only the keys, and together with the cached entries hold at most
+ * twice the capacity of keys. All this allows to perform add / get / remove operations
+ * in a constant {@code O(1)} time.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class ArcCache<K, V> implements CacheEngine<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    static final byte T1 = 0;
+    static final byte T2 = 1;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The map for mapping keys and related nodes.
+     */
+    final Map<K, Node<K, V>> cache;
+
+    /**
+     * The entries seen once recently.
+     */
+    final AccessOrderDeque<K, V> recent;
+
+    /**
+     * The entries seen at least twice recently.
+     */
+    final AccessOrderDeque<K, V> frequent;
+
+    /**
+     * The keys evicted from {@link #recent}, the eldest first.
+     */
+    final Set<K> recentGhosts;
+
+    /**
+     * The keys evicted from {@link #frequent}, the eldest first.
+     */
+    final Set<K> frequentGhosts;
+
+    /**
+     * The adaptive target size of {@link #recent}.
+     */
+    int target;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * The number of times this {@link ArcCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link ArcCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static class Node<K, V> implements Map.Entry<K, V> {
+
+        final K key;
+        V value;
+        byte queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        public Node(K key, V value, byte queue) {
+            this.key = key;
+            this.value = value;
+            this.queue = queue;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes in the recency order, the head is the least recently used one.
+     */
+    static final class AccessOrderDeque<K, V> {
+
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        void addLast(Node<K, V> node) {
+            Node<K, V> t = tail;
+            node.prev = t;
+            node.next = null;
+            if (t == null) {
+                head = node;
+            } else {
+                t.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> p = node.prev;
+            Node<K, V> n = node.next;
+            if (p == null) {
+                head = n;
+            } else {
+                p.next = n;
+                node.prev = null;
+            }
+            if (n == null) {
+                tail = p;
+            } else {
+                n.prev = p;
+                node.next = null;
+            }
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    AccessOrderDeque<K, V> dequeOf(Node<K, V> node) {
+        return node.queue == T1 ? recent : frequent;
+    }
+
+    void onHit(Node<K, V> node) {
+        if (node.queue == T1) {
+            recent.remove(node);
+            node.queue = T2;
+            frequent.addLast(node);
+        } else {
+            frequent.moveToLast(node);
+        }
+    }
+
+    static <K> void removeEldest(Set<K> ghosts) {
+        Iterator<K> it = ghosts.iterator();
+        it.next();
+        it.remove();
+    }
+
+    void evictNode(Node<K, V> node) {
+        dequeOf(node).remove(node);
+        cache.remove(node.key);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        if (evictionListener != null) {
+            evictionListener.onEviction(node.key, node.value);
+        }
+        notifyRemoval(node.key, node.value, RemovalCause.SIZE);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of {@code T1} or {@code T2}, whichever exceeds its target size,
+     * and remembers its key in the ghost list.
+     *
+     * @param frequentGhostHit whether the new key was found in {@code B2}.
+     */
+    void replace(boolean frequentGhostHit) {
+        Node<K, V> victim;
+        if (recent.size > 0 && (recent.size > target || (frequentGhostHit && recent.size == target)
+                || frequent.size == 0)) {
+            victim = recent.head;
+            recentGhosts.add(victim.key);
+        } else {
+            victim = frequent.head;
+            frequentGhosts.add(victim.key);
+        }
+        evictNode(victim);
+    }
+
+    /**
+     * Makes room for the new key, adapting the target size if the key was found in a ghost list,
+     * and returns the list of the new node.
+     */
+    byte admit(K key) {
+        if (recentGhosts.remove(key)) {
+            int delta = Math.max(frequentGhosts.size() / (recentGhosts.size() + 1), 1);
+            target = Math.min(capacity, target + delta);
+            if (cache.size() >= capacity) {
+                replace(false);
+            }
+            return T2;
+        }
+        if (frequentGhosts.remove(key)) {
+            int delta = Math.max(recentGhosts.size() / (frequentGhosts.size() + 1), 1);
+            target = Math.max(0, target - delta);
+            if (cache.size() >= capacity) {
+                replace(true);
+            }
+            return T2;
+        }
+        if (recent.size + recentGhosts.size() >= capacity) {
+            if (recent.size < capacity) {
+                removeEldest(recentGhosts);
+                if (cache.size() >= capacity) {
+                    replace(false);
+                }
+            } else {
+                // T1 fills the whole cache, its eldest entry is not worth remembering
+                evictNode(recent.head);
+            }
+        } else if (cache.size() + recentGhosts.size() + frequentGhosts.size() >= capacity) {
+            if (cache.size() + recentGhosts.size() + frequentGhosts.size() >= 2 * capacity) {
+                removeEldest(frequentGhosts);
+            }
+            if (cache.size() >= capacity) {
+                replace(false);
+            }
+        }
+        return T1;
+    }
+
+    Node<K, V> nextNode(Node<K, V> node) {
+        if (node.next != null) {
+            return node.next;
+        }
+        return node.queue == T1 ? frequent.head : null;
+    }
+
+    Node<K, V> firstNode() {
+        return recent.head != null ? recent.head : frequent.head;
+    }
+
+    @SuppressWarnings("unchecked")
+    final <T> T[] prepareArray(T[] a) {
+        int size = cache.size();
+        if (a.length < size) {
+            return (T[]) java.lang.reflect.Array.
+                    newInstance(a.getClass().getComponentType(), size);
+        }
+        if (a.length > size) {
+            a[size] = null;
+        }
+        return a;
+    }
+
+    final <T> T[] keysToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.key;
+        }
+        return a;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ArcCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return ArcCache.this.remove(key) != null;
+        }
+
+        public Object[] toArray() {
+            return keysToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return keysToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.key);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final <T> T[] valuesToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.value;
+        }
+        return a;
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ArcCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public Object[] toArray() {
+            return valuesToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return valuesToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.value);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ArcCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> candidate = cache.get(key);
+            return Objects.equals(e, candidate);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> node = cache.get(key);
+            if (node == null) {
+                return false;
+            }
+            Object value = e.getValue();
+            if (Objects.equals(value, node.value)) {
+                ArcCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super Entry<K, V>> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        Node<K, V> next;
+        Node<K, V> current;
+        int expectedModCount;
+
+        final Node<K, V> nextNode() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = node;
+            next = ArcCache.this.nextNode(node);
+            return node;
+        }
+
+        public CacheIterator() {
+            next = firstNode();
+            current = null;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final void remove() {
+            Node<K, V> node = current;
+            if (node == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = null;
+            ArcCache.this.remove(node.key);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link ArcCache} with the specified capacity and capacity factor.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     * The ghost lists are sized for the capacity keys each.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public ArcCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        int hashMapCapacity = (int) (capacity * capacityFactor);
+        cache = new HashMap<>(hashMapCapacity, 1f);
+        recent = new AccessOrderDeque<>();
+        frequent = new AccessOrderDeque<>();
+        recentGhosts = new LinkedHashSet<>(hashMapCapacity, 1f);
+        frequentGhosts = new LinkedHashSet<>(hashMapCapacity, 1f);
+    }
+
+    /**
+     * Constructs a {@link ArcCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ArcCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            if (Objects.equals(value, n.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Node<K, V> node;
+        if ((node = cache.get(key)) == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        onHit(node);
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        V oldValue;
+        Node<K, V> node = cache.get(key);
+        if (node == null) {
+            oldValue = null;
+            Node<K, V> newNode = new Node<>(key, value, admit(key));
+            cache.put(key, newNode);
+            dequeOf(newNode).addLast(newNode);
+        } else {
+            // key is already added
+            oldValue = node.value;
+            node.value = value;
+            onHit(node);
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        modCount++;
+        return oldValue;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        dequeOf(node).remove(node);
+        modCount++;
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    public V discard(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        dequeOf(node).remove(node);
+        modCount++;
+        return node.value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the adaptive target size of the list of the entries seen once recently.
+     *
+     * @return the target size, from zero to the capacity.
+     */
+    public int target() {
+        return target;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        List<Node<K, V>> removed = removalListener == null ? null : new ArrayList<>(cache.values());
+        cache.clear();
+        recent.clear();
+        frequent.clear();
+        recentGhosts.clear();
+        frequentGhosts.clear();
+        target = 0;
+        modCount++;
+        if (removed != null) {
+            for (Node<K, V> node : removed) {
+                removalListener.onRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,495 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation is an LFU cache without per-entry objects. It uses the following data structures:
+ * <ul>
+ *     <li>parallel arrays {@code keys[]}, {@code values[]} and {@code hashes[]} indexed by slot.</li>
+ *     <li>{@link ObjectIndex} - an open addressing index that maps keys to slots.</li>
+ *     <li>{@link FrequencyBuckets} - a list of frequency buckets with index-based links
+ *     ({@code int frequency[]} per bucket, {@code int prev[]}, {@code int next[]} per slot).</li>
+ *     <li>a stack of free slots, so the slots of removed entries are reused.</li>
+ * </ul>
+ *
+ * <p>
+ * Compared to {@link LfuCache}, an entry costs about 24 bytes in the arrays and the index
+ * instead of a {@code LfuCache.Node} and a {@code HashMap.Node}, and no frequency is ever boxed.
+ * All the arrays are allocated in constructor, so the get / put / remove operations do not allocate memory.
+ * The eviction order is the same as the one of {@link LfuCache}.
+ *
+ * <p>
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class ArrayLfuCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The absent slot.
+     */
+    static final int NIL = FrequencyBuckets.NIL;
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The keys, per slot.
+     */
+    final Object[] keys;
+
+    /**
+     * The values, per slot.
+     */
+    final Object[] values;
+
+    /**
+     * The spread hashes of the keys, per slot.
+     */
+    final int[] hashes;
+
+    /**
+     * The index for locating the slots of keys.
+     */
+    final ObjectIndex index;
+
+    /**
+     * The frequencies of the slots.
+     */
+    final FrequencyBuckets buckets;
+
+    /**
+     * The stack of free slots.
+     */
+    final int[] freeSlots;
+
+    /**
+     * The number of free slots in the stack.
+     */
+    int freeCount;
+
+    /**
+     * The number of never used slots, which follow the used ones.
+     */
+    int nextUnused;
+
+    /**
+     * The number of entries.
+     */
+    int size;
+
+    /**
+     * The number of times this {@link ArrayLfuCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link ArrayLfuCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> valuesView;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    int find(Object key) {
+        return index.find(key, ObjectIndex.hash(key), keys, hashes);
+    }
+
+    void releaseSlot(int slot) {
+        keys[slot] = null;
+        values[slot] = null;
+        freeSlots[freeCount++] = slot;
+    }
+
+    final class SlotEntry implements Map.Entry<K, V> {
+
+        final int slot;
+        final K key;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = keyAt(slot);
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return valueAt(slot);
+        }
+
+        public V setValue(V value) {
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(getValue(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            ArrayLfuCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            if (containsKey(key)) {
+                ArrayLfuCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = buckets.victim(); s != NIL; s = buckets.nextSlot(s)) {
+                action.accept(keyAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            ArrayLfuCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = buckets.victim(); s != NIL; s = buckets.nextSlot(s)) {
+                action.accept(valueAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            ArrayLfuCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int slot = find(e.getKey());
+            return slot >= 0 && Objects.equals(e.getValue(), values[slot]);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                ArrayLfuCache.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        int next;
+        int current;
+        int expectedModCount;
+
+        final int nextSlot() {
+            int slot = next;
+            if (slot == NIL) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = slot;
+            next = buckets.nextSlot(slot);
+            return slot;
+        }
+
+        public CacheIterator() {
+            next = buckets.victim();
+            current = NIL;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != NIL;
+        }
+
+        public final void remove() {
+            int slot = current;
+            if (slot == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = NIL;
+            ArrayLfuCache.this.remove(keys[slot]);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return keyAt(nextSlot());
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return valueAt(nextSlot());
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return new SlotEntry(nextSlot());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link ArrayLfuCache} with the specified capacity and capacity factor.
+     * The index is created with the power of two length not less than {@code capacity * capacityFactor}
+     * and large enough to keep its load factor not greater than 0.75.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public ArrayLfuCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        index = new ObjectIndex(capacity, capacityFactor);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        buckets = new FrequencyBuckets(capacity);
+        freeSlots = new int[capacity];
+    }
+
+    /**
+     * Constructs a {@link ArrayLfuCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ArrayLfuCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        for (int s = buckets.victim(); s != NIL; s = buckets.nextSlot(s)) {
+            if (Objects.equals(value, values[s]))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        buckets.increment(slot);
+        modCount++;
+        return valueAt(slot);
+    }
+
+    public V put(K key, V value) {
+        int hash = ObjectIndex.hash(key);
+        int slot = index.find(key, hash, keys, hashes);
+        if (slot >= 0) {
+            // key is already added
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            buckets.increment(slot);
+            modCount++;
+            return oldValue;
+        }
+        if (size >= capacity) {
+            // do eviction, reusing the slot of the victim
+            slot = buckets.victim();
+            index.remove(keys[slot], hashes[slot], keys, hashes);
+            buckets.remove(slot);
+            size--;
+        } else {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : nextUnused++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+        index.insert(hash, slot);
+        buckets.add(slot);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    public V remove(Object key) {
+        int slot = index.remove(key, ObjectIndex.hash(key), keys, hashes);
+        if (slot < 0) {
+            return null;
+        }
+        buckets.remove(slot);
+        V value = valueAt(slot);
+        releaseSlot(slot);
+        size--;
+        modCount++;
+        return value;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        index.clear();
+        buckets.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        freeCount = 0;
+        nextUnused = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = valuesView) == null ?
+                (valuesView = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
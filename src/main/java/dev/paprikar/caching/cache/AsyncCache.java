@@ -0,0 +1,322 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An asynchronous cache which stores the {@link CompletableFuture} of the values
+ * and runs the loads of the missing keys on an {@link Executor}.
+ * It uses a {@link StripedCache} of the specified deletion strategy to store the entries,
+ * so all operations are thread-safe and never wait for a load.
+ *
+ * <p>
+ * A missing key is loaded once: the future of the load is stored before the load starts,
+ * so the concurrent reads of the key share it. A failed load, or a load returning {@code null},
+ * is removed from the cache, and the next read starts a new one.
+ *
+ * <p>
+ * If the refresh-after-write interval is set, the first read of an entry older than the interval
+ * returns the current value and starts a reload in the background, which replaces the value when it completes.
+ * If the load deadline is set, a load running longer than the deadline is abandoned:
+ * the future of a missing key fails with {@link TimeoutException}, and a refreshed entry keeps
+ * serving the stale value until a later read starts a new reload.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class AsyncCache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The cache holding the entries.
+     */
+    final StripedCache<K, Node<V>> cache;
+
+    /**
+     * The loader of the values.
+     */
+    final CacheLoader<? super K, ? extends V> loader;
+
+    /**
+     * The executor running the loads.
+     */
+    final Executor executor;
+
+    /**
+     * The refresh-after-write interval in nanoseconds.
+     */
+    final long refreshAfterWriteNanos;
+
+    /**
+     * The load deadline in nanoseconds.
+     */
+    final long loadTimeoutNanos;
+
+    /**
+     * The source of the time.
+     */
+    final Ticker ticker;
+
+    /**
+     * The recorder of the loads, or {@code null} if the statistics are disabled.
+     */
+    volatile StatsCounter loadStats;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static final class Node<V> {
+
+        final CompletableFuture<V> future;
+
+        /**
+         * The time of the write of the value.
+         */
+        final long writeTime;
+
+        /**
+         * Whether the value is being reloaded.
+         */
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Node(CompletableFuture<V> future, long writeTime) {
+            this.future = future;
+            this.writeTime = writeTime;
+        }
+
+        boolean isLoaded() {
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+    }
+
+    /**
+     * Holds the scheduler of the load deadlines, which is started on first use.
+     */
+    static final class Deadlines {
+
+        static final ScheduledThreadPoolExecutor SCHEDULER;
+
+        static {
+            SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "async-cache-deadlines");
+                thread.setDaemon(true);
+                return thread;
+            });
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Starts the load of the key on the executor and returns its future,
+     * which fails with {@link TimeoutException} when the deadline passes.
+     */
+    CompletableFuture<V> load(K key) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (loadTimeoutNanos != ExpiringCache.NEVER) {
+            ScheduledFuture<?> deadline = Deadlines.SCHEDULER.schedule(() ->
+                    future.completeExceptionally(new TimeoutException("Load timed out: " + key)),
+                    loadTimeoutNanos, TimeUnit.NANOSECONDS);
+            future.whenComplete((v, e) -> deadline.cancel(false));
+        }
+        try {
+            executor.execute(() -> {
+                StatsCounter stats = loadStats;
+                long startTime = System.nanoTime();
+                try {
+                    V value = loader.load(key);
+                    if (stats != null) {
+                        stats.recordLoadSuccess(System.nanoTime() - startTime);
+                    }
+                    future.complete(value);
+                } catch (Throwable e) {
+                    if (stats != null) {
+                        stats.recordLoadFailure(System.nanoTime() - startTime);
+                    }
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Removes the node from the cache when its future fails or completes with {@code null}.
+     */
+    void removeOnFailure(K key, Node<V> node) {
+        node.future.whenComplete((v, e) -> {
+            if (e != null || v == null) {
+                cache.remove(key, node);
+            }
+        });
+    }
+
+    void refresh(K key, Node<V> node) {
+        load(key).whenComplete((v, e) -> {
+            if (e == null && v != null) {
+                // the value is dropped if the entry was replaced or removed during the reload
+                cache.replace(key, node, new Node<>(CompletableFuture.completedFuture(v), ticker.read()));
+            } else {
+                // keep serving the stale value
+                node.refreshing.set(false);
+            }
+        });
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link AsyncCache} with the specified capacity, deletion strategy, loader, executor,
+     * refresh-after-write interval, load deadline and the source of the time.
+     *
+     * @param capacity          the cache capacity.
+     * @param strategy          the deletion strategy.
+     * @param loader            the loader of the values, run on the executor.
+     * @param executor          the executor of the loads.
+     * @param refreshAfterWrite the duration since the write after which a read reloads the value in the background,
+     *                          or zero if the values are not refreshed.
+     * @param loadTimeout       the deadline of a load, or zero if the loads have no deadline.
+     * @param unit              the unit of the durations.
+     * @param ticker            the source of the time.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or a duration is negative.
+     */
+    public AsyncCache(int capacity, CacheDeletionStrategy strategy, CacheLoader<? super K, ? extends V> loader,
+                      Executor executor, long refreshAfterWrite, long loadTimeout, TimeUnit unit, Ticker ticker) {
+        this.refreshAfterWriteNanos = ExpiringCache.toNanos(refreshAfterWrite, unit);
+        this.loadTimeoutNanos = ExpiringCache.toNanos(loadTimeout, unit);
+        this.loader = Objects.requireNonNull(loader);
+        this.executor = Objects.requireNonNull(executor);
+        this.ticker = Objects.requireNonNull(ticker);
+        cache = new StripedCache<>(capacity, strategy);
+    }
+
+    /**
+     * Constructs a {@link AsyncCache} with the specified capacity, deletion strategy, loader, executor,
+     * refresh-after-write interval and load deadline.
+     *
+     * @param capacity          the cache capacity.
+     * @param strategy          the deletion strategy.
+     * @param loader            the loader of the values, run on the executor.
+     * @param executor          the executor of the loads.
+     * @param refreshAfterWrite the duration since the write after which a read reloads the value in the background,
+     *                          or zero if the values are not refreshed.
+     * @param loadTimeout       the deadline of a load, or zero if the loads have no deadline.
+     * @param unit              the unit of the durations.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or a duration is negative.
+     */
+    public AsyncCache(int capacity, CacheDeletionStrategy strategy, CacheLoader<? super K, ? extends V> loader,
+                      Executor executor, long refreshAfterWrite, long loadTimeout, TimeUnit unit) {
+        this(capacity, strategy, loader, executor, refreshAfterWrite, loadTimeout, unit, Ticker.SYSTEM);
+    }
+
+    /**
+     * Returns the future of the value of the key, starting its load if the key is missing,
+     * or its reload in the background if the value is older than the refresh-after-write interval.
+     *
+     * @param key the key.
+     * @return the future of the value.
+     */
+    public CompletableFuture<V> get(K key) {
+        Node<V> node = cache.get(key);
+        if (node == null) {
+            Node<V> created = new Node<>(new CompletableFuture<>(), ticker.read());
+            node = cache.putIfAbsent(key, created);
+            if (node == null) {
+                removeOnFailure(key, created);
+                load(key).whenComplete((v, e) -> {
+                    if (e == null) {
+                        created.future.complete(v);
+                    } else {
+                        created.future.completeExceptionally(e);
+                    }
+                });
+                return created.future;
+            }
+        }
+        if (refreshAfterWriteNanos != ExpiringCache.NEVER && node.isLoaded()
+                && ticker.read() - node.writeTime >= refreshAfterWriteNanos
+                && node.refreshing.compareAndSet(false, true)) {
+            refresh(key, node);
+        }
+        return node.future;
+    }
+
+    /**
+     * Returns the future of the value of the key, or {@code null} if the key is missing.
+     * Neither loads nor refreshes the value.
+     *
+     * @param key the key.
+     * @return the future of the value, or {@code null}.
+     */
+    public CompletableFuture<V> getIfPresent(K key) {
+        Node<V> node = cache.get(key);
+        return node == null ? null : node.future;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key   the key.
+     * @param value the value.
+     */
+    public void put(K key, V value) {
+        cache.put(key, new Node<>(CompletableFuture.completedFuture(Objects.requireNonNull(value)), ticker.read()));
+    }
+
+    /**
+     * Associates the future of a value with the key, it is removed if it fails or completes with {@code null}.
+     *
+     * @param key    the key.
+     * @param future the future of the value.
+     */
+    public void put(K key, CompletableFuture<V> future) {
+        Node<V> node = new Node<>(Objects.requireNonNull(future), ticker.read());
+        cache.put(key, node);
+        removeOnFailure(key, node);
+    }
+
+    /**
+     * Removes the key. A load of the key in flight is not cancelled, but its result is dropped.
+     *
+     * @param key the key.
+     */
+    public void remove(K key) {
+        cache.remove(key);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Starts recording the statistics of this cache and its loads.
+     */
+    public void recordStats() {
+        cache.recordStats();
+        if (loadStats == null) {
+            loadStats = new StatsCounter();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded since {@link #recordStats()}.
+     *
+     * @return the statistics, or {@link CacheStats#EMPTY} if they are not recorded.
+     */
+    public CacheStats stats() {
+        StatsCounter stats = loadStats;
+        return stats == null ? cache.stats() : cache.stats().plus(stats.snapshot());
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
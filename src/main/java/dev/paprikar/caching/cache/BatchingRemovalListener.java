@@ -0,0 +1,81 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link RemovalListener} which queues the notifications in a lock-free queue
+ * and delivers them in batches on an executor (see {@link RemovalListener#async(RemovalListener, Executor)}).
+ * At most one delivery task is scheduled at any time, so the notifications are delivered in order.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+final class BatchingRemovalListener<K, V> implements RemovalListener<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    final RemovalListener<K, V> listener;
+
+    final Executor executor;
+
+    /**
+     * The notifications waiting for the delivery.
+     */
+    final Queue<RemovalNotification<K, V>> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a delivery task is scheduled or running.
+     */
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::deliver);
+            } catch (RuntimeException e) {
+                // the queued notifications are delivered by the next schedule
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    void deliver() {
+        RemovalNotification<K, V> notification;
+        while ((notification = queue.poll()) != null) {
+            try {
+                notification.deliver(listener);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+        scheduled.set(false);
+        // a notification may have been queued after the queue was found empty
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    BatchingRemovalListener(RemovalListener<K, V> listener, Executor executor) {
+        this.listener = Objects.requireNonNull(listener);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    public void onRemoval(K key, V value, RemovalCause cause) {
+        queue.add(new RemovalNotification<>(key, value, cause));
+        schedule();
+    }
+}
@@ -1,26 +1,217 @@
 package dev.paprikar.caching.cache;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public class Cache<K, V> implements ICache<K, V> {
 
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
     final ICache<K, V> cache;
 
+    static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    static <K, V> CacheEngine<K, V> newEngine(int capacity, float capacityFactor, CacheDeletionStrategy strategy) {
+        switch (strategy) {
+            case LFU:
+                return new LfuCache<>(capacity, capacityFactor);
+            case LRU:
+                return new LruCache<>(capacity, capacityFactor);
+            case W_TINY_LFU:
+            case SOME_NEW_STRATEGY:
+                return new WTinyLfuCache<>(capacity, capacityFactor);
+            case ARC:
+                return new ArcCache<>(capacity, capacityFactor);
+            case S3_FIFO:
+                return new S3FifoCache<>(capacity, capacityFactor);
+            case CLOCK_PRO:
+                return new ClockProCache<>(capacity, capacityFactor);
+            case ADAPTIVE:
+                return new AdaptiveCache<>(capacity, capacityFactor);
+            default:
+                throw new IllegalArgumentException("Illegal strategy: " + strategy);
+        }
+    }
+
+    /**
+     * Constructs a cache with primitive {@code long} keys with the specified capacity,
+     * capacity factor and deletion strategy.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @param strategy       the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param <V>            the type of mapped values
+     * @return the new cache.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one,
+     *                                  or the strategy is illegal.
+     */
+    public static <V> ILongCache<V> newLongCache(int capacity, float capacityFactor, CacheDeletionStrategy strategy) {
+        switch (strategy) {
+            case LFU:
+                return new LongLfuCache<>(capacity, capacityFactor);
+            case LRU:
+                return new LongLruCache<>(capacity, capacityFactor);
+            default:
+                throw new IllegalArgumentException("Illegal strategy: " + strategy);
+        }
+    }
+
+    /**
+     * Constructs a cache with primitive {@code long} keys with the specified capacity, deletion strategy
+     * and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @param strategy the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param <V>      the type of mapped values
+     * @return the new cache.
+     * @throws IllegalArgumentException if the capacity is less than one or the strategy is illegal.
+     */
+    public static <V> ILongCache<V> newLongCache(int capacity, CacheDeletionStrategy strategy) {
+        return newLongCache(capacity, DEFAULT_CAPACITY_FACTOR, strategy);
+    }
+
+    /**
+     * Constructs a cache which stores the {@link ByteBuffer} values off-heap with the specified capacity,
+     * capacity factor, deletion strategy and off-heap memory limit (see {@link OffHeapCache}).
+     *
+     * @param capacity       the cache capacity (the maximum number of entries).
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @param strategy       the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param maxMemory      the maximum number of bytes of the off-heap pages.
+     * @param <K>            the type of keys maintained by the cache
+     * @return the new cache.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one,
+     *                                  the strategy is illegal, or the memory limit is less than 1 MiB.
+     */
+    public static <K> ICache<K, ByteBuffer> newOffHeapCache(int capacity, float capacityFactor,
+                                                           CacheDeletionStrategy strategy, long maxMemory) {
+        return new OffHeapCache<>(capacity, capacityFactor, strategy, maxMemory, OffHeapCache.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a cache which stores the {@link ByteBuffer} values off-heap with the specified capacity,
+     * deletion strategy, off-heap memory limit and the default capacity factor (1.5).
+     *
+     * @param capacity  the cache capacity (the maximum number of entries).
+     * @param strategy  the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param maxMemory the maximum number of bytes of the off-heap pages.
+     * @param <K>       the type of keys maintained by the cache
+     * @return the new cache.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or the memory limit is less than 1 MiB.
+     */
+    public static <K> ICache<K, ByteBuffer> newOffHeapCache(int capacity, CacheDeletionStrategy strategy,
+                                                           long maxMemory) {
+        return newOffHeapCache(capacity, DEFAULT_CAPACITY_FACTOR, strategy, maxMemory);
+    }
+
+    /**
+     * Constructs a {@link Cache} with the specified capacity, capacity factor, deletion strategy and concurrency mode.
+     *
+     * @param capacity        the cache capacity.
+     * @param capacityFactor  the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param strategy        the deletion strategy.
+     * @param concurrencyMode the concurrency mode.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one,
+     *                                  or the strategy or concurrency mode is illegal.
+     */
+    public Cache(int capacity, float capacityFactor, CacheDeletionStrategy strategy,
+                 CacheConcurrencyMode concurrencyMode) {
+        switch (concurrencyMode) {
+            case NONE:
+                cache = newEngine(capacity, capacityFactor, strategy);
+                break;
+            case STRIPED:
+                cache = new StripedCache<>(capacity, capacityFactor, strategy,
+                        StripedCache.DEFAULT_CONCURRENCY_LEVEL);
+                break;
+            case BUFFERED:
+                if (strategy != CacheDeletionStrategy.LRU) {
+                    throw new IllegalArgumentException("Illegal strategy for buffered mode: " + strategy);
+                }
+                cache = new ConcurrentLruCache<>(capacity, capacityFactor);
+                break;
+            default:
+                throw new IllegalArgumentException("Illegal concurrency mode: " + concurrencyMode);
+        }
+    }
+
+    /**
+     * Constructs a {@link Cache} with the specified capacity, deletion strategy, concurrency mode
+     * and the default capacity factor (1.5).
+     *
+     * @param capacity        the cache capacity.
+     * @param strategy        the deletion strategy.
+     * @param concurrencyMode the concurrency mode.
+     * @throws IllegalArgumentException if the capacity is less than one,
+     *                                  or the strategy or concurrency mode is illegal.
+     */
+    public Cache(int capacity, CacheDeletionStrategy strategy, CacheConcurrencyMode concurrencyMode) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR, strategy, concurrencyMode);
+    }
+
     public Cache(int capacity, CacheDeletionStrategy strategy) {
+        this(capacity, strategy, CacheConcurrencyMode.NONE);
+    }
+
+    /**
+     * Constructs a {@link Cache} bounded by both the capacity and the total weight of the entries
+     * with the specified capacity factor and deletion strategy.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param strategy       the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param maximumWeight  the maximum total weight of the entries.
+     * @param weigher        the weigher of the entries.
+     * @param oversizePolicy the policy of handling the entries heavier than the maximum weight.
+     * @throws IllegalArgumentException if the capacity, capacity factor or maximum weight is less than one,
+     *                                  or the strategy is illegal.
+     */
+    public Cache(int capacity, float capacityFactor, CacheDeletionStrategy strategy, long maximumWeight,
+                 Weigher<? super K, ? super V> weigher, OversizePolicy oversizePolicy) {
+        Objects.requireNonNull(weigher);
         switch (strategy) {
             case LFU:
-                cache = new LfuCache<>(capacity);
+                cache = new LfuCache<>(capacity, capacityFactor, maximumWeight, weigher, oversizePolicy);
                 break;
             case LRU:
-                cache = new LruCache<>(capacity);
+                cache = new LruCache<>(capacity, capacityFactor, maximumWeight, weigher, oversizePolicy);
                 break;
             default:
-                throw new IllegalArgumentException("Illegal strategy: " + strategy);
+                throw new IllegalArgumentException("Illegal strategy for weighted mode: " + strategy);
         }
     }
 
+    /**
+     * Constructs a {@link Cache} whose entries expire after the specified durations
+     * with the specified capacity, deletion strategy and the default capacity factor (1.5) (see {@link ExpiringCache}).
+     *
+     * @param capacity          the cache capacity.
+     * @param strategy          the deletion strategy.
+     * @param expireAfterWrite  the duration since the last write after which an entry expires,
+     *                          or zero if the entries do not expire after write.
+     * @param expireAfterAccess the duration since the last read or write after which an entry expires,
+     *                          or zero if the entries do not expire after access.
+     * @param unit              the unit of the durations.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or a duration is negative.
+     */
+    public Cache(int capacity, CacheDeletionStrategy strategy, long expireAfterWrite, long expireAfterAccess,
+                 TimeUnit unit) {
+        cache = new ExpiringCache<>(capacity, strategy, expireAfterWrite, expireAfterAccess, unit);
+    }
+
     public int size() {
         return cache.size();
     }
@@ -41,14 +232,54 @@ public class Cache<K, V> implements ICache<K, V> {
         return cache.get(key);
     }
 
+    public V getOrDefault(Object key, V defaultValue) {
+        return cache.getOrDefault(key, defaultValue);
+    }
+
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        return cache.getAll(keys);
+    }
+
     public V put(K key, V value) {
         return cache.put(key, value);
     }
 
+    public V putIfAbsent(K key, V value) {
+        return cache.putIfAbsent(key, value);
+    }
+
     public V remove(Object key) {
         return cache.remove(key);
     }
 
+    public boolean remove(Object key, Object value) {
+        return cache.remove(key, value);
+    }
+
+    public V replace(K key, V value) {
+        return cache.replace(key, value);
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        return cache.replace(key, oldValue, newValue);
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return cache.computeIfAbsent(key, mappingFunction);
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return cache.computeIfPresent(key, remappingFunction);
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return cache.compute(key, remappingFunction);
+    }
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return cache.merge(key, value, remappingFunction);
+    }
+
     public void putAll(Map<? extends K, ? extends V> m) {
         cache.putAll(m);
     }
@@ -57,6 +288,18 @@ public class Cache<K, V> implements ICache<K, V> {
         cache.clear();
     }
 
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        cache.setRemovalListener(listener);
+    }
+
+    public void recordStats() {
+        cache.recordStats();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
     public Set<K> keySet() {
         return cache.keySet();
     }
@@ -0,0 +1,17 @@
+package dev.paprikar.caching.cache;
+
+public enum CacheConcurrencyMode {
+    /**
+     * The cache is not thread-safe.
+     */
+    NONE,
+    /**
+     * The key space is split into independently locked segments (see {@link StripedCache}).
+     */
+    STRIPED,
+    /**
+     * The reads are lock-free and recorded into buffers (see {@link ConcurrentLruCache}).
+     * Supported only by the {@link CacheDeletionStrategy#LRU} strategy.
+     */
+    BUFFERED
+}
@@ -3,5 +3,29 @@ package dev.paprikar.caching.cache;
 public enum CacheDeletionStrategy {
     LRU,
     LFU,
+    /**
+     * Window-TinyLFU (see {@link WTinyLfuCache}).
+     */
+    W_TINY_LFU,
+    /**
+     * Adaptive Replacement Cache (see {@link ArcCache}).
+     */
+    ARC,
+    /**
+     * S3-FIFO, the small, main and ghost FIFO queues (see {@link S3FifoCache}).
+     */
+    S3_FIFO,
+    /**
+     * CLOCK-Pro, an approximation of LIRS with read-only hits (see {@link ClockProCache}).
+     */
+    CLOCK_PRO,
+    /**
+     * LRU or LFU, switched at runtime by the hit rates of sampled shadow caches (see {@link AdaptiveCache}).
+     */
+    ADAPTIVE,
+    /**
+     * @deprecated use {@link #W_TINY_LFU}, which this placeholder now stands for.
+     */
+    @Deprecated
     SOME_NEW_STRATEGY
 }
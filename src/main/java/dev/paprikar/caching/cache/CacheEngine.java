@@ -0,0 +1,34 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * An engine which can be wrapped by {@link ExpiringCache}, {@link TieredCache} or {@link AdaptiveCache}.
+ * The wrappers are notified of the evictions of the engine, share its statistics
+ * and remove the expired entries without counting them as explicit removals.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+interface CacheEngine<K, V> extends ICache<K, V> {
+
+    /**
+     * Sets the listener of the evictions, or removes it if {@code null}.
+     */
+    void setEvictionListener(EvictionListener<K, V> listener);
+
+    /**
+     * Removes the entry of the specified key like {@link #remove(Object)}, but neither records the removal
+     * in the statistics nor notifies the removal listener, so that the wrapper can report it with its own cause.
+     */
+    V discard(Object key);
+
+    /**
+     * Returns the recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter();
+
+    /**
+     * Sets the recorder of the statistics, or disables them if {@code null}.
+     */
+    void setStatsCounter(StatsCounter statsCounter);
+}
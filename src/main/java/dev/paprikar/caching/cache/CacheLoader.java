@@ -0,0 +1,44 @@
+package dev.paprikar.caching.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the values of the missing keys of a {@link LoadingCache}.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * Computes the value of the key.
+     *
+     * @param key the key.
+     * @return the value, or {@code null} if there is no value, which is not cached.
+     * @throws Exception if the value cannot be computed, the failure is not cached.
+     */
+    V load(K key) throws Exception;
+
+    /**
+     * Computes the values of the keys in a single batch, for example by a single query to the backend.
+     * The default implementation loads the keys one by one.
+     *
+     * @param keys the keys.
+     * @return the map of the keys and their values, the keys without values may be absent or mapped to {@code null}.
+     * @throws Exception if the values cannot be computed, the failure is not cached.
+     */
+    default Map<K, V> loadAll(Set<? extends K> keys) throws Exception {
+        Map<K, V> result = new HashMap<>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+package dev.paprikar.caching.cache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Registers the statistics of caches as {@link CacheStatsMXBean} in the platform MBean server
+ * under the names {@code dev.paprikar.caching:type=CacheStats,name=<name>}.
+ *
+ * @author paprikar
+ */
+public final class CacheMBeans {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final String DOMAIN = "dev.paprikar.caching";
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    private CacheMBeans() {
+    }
+
+    static final class CacheStatsBean implements CacheStatsMXBean {
+
+        final Supplier<CacheStats> stats;
+
+        CacheStatsBean(Supplier<CacheStats> stats) {
+            this.stats = stats;
+        }
+
+        public long getHitCount() {
+            return stats.get().hitCount();
+        }
+
+        public long getMissCount() {
+            return stats.get().missCount();
+        }
+
+        public double getHitRate() {
+            return stats.get().hitRate();
+        }
+
+        public long getPutCount() {
+            return stats.get().putCount();
+        }
+
+        public long getRemoveCount() {
+            return stats.get().removeCount();
+        }
+
+        public long getEvictionCount() {
+            return stats.get().evictionCount();
+        }
+
+        public long getSizeEvictionCount() {
+            return stats.get().evictionCount(RemovalCause.SIZE);
+        }
+
+        public long getExpiredEvictionCount() {
+            return stats.get().evictionCount(RemovalCause.EXPIRED);
+        }
+
+        public long getLoadSuccessCount() {
+            return stats.get().loadSuccessCount();
+        }
+
+        public long getLoadFailureCount() {
+            return stats.get().loadFailureCount();
+        }
+
+        public double getAverageLoadPenalty() {
+            return stats.get().averageLoadPenalty();
+        }
+
+        public long getLoadTimeP50() {
+            return stats.get().loadTimePercentile(50);
+        }
+
+        public long getLoadTimeP99() {
+            return stats.get().loadTimePercentile(99);
+        }
+
+        public long[] getLoadTimeHistogram() {
+            return stats.get().loadTimeHistogram();
+        }
+    }
+
+    static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=CacheStats,name=" + ObjectName.quote(name));
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Registers the statistics, for example {@code register("users", cache::stats)}.
+     * The statistics must be recorded by the cache (see {@link ICache#recordStats()}).
+     *
+     * @param name  the name of the cache.
+     * @param stats the supplier of the snapshots of the statistics.
+     * @return the name of the registered MBean.
+     * @throws JMException if the MBean cannot be registered, for example if the name is already used.
+     */
+    public static ObjectName register(String name, Supplier<CacheStats> stats) throws JMException {
+        ObjectName objectName = objectName(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(new CacheStatsBean(Objects.requireNonNull(stats)), objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregisters the statistics of the cache, if they are registered.
+     *
+     * @param name the name of the cache.
+     * @throws JMException if the MBean cannot be unregistered.
+     */
+    public static void unregister(String name) throws JMException {
+        ObjectName objectName = objectName(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package dev.paprikar.caching.cache;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Saves the state of {@link LruCache} and {@link LfuCache} to a binary file and restores it,
+ * so that a restarted application begins with a warm cache.
+ *
+ * <p>
+ * The snapshot holds the entries in the eviction order: the recency order of an {@link LruCache},
+ * and the frequency subsequences of an {@link LfuCache} with the frequency of every node
+ * together with the aging state. The restore reads the file sequentially and links the entries
+ * directly in the same order instead of adding them by {@code put}, so the restored cache
+ * makes exactly the same eviction decisions as the saved one. If the snapshot has more entries
+ * than the capacity, the first ones in the eviction order are skipped as if they were evicted.
+ *
+ * <p>
+ * The file is written through a {@link FileChannel} to a temporary file which is forced to the storage
+ * and then atomically moved over the target, so a crash never leaves a partially written snapshot.
+ * The format is:<pre>
+ * int magic, int version, byte kind (0 - LRU, 1 - LFU), int count,
+ * LFU only: int cacheAge, int operations,
+ * count times: LFU only: int frequency, byte keyPresent, key, byte valuePresent, value</pre>
+ *
+ * @author paprikar
+ */
+public final class CacheSnapshots {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final int MAGIC = 0x43534E50;
+
+    static final int VERSION = 1;
+
+    static final byte LRU = 0;
+
+    static final byte LFU = 1;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    private CacheSnapshots() {
+    }
+
+    static ICache<?, ?> unwrap(ICache<?, ?> cache) {
+        ICache<?, ?> engine = cache instanceof Cache ? ((Cache<?, ?>) cache).cache : cache;
+        if (!(engine instanceof LruCache) && !(engine instanceof LfuCache)) {
+            throw new IllegalArgumentException("Unsupported cache: " + engine.getClass().getName());
+        }
+        return engine;
+    }
+
+    static <T> void writeNullable(T value, Serializer<T> serializer, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            serializer.write(value, out);
+        }
+    }
+
+    static <T> T readNullable(Serializer<T> serializer, DataInput in) throws IOException {
+        return in.readBoolean() ? serializer.read(in) : null;
+    }
+
+    static <K, V> void writeLru(LruCache<K, V> lru, DataOutput out,
+                                Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        out.writeByte(LRU);
+        out.writeInt(lru.cache.size());
+        // the iteration order of LinkedHashMap is the recency order
+        for (Map.Entry<K, V> e : lru.cache.entrySet()) {
+            writeNullable(e.getKey(), keySerializer, out);
+            writeNullable(e.getValue(), valueSerializer, out);
+        }
+    }
+
+    static <K, V> void writeLfu(LfuCache<K, V> lfu, DataOutput out,
+                                Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        out.writeByte(LFU);
+        out.writeInt(lfu.cache.size());
+        out.writeInt(lfu.cacheAge);
+        out.writeInt(lfu.operations);
+        for (LfuCache.Node<K, V> n = lfu.head; n != null; n = n.next) {
+            out.writeInt(n.bucket.frequency);
+            writeNullable(n.key, keySerializer, out);
+            writeNullable(n.value, valueSerializer, out);
+        }
+    }
+
+    static <K, V> void readLru(LruCache<K, V> lru, DataInput in, int count,
+                               Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        int skipped = Math.max(0, count - lru.capacity);
+        for (int i = 0; i < count; i++) {
+            K key = readNullable(keySerializer, in);
+            V value = readNullable(valueSerializer, in);
+            if (i < skipped) {
+                continue;
+            }
+            // appending to the underlying map keeps the recency order
+            if (lru.cache.put(key, value) != null) {
+                throw new StreamCorruptedException("Duplicate key: " + key);
+            }
+            if (lru.weights != null) {
+                int weight = lru.weigh(key, value);
+                lru.weights.put(key, weight);
+                lru.totalWeight += weight;
+            }
+        }
+        // the cache may be lighter than the saved one
+        Iterator<Map.Entry<K, V>> it = lru.cache.entrySet().iterator();
+        while (lru.totalWeight > lru.maximumWeight && it.hasNext()) {
+            Map.Entry<K, V> e = it.next();
+            it.remove();
+            lru.releaseWeight(e.getKey());
+        }
+    }
+
+    static <K, V> void readLfu(LfuCache<K, V> lfu, DataInput in, int count,
+                               Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        int cacheAge = in.readInt();
+        int operations = in.readInt();
+        int skipped = Math.max(0, count - lfu.capacity);
+        LfuCache.Node<K, V> tail = null;
+        LfuCache.Bucket<K, V> bucket = null;
+        int lastFrequency = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int frequency = in.readInt();
+            K key = readNullable(keySerializer, in);
+            V value = readNullable(valueSerializer, in);
+            if (frequency < lastFrequency) {
+                throw new StreamCorruptedException("Unordered frequency: " + frequency);
+            }
+            lastFrequency = frequency;
+            if (i < skipped) {
+                if (lfu.agingPolicy == LfuAgingPolicy.DYNAMIC) {
+                    // the same as if the node was evicted
+                    cacheAge = frequency;
+                }
+                continue;
+            }
+            LfuCache.Node<K, V> node = new LfuCache.Node<>(key, value);
+            node.weight = lfu.weigh(key, value);
+            lfu.totalWeight += node.weight;
+            if (lfu.cache.put(key, node) != null) {
+                throw new StreamCorruptedException("Duplicate key: " + key);
+            }
+            if (tail == null) {
+                lfu.head = node;
+            } else {
+                tail.insertNext(node);
+            }
+            tail = node;
+            if (bucket == null || bucket.frequency != frequency) {
+                bucket = new LfuCache.Bucket<>(frequency);
+                bucket.head = node;
+            }
+            bucket.tail = node;
+            node.bucket = bucket;
+        }
+        lfu.cacheAge = lfu.agingPolicy == LfuAgingPolicy.DYNAMIC ? cacheAge : 0;
+        // the cache may be lighter than the saved one
+        while (lfu.totalWeight > lfu.maximumWeight && lfu.head != null) {
+            lfu.evictNode(lfu.head);
+        }
+        lfu.operations = lfu.agingPolicy == LfuAgingPolicy.HALVING ? Math.min(operations, lfu.agingPeriod - 1) : 0;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Saves the entries of the cache in the eviction order to the file, replacing it atomically.
+     *
+     * @param cache           the {@link LruCache}, {@link LfuCache}, or {@link Cache} based on one of them.
+     * @param file            the snapshot file.
+     * @param keySerializer   the serializer of the keys.
+     * @param valueSerializer the serializer of the values.
+     * @param <K>             the type of keys maintained by the cache
+     * @param <V>             the type of mapped values
+     * @throws IOException              if an I/O error occurs.
+     * @throws IllegalArgumentException if the cache is not supported.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> void save(ICache<K, V> cache, Path file,
+                                   Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        ICache<K, V> engine = (ICache<K, V>) unwrap(cache);
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                if (engine instanceof LruCache) {
+                    writeLru((LruCache<K, V>) engine, out, keySerializer, valueSerializer);
+                } else {
+                    writeLfu((LfuCache<K, V>) engine, out, keySerializer, valueSerializer);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Replaces the entries of the cache with the ones of the snapshot file.
+     * An {@link LruCache} snapshot can be restored only to an {@link LruCache},
+     * and an {@link LfuCache} snapshot only to an {@link LfuCache}. The aging state
+     * is restored only if it is used by the aging policy of the cache.
+     *
+     * @param cache           the {@link LruCache}, {@link LfuCache}, or {@link Cache} based on one of them.
+     * @param file            the snapshot file.
+     * @param keySerializer   the serializer of the keys.
+     * @param valueSerializer the serializer of the values.
+     * @param <K>             the type of keys maintained by the cache
+     * @param <V>             the type of mapped values
+     * @throws IOException              if an I/O error occurs, the file is not a snapshot,
+     *                                  or it was saved from a cache of the other kind.
+     *                                  The cache is left empty in this case.
+     * @throws IllegalArgumentException if the cache is not supported.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> void restore(ICache<K, V> cache, Path file,
+                                      Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        ICache<K, V> engine = (ICache<K, V>) unwrap(cache);
+        engine.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a cache snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported snapshot version: " + version);
+            }
+            byte kind = in.readByte();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new StreamCorruptedException("Illegal entry count: " + count);
+            }
+            if (kind == LRU && engine instanceof LruCache) {
+                readLru((LruCache<K, V>) engine, in, count, keySerializer, valueSerializer);
+            } else if (kind == LFU && engine instanceof LfuCache) {
+                readLfu((LfuCache<K, V>) engine, in, count, keySerializer, valueSerializer);
+            } else {
+                throw new StreamCorruptedException("Snapshot kind " + kind
+                        + " does not match " + engine.getClass().getSimpleName());
+            }
+        } catch (IOException | RuntimeException e) {
+            engine.clear();
+            throw e;
+        }
+    }
+}
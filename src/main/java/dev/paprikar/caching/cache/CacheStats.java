@@ -0,0 +1,234 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the statistics of a cache (see {@link ICache#stats()}).
+ *
+ * <p>
+ * The load times are also counted in a histogram with the power of two buckets:
+ * the bucket {@code 0} counts the loads which took zero nanoseconds,
+ * and the bucket {@code i > 0} counts the ones which took from {@code 2^(i-1)} to {@code 2^i - 1} nanoseconds.
+ *
+ * @author paprikar
+ */
+public final class CacheStats {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The number of buckets of the load time histogram.
+     */
+    public static final int HISTOGRAM_BUCKETS = 64;
+
+    /**
+     * The statistics without any recorded events.
+     */
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0,
+            new long[RemovalCause.values().length], new long[HISTOGRAM_BUCKETS]);
+
+    final long hitCount;
+
+    final long missCount;
+
+    final long putCount;
+
+    final long removeCount;
+
+    final long loadSuccessCount;
+
+    final long loadFailureCount;
+
+    final long totalLoadTime;
+
+    /**
+     * The number of evictions, per {@link RemovalCause} ordinal.
+     */
+    final long[] evictionCounts;
+
+    /**
+     * The number of loads, per bucket of the load time.
+     */
+    final long[] loadTimeHistogram;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    /**
+     * Returns the bucket of the histogram for the load time in nanoseconds.
+     */
+    static int bucket(long loadTime) {
+        return loadTime <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(loadTime);
+    }
+
+    static long[] plus(long[] a, long[] b) {
+        long[] sums = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            sums[i] = a[i] + b[i];
+        }
+        return sums;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    CacheStats(long hitCount, long missCount, long putCount, long removeCount,
+               long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+               long[] evictionCounts, long[] loadTimeHistogram) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.removeCount = removeCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCounts = evictionCounts;
+        this.loadTimeHistogram = loadTimeHistogram;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the ratio of the hits to the requests, or {@code 1.0} if there were no requests.
+     *
+     * @return the hit rate.
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long putCount() {
+        return putCount;
+    }
+
+    /**
+     * Returns the number of the entries removed by the user.
+     *
+     * @return the number of removals.
+     */
+    public long removeCount() {
+        return removeCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Returns the total time spent in the loads, in nanoseconds.
+     *
+     * @return the total load time.
+     */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the average time of a load in nanoseconds, or zero if there were no loads.
+     *
+     * @return the average load time.
+     */
+    public double averageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * Returns the number of the entries removed automatically.
+     *
+     * @return the number of evictions of all causes.
+     */
+    public long evictionCount() {
+        long count = 0;
+        for (long c : evictionCounts) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of the entries removed automatically by the cause.
+     *
+     * @param cause the cause, {@link RemovalCause#SIZE} or {@link RemovalCause#EXPIRED}.
+     * @return the number of evictions of the cause.
+     */
+    public long evictionCount(RemovalCause cause) {
+        return evictionCounts[cause.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of the load times.
+     *
+     * @return the number of loads per bucket, a copy of length {@link #HISTOGRAM_BUCKETS}.
+     */
+    public long[] loadTimeHistogram() {
+        return loadTimeHistogram.clone();
+    }
+
+    /**
+     * Returns the upper bound of the bucket of the histogram holding the specified percentile of the load times.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the upper bound of the load time in nanoseconds, or zero if there were no loads.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long loadTimePercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Illegal percentile: " + percentile);
+        }
+        long loadCount = loadSuccessCount + loadFailureCount;
+        long rank = (long) Math.ceil(loadCount * percentile / 100);
+        long count = 0;
+        for (int i = 0; i < loadTimeHistogram.length; i++) {
+            count += loadTimeHistogram[i];
+            if (count >= rank && count > 0) {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the sum of these and the specified statistics.
+     *
+     * @param other the other statistics.
+     * @return the sum of the statistics.
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                putCount + other.putCount, removeCount + other.removeCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime,
+                plus(evictionCounts, other.evictionCounts), plus(loadTimeHistogram, other.loadTimeHistogram));
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", putCount=" + putCount +
+                ", removeCount=" + removeCount +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", totalLoadTime=" + totalLoadTime +
+                ", evictionCounts=" + Arrays.toString(evictionCounts) +
+                '}';
+    }
+}
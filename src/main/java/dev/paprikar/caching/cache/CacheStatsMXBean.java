@@ -0,0 +1,58 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The management interface of the statistics of a cache, registered by {@link CacheMBeans}.
+ * Every attribute is read from a new snapshot of the statistics.
+ *
+ * @author paprikar
+ */
+public interface CacheStatsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getPutCount();
+
+    long getRemoveCount();
+
+    long getEvictionCount();
+
+    long getSizeEvictionCount();
+
+    long getExpiredEvictionCount();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    /**
+     * Returns the average load time in nanoseconds.
+     *
+     * @return the average load time.
+     */
+    double getAverageLoadPenalty();
+
+    /**
+     * Returns the upper bound of the median load time in nanoseconds.
+     *
+     * @return the median load time.
+     */
+    long getLoadTimeP50();
+
+    /**
+     * Returns the upper bound of the 99th percentile of the load time in nanoseconds.
+     *
+     * @return the 99th percentile of the load time.
+     */
+    long getLoadTimeP99();
+
+    /**
+     * Returns the histogram of the load times (see {@link CacheStats}).
+     *
+     * @return the number of loads per bucket.
+     */
+    long[] getLoadTimeHistogram();
+}
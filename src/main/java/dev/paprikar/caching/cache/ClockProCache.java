@@ -0,0 +1,812 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation of the CLOCK-Pro policy keeps the entries in flat arrays.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>parallel arrays {@code keys[]}, {@code values[]}, {@code hashes[]}, {@code types[]}
+ *     and {@code referenced[]} indexed by slot.</li>
+ *     <li>{@link ObjectIndex} - an open addressing index that maps keys to slots.</li>
+ *     <li>a circular doubly linked list of slots ({@code int prev[]}, {@code int next[]} per slot),
+ *     the clock, swept by three hands.</li>
+ * </ul>
+ *
+ * <p>
+ * A hit only sets the reference flag of the slot, so reads never write anything else.
+ * An entry is either hot or cold, and the clock also holds the keys of the recently evicted
+ * cold entries (the test keys), which take no value. A new entry is cold. The hands move around the clock:
+ * <ul>
+ *     <li>the cold hand evicts the unreferenced cold entries, keeping their keys as test keys,
+ *     and makes the referenced ones hot.</li>
+ *     <li>the hot hand makes the unreferenced hot entries cold when there are too many hot entries.</li>
+ *     <li>the test hand forgets the test keys when there are more of them than the capacity.</li>
+ * </ul>
+ * A put of a test key means that the key was evicted too early, so the target number of cold entries grows
+ * and the entry becomes hot at once; a forgotten test key shrinks the target.
+ * So the cache adapts itself between the recency-heavy and the frequency-heavy workloads,
+ * and a scan of keys seen once passes through the cold entries without disturbing the hot ones.
+ *
+ * <p>
+ * All the arrays are allocated in constructor, so the get / put / remove operations do not allocate memory.
+ * The eviction takes an amortized {@code O(1)} time, all other operations take a constant {@code O(1)} time.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class ClockProCache<K, V> implements CacheEngine<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The absent slot.
+     */
+    static final int NIL = SlotOrder.NIL;
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The part of the capacity initially targeted for the cold entries.
+     */
+    static final double INITIAL_COLD_RATIO = 0.01;
+
+    static final byte FREE = 0;
+    static final byte HOT = 1;
+    static final byte COLD = 2;
+    static final byte TEST = 3;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The keys, per slot.
+     */
+    final Object[] keys;
+
+    /**
+     * The values, per slot, {@code null} for the test keys.
+     */
+    final Object[] values;
+
+    /**
+     * The spread hashes of the keys, per slot.
+     */
+    final int[] hashes;
+
+    /**
+     * The types of the slots.
+     */
+    final byte[] types;
+
+    /**
+     * The reference flags, per slot.
+     */
+    final boolean[] referenced;
+
+    /**
+     * The previous slot in the clock, per slot.
+     */
+    final int[] prev;
+
+    /**
+     * The next slot in the clock, per slot.
+     */
+    final int[] next;
+
+    /**
+     * The index for locating the slots of keys.
+     */
+    final ObjectIndex index;
+
+    /**
+     * The stack of free slots.
+     */
+    final int[] freeSlots;
+
+    /**
+     * The number of free slots in the stack.
+     */
+    int freeCount;
+
+    /**
+     * The number of never used slots, which follow the used ones.
+     */
+    int nextUnused;
+
+    int handHot = NIL;
+    int handCold = NIL;
+    int handTest = NIL;
+
+    int hotCount;
+    int coldCount;
+    int testCount;
+
+    /**
+     * The adaptive target number of the cold entries.
+     */
+    int coldTarget;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * The number of times this {@link ClockProCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link ClockProCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> valuesView;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    int find(Object key) {
+        return index.find(key, ObjectIndex.hash(key), keys, hashes);
+    }
+
+    boolean isResident(int slot) {
+        return types[slot] == HOT || types[slot] == COLD;
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    /**
+     * Inserts the slot into the clock right behind the hot hand, so it is swept last.
+     */
+    void link(int slot) {
+        if (handHot == NIL) {
+            prev[slot] = slot;
+            next[slot] = slot;
+            handHot = slot;
+            handCold = slot;
+            handTest = slot;
+        } else {
+            int p = prev[handHot];
+            next[p] = slot;
+            prev[slot] = p;
+            next[slot] = handHot;
+            prev[handHot] = slot;
+        }
+        if (handCold == handHot) {
+            handCold = prev[handCold];
+        }
+    }
+
+    /**
+     * Removes the slot from the clock, the hands pointing to it move back.
+     */
+    void unlink(int slot) {
+        if (next[slot] == slot) {
+            handHot = NIL;
+            handCold = NIL;
+            handTest = NIL;
+            return;
+        }
+        int p = prev[slot];
+        int n = next[slot];
+        if (handHot == slot) {
+            handHot = p;
+        }
+        if (handCold == slot) {
+            handCold = p;
+        }
+        if (handTest == slot) {
+            handTest = p;
+        }
+        next[p] = n;
+        prev[n] = p;
+    }
+
+    void releaseSlot(int slot) {
+        index.remove(keys[slot], hashes[slot], keys, hashes);
+        keys[slot] = null;
+        values[slot] = null;
+        types[slot] = FREE;
+        referenced[slot] = false;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Evicts the cold entries until there is room for a new one, keeping the number of the hot entries
+     * within the target, and then forgets the test keys over the capacity.
+     * Every hand only handles its own slot, so the hands never call each other.
+     */
+    void evict() {
+        while (hotCount + coldCount >= capacity) {
+            runHandCold();
+            // there is always a cold entry, as the target of the cold entries is at least one
+            while (hotCount > capacity - coldTarget) {
+                runHandHot();
+            }
+        }
+        while (testCount > capacity) {
+            runHandTest();
+        }
+    }
+
+    void runHandCold() {
+        int slot = handCold;
+        if (types[slot] == COLD) {
+            if (referenced[slot]) {
+                types[slot] = HOT;
+                referenced[slot] = false;
+                coldCount--;
+                hotCount++;
+            } else {
+                // the value is evicted, the key is kept for the test period
+                K key = keyAt(slot);
+                V value = valueAt(slot);
+                types[slot] = TEST;
+                values[slot] = null;
+                coldCount--;
+                testCount++;
+                if (statsCounter != null) {
+                    statsCounter.recordEviction(RemovalCause.SIZE);
+                }
+                if (evictionListener != null) {
+                    evictionListener.onEviction(key, value);
+                }
+                notifyRemoval(key, value, RemovalCause.SIZE);
+            }
+        }
+        handCold = next[handCold];
+    }
+
+    void runHandHot() {
+        int slot = handHot;
+        if (types[slot] == HOT) {
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                types[slot] = COLD;
+                hotCount--;
+                coldCount++;
+            }
+        }
+        handHot = next[handHot];
+    }
+
+    void runHandTest() {
+        int slot = handTest;
+        if (types[slot] == TEST) {
+            // the test period is over
+            unlink(slot);
+            releaseSlot(slot);
+            testCount--;
+            if (coldTarget > 1) {
+                coldTarget--;
+            }
+            if (handTest == NIL) {
+                return;
+            }
+        }
+        handTest = next[handTest];
+    }
+
+    int nextResident(int slot) {
+        for (int s = slot + 1; s < nextUnused; s++) {
+            if (isResident(s)) {
+                return s;
+            }
+        }
+        return NIL;
+    }
+
+    final class SlotEntry implements Map.Entry<K, V> {
+
+        final int slot;
+        final K key;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = keyAt(slot);
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return valueAt(slot);
+        }
+
+        public V setValue(V value) {
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(getValue(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return ClockProCache.this.size();
+        }
+
+        public final void clear() {
+            ClockProCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            if (containsKey(key)) {
+                ClockProCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = nextResident(NIL); s != NIL; s = nextResident(s)) {
+                action.accept(keyAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return ClockProCache.this.size();
+        }
+
+        public final void clear() {
+            ClockProCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = nextResident(NIL); s != NIL; s = nextResident(s)) {
+                action.accept(valueAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return ClockProCache.this.size();
+        }
+
+        public final void clear() {
+            ClockProCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int slot = find(e.getKey());
+            return slot >= 0 && isResident(slot) && Objects.equals(e.getValue(), values[slot]);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                ClockProCache.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        int next;
+        int current;
+        int expectedModCount;
+
+        final int nextSlot() {
+            int slot = next;
+            if (slot == NIL) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = slot;
+            next = nextResident(slot);
+            return slot;
+        }
+
+        public CacheIterator() {
+            next = nextResident(NIL);
+            current = NIL;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != NIL;
+        }
+
+        public final void remove() {
+            int slot = current;
+            if (slot == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = NIL;
+            ClockProCache.this.remove(keys[slot]);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return keyAt(nextSlot());
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return valueAt(nextSlot());
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return new SlotEntry(nextSlot());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link ClockProCache} with the specified capacity and capacity factor.
+     * The arrays have twice the capacity of slots, for the entries and the test keys,
+     * and the index is created with the power of two length not less than {@code 2 * capacity * capacityFactor}.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public ClockProCache(int capacity, float capacityFactor) {
+        if (capacity < 1 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        int slots = 2 * capacity;
+        index = new ObjectIndex(slots, capacityFactor);
+        keys = new Object[slots];
+        values = new Object[slots];
+        hashes = new int[slots];
+        types = new byte[slots];
+        referenced = new boolean[slots];
+        prev = new int[slots];
+        next = new int[slots];
+        freeSlots = new int[slots];
+        coldTarget = Math.max(1, (int) (capacity * INITIAL_COLD_RATIO));
+    }
+
+    /**
+     * Constructs a {@link ClockProCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ClockProCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return hotCount + coldCount;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        int slot = find(key);
+        return slot >= 0 && isResident(slot);
+    }
+
+    public boolean containsValue(Object value) {
+        for (int s = nextResident(NIL); s != NIL; s = nextResident(s)) {
+            if (Objects.equals(value, values[s]))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        int slot = find(key);
+        if (slot < 0 || !isResident(slot)) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        referenced[slot] = true;
+        return valueAt(slot);
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        int hash = ObjectIndex.hash(key);
+        int slot = index.find(key, hash, keys, hashes);
+        if (slot >= 0 && isResident(slot)) {
+            // key is already added
+            V oldValue = valueAt(slot);
+            values[slot] = value;
+            referenced[slot] = true;
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+            return oldValue;
+        }
+        if (slot >= 0) {
+            // the test key was evicted too early, more cold entries are needed
+            if (coldTarget < capacity) {
+                coldTarget++;
+            }
+            unlink(slot);
+            testCount--;
+            evict();
+            types[slot] = HOT;
+            hotCount++;
+        } else {
+            evict();
+            slot = freeCount > 0 ? freeSlots[--freeCount] : nextUnused++;
+            keys[slot] = key;
+            hashes[slot] = hash;
+            index.insert(hash, slot);
+            types[slot] = COLD;
+            coldCount++;
+        }
+        values[slot] = value;
+        referenced[slot] = false;
+        link(slot);
+        modCount++;
+        return null;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        int slot = find(key);
+        if (slot < 0 || !isResident(slot)) {
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        if (types[slot] == HOT) {
+            hotCount--;
+        } else {
+            coldCount--;
+        }
+        K k = keyAt(slot);
+        V value = valueAt(slot);
+        unlink(slot);
+        releaseSlot(slot);
+        modCount++;
+        notifyRemoval(k, value, RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    public V discard(Object key) {
+        int slot = find(key);
+        if (slot < 0 || !isResident(slot)) {
+            return null;
+        }
+        if (types[slot] == HOT) {
+            hotCount--;
+        } else {
+            coldCount--;
+        }
+        V value = valueAt(slot);
+        unlink(slot);
+        releaseSlot(slot);
+        modCount++;
+        return value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the adaptive target number of the cold entries.
+     *
+     * @return the target number, from one to the capacity.
+     */
+    public int coldTarget() {
+        return coldTarget;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        List<Map.Entry<K, V>> removed = null;
+        if (removalListener != null) {
+            removed = new ArrayList<>(size());
+            for (int s = nextResident(NIL); s != NIL; s = nextResident(s)) {
+                removed.add(new AbstractMap.SimpleImmutableEntry<>(keyAt(s), valueAt(s)));
+            }
+        }
+        index.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        Arrays.fill(types, FREE);
+        Arrays.fill(referenced, false);
+        freeCount = 0;
+        nextUnused = 0;
+        handHot = NIL;
+        handCold = NIL;
+        handTest = NIL;
+        hotCount = 0;
+        coldCount = 0;
+        testCount = 0;
+        coldTarget = Math.max(1, (int) (capacity * INITIAL_COLD_RATIO));
+        modCount++;
+        if (removed != null) {
+            for (Map.Entry<K, V> e : removed) {
+                removalListener.onRemoval(e.getKey(), e.getValue(), RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = valuesView) == null ?
+                (valuesView = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
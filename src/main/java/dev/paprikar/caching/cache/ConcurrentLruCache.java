@@ -0,0 +1,701 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * This implementation is a thread-safe LRU cache with a lock-free read path.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>{@code ConcurrentHashMap<KEY, Node>} - to store information
+ *     about the keys and corresponding nodes. Reads look up the value in it without any lock.</li>
+ *     <li>a doubly linked list of nodes of type {@link Node} in the recency order,
+ *     guarded by the eviction lock.</li>
+ *     <li>striped lossy ring buffers of type {@link ReadBuffer} to record the reads.</li>
+ * </ul>
+ *
+ * <p>
+ * A read does not reorder the list itself, but records the accessed node into one of the read buffers,
+ * selected by the current thread. When the buffer is full, the reading thread tries to acquire
+ * the eviction lock and, if it succeeds, drains all the buffers in a batch moving the recorded nodes
+ * to the end of the list. If the buffer is full and the lock is busy, the read is simply not recorded,
+ * so the readers never wait. Writes are performed under the eviction lock and drain the buffers first.
+ *
+ * <p>
+ * Since some reads may be dropped or applied with a delay, the eviction order approximates LRU.
+ * The iterators of the Collection-views are weakly consistent and do not follow the recency order.
+ *
+ * <p>
+ * The removals are collected per thread and passed to the {@link RemovalListener}
+ * after the eviction lock is released, so a slow listener never blocks the other writers.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class ConcurrentLruCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The number of read buffers, the power of two not less than the number of processors.
+     */
+    static final int NUMBER_OF_READ_BUFFERS = Cache.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The map for mapping keys and related nodes.
+     */
+    final ConcurrentHashMap<K, Node<K, V>> cache;
+
+    /**
+     * The buffers to record the reads.
+     */
+    final ReadBuffer<Node<K, V>>[] readBuffers;
+
+    /**
+     * The lock that guards the linked list.
+     */
+    final ReentrantLock evictionLock;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     * Volatile, since the readers record the statistics without the lock.
+     */
+    volatile StatsCounter statsCounter;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    volatile RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The removals made by the current thread under the eviction lock and not yet passed to the listener.
+     */
+    final ThreadLocal<Deque<RemovalNotification<K, V>>> pendingRemovals = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * The head (least recently used) of the doubly linked list.
+     */
+    Node<K, V> head;
+
+    /**
+     * The tail (most recently used) of the doubly linked list.
+     */
+    Node<K, V> tail;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static final class Node<K, V> implements Map.Entry<K, V> {
+
+        final K key;
+        volatile V value;
+        Node<K, V> prev;
+        Node<K, V> next;
+        /**
+         * Whether the node has been removed from the list. Guarded by the eviction lock.
+         */
+        boolean retired;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A lossy bounded ring buffer of multiple producers and a single consumer.
+     * The consumer must hold the eviction lock.
+     */
+    static final class ReadBuffer<E> {
+
+        static final int SIZE = 16;
+        static final int MASK = SIZE - 1;
+
+        final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+
+        /**
+         * Tries to record the element.
+         *
+         * @return {@code true} if the buffer is full and should be drained.
+         */
+        boolean offer(E e) {
+            long tail = writeCounter.get();
+            if (tail - readCounter >= SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & MASK), e);
+                return tail + 1 - readCounter >= SIZE;
+            }
+            // lost the race to another reader, drop the element
+            return false;
+        }
+
+        void drainTo(ConcurrentLruCache<?, ?> owner) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & MASK);
+                E e = buffer.get(index);
+                if (e == null) {
+                    // the producer has not published the element yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                owner.onAccess(e);
+            }
+            readCounter = head;
+        }
+    }
+
+    ReadBuffer<Node<K, V>> readBuffer() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return readBuffers[h >>> 16 & (readBuffers.length - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    void onAccess(Object o) {
+        Node<K, V> node = (Node<K, V>) o;
+        if (!node.retired && node != tail) {
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    /**
+     * Releases the eviction lock and then passes the pending removals to the listener.
+     */
+    void unlockEviction() {
+        evictionLock.unlock();
+        RemovalListener<? super K, ? super V> listener = removalListener;
+        if (listener != null && !evictionLock.isHeldByCurrentThread()) {
+            Deque<RemovalNotification<K, V>> pending = pendingRemovals.get();
+            RemovalNotification<K, V> notification;
+            while ((notification = pending.poll()) != null) {
+                notification.deliver(listener);
+            }
+        }
+    }
+
+    /**
+     * Records the removal to be passed to the listener when the eviction lock is released.
+     */
+    void deferRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            pendingRemovals.get().add(new RemovalNotification<>(key, value, cause));
+        }
+    }
+
+    void drainReadBuffers() {
+        for (ReadBuffer<Node<K, V>> buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    void tryToDrainReadBuffers() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                unlockEviction();
+            }
+        }
+    }
+
+    void linkLast(Node<K, V> node) {
+        Node<K, V> t = tail;
+        node.prev = t;
+        node.next = null;
+        if (t == null) {
+            head = node;
+        } else {
+            t.next = node;
+        }
+        tail = node;
+    }
+
+    void unlink(Node<K, V> node) {
+        Node<K, V> p = node.prev;
+        Node<K, V> n = node.next;
+        if (p == null) {
+            head = n;
+        } else {
+            p.next = n;
+            node.prev = null;
+        }
+        if (n == null) {
+            tail = p;
+        } else {
+            n.prev = p;
+            node.next = null;
+        }
+    }
+
+    void retire(Node<K, V> node) {
+        unlink(node);
+        node.retired = true;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ConcurrentLruCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return ConcurrentLruCache.this.remove(key) != null;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ConcurrentLruCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            ConcurrentLruCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Node<K, V> candidate = cache.get(e.getKey());
+            return Objects.equals(e, candidate);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return ConcurrentLruCache.this.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        final Iterator<Node<K, V>> iterator;
+        Node<K, V> current;
+
+        CacheIterator() {
+            iterator = cache.values().iterator();
+        }
+
+        final Node<K, V> nextNode() {
+            return current = iterator.next();
+        }
+
+        public final boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        public final void remove() {
+            Node<K, V> node = current;
+            if (node == null) {
+                throw new IllegalStateException();
+            }
+            current = null;
+            ConcurrentLruCache.this.remove(node.key);
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link ConcurrentLruCache} with the specified capacity and capacity factor.
+     * {@code ConcurrentHashMap} will be created like:<pre>
+     * new ConcurrentHashMap<>((int) (capacity * capacityFactor), 1.0f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public ConcurrentLruCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1.0f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        int hashMapCapacity = (int) (capacity * capacityFactor);
+        cache = new ConcurrentHashMap<>(hashMapCapacity, 1.0f);
+        @SuppressWarnings("unchecked")
+        ReadBuffer<Node<K, V>>[] buffers = (ReadBuffer<Node<K, V>>[]) new ReadBuffer<?>[NUMBER_OF_READ_BUFFERS];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new ReadBuffer<>();
+        }
+        readBuffers = buffers;
+        evictionLock = new ReentrantLock();
+    }
+
+    /**
+     * Constructs a {@link ConcurrentLruCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ConcurrentLruCache(int capacity) {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR);
+    }
+
+    /**
+     * Applies all the recorded reads to the recency order.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (Node<K, V> n : cache.values()) {
+            if (Objects.equals(value, n.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Node<K, V> node = cache.get(key);
+        StatsCounter stats = statsCounter;
+        if (node == null) {
+            if (stats != null) {
+                stats.recordMiss();
+            }
+            return null;
+        }
+        if (stats != null) {
+            stats.recordHit();
+        }
+        if (readBuffer().offer(node)) {
+            tryToDrainReadBuffers();
+        }
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            if (statsCounter != null) {
+                statsCounter.recordPut();
+            }
+            Node<K, V> node = cache.get(key);
+            if (node != null) {
+                // key is already added
+                V oldValue = node.value;
+                node.value = value;
+                onAccess(node);
+                deferRemoval(key, oldValue, RemovalCause.REPLACED);
+                return oldValue;
+            }
+            if (cache.size() >= capacity) {
+                // do eviction
+                Node<K, V> oldHead = head;
+                retire(oldHead);
+                cache.remove(oldHead.key, oldHead);
+                if (statsCounter != null) {
+                    statsCounter.recordEviction(RemovalCause.SIZE);
+                }
+                deferRemoval(oldHead.key, oldHead.value, RemovalCause.SIZE);
+            }
+            Node<K, V> newNode = new Node<>(key, value);
+            linkLast(newNode);
+            cache.put(key, newNode);
+            return null;
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        evictionLock.lock();
+        try {
+            // unlike get, the lookup of an absent key is not recorded as a miss
+            if (cache.containsKey(key)) {
+                V v = get(key);
+                if (v != null) {
+                    return v;
+                }
+            }
+            return put(key, value);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V remove(Object key) {
+        evictionLock.lock();
+        try {
+            Node<K, V> node = cache.remove(key);
+            if (node == null) {
+                return null;
+            }
+            if (statsCounter != null) {
+                statsCounter.recordRemove();
+            }
+            retire(node);
+            deferRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+            return node.value;
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        evictionLock.lock();
+        try {
+            return ICache.super.remove(key, value);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V replace(K key, V value) {
+        evictionLock.lock();
+        try {
+            return ICache.super.replace(key, value);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        evictionLock.lock();
+        try {
+            return ICache.super.replace(key, oldValue, newValue);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        evictionLock.lock();
+        try {
+            return ICache.super.computeIfAbsent(key, mappingFunction);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        evictionLock.lock();
+        try {
+            return ICache.super.computeIfPresent(key, remappingFunction);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        evictionLock.lock();
+        try {
+            return ICache.super.compute(key, remappingFunction);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        evictionLock.lock();
+        try {
+            return ICache.super.merge(key, value, remappingFunction);
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void recordStats() {
+        evictionLock.lock();
+        try {
+            if (statsCounter == null) {
+                statsCounter = new StatsCounter();
+            }
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public CacheStats stats() {
+        StatsCounter stats = statsCounter;
+        return stats == null ? CacheStats.EMPTY : stats.snapshot();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node<K, V> n = head; n != null; n = head) {
+                retire(n);
+                cache.remove(n.key, n);
+                deferRemoval(n.key, n.value, RemovalCause.EXPLICIT);
+            }
+        } finally {
+            unlockEviction();
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
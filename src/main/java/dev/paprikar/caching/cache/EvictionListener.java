@@ -0,0 +1,16 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * Notified by an engine when it evicts an entry to free the space for another one,
+ * or rejects an entry heavier than its maximum weight.
+ * The listener is called synchronously and must not modify the engine.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+@FunctionalInterface
+interface EvictionListener<K, V> {
+
+    void onEviction(K key, V value);
+}
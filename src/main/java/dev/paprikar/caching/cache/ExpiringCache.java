@@ -0,0 +1,495 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This implementation adds the expiration of entries to an {@link LruCache}, {@link LfuCache},
+ * {@link WTinyLfuCache}, {@link ArcCache}, {@link S3FifoCache}, {@link ClockProCache} or {@link AdaptiveCache} engine.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>the engine - to store the entries and evict them by the deletion strategy.</li>
+ *     <li>{@code HashMap<KEY, Timer>} - to store the expiration times of the keys.</li>
+ *     <li>{@link TimerWheel} - a hierarchical timer wheel of the expiration times.</li>
+ * </ul>
+ *
+ * <p>
+ * An entry expires after the specified duration since its last write (expire-after-write),
+ * which may be set per entry by {@link #put(Object, Object, long, TimeUnit)},
+ * and/or since its last read or write (expire-after-access), whichever comes first.
+ * An expired entry is removed from the engine lazily: when its key is accessed,
+ * or when the time advances past the bucket of its timer during any operation or {@link #cleanUp()}.
+ * The removal goes through the engine, so an {@link LfuCache} node is unlinked from its frequency
+ * subsequence as usual, and an expired key added again starts with the initial frequency.
+ * The timers of the entries evicted by the engine are removed as well.
+ * The {@link RemovalListener} is notified about an expired entry when it is removed.
+ *
+ * <p>
+ * The expiration takes an amortized {@code O(1)} time per entry and never scans all entries.
+ * {@link #size()} may include the entries expired within the last second and not accessed since.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class ExpiringCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The duration used for entries that do not expire, about 146 years.
+     */
+    static final long NEVER = Long.MAX_VALUE >>> 1;
+
+    /**
+     * The engine holding the entries.
+     */
+    final CacheEngine<K, V> cache;
+
+    /**
+     * The map for mapping keys and their timers.
+     */
+    final Map<K, TimerWheel.Timer<K>> timers;
+
+    /**
+     * The timer wheel of the expiration times.
+     */
+    final TimerWheel<K> wheel;
+
+    /**
+     * The default expire-after-write duration in nanoseconds.
+     */
+    final long expireAfterWriteNanos;
+
+    /**
+     * The expire-after-access duration in nanoseconds.
+     */
+    final long expireAfterAccessNanos;
+
+    /**
+     * The source of the time.
+     */
+    final Ticker ticker;
+
+    /**
+     * The recorder of the statistics shared with the engine, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * Removes the entries of the due timers.
+     */
+    final Consumer<TimerWheel.Timer<K>> expirer = this::expire;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static long toNanos(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Illegal duration: " + duration);
+        }
+        return duration == 0 ? NEVER : Math.min(unit.toNanos(duration), NEVER);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    void expire(TimerWheel.Timer<K> timer) {
+        timers.remove(timer.key);
+        V value = cache.discard(timer.key);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.EXPIRED);
+        }
+        notifyRemoval(timer.key, value, RemovalCause.EXPIRED);
+    }
+
+    void unschedule(K key) {
+        TimerWheel.Timer<K> timer = timers.remove(key);
+        if (timer != null) {
+            wheel.unschedule(timer);
+        }
+    }
+
+    void onEviction(K key, V value) {
+        unschedule(key);
+        notifyRemoval(key, value, RemovalCause.SIZE);
+    }
+
+    /**
+     * Reads the time and expires the due timers.
+     */
+    long advance() {
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        return now;
+    }
+
+    /**
+     * Returns the timer of the key, or {@code null} if the key is absent or expired.
+     * The expired entry is removed.
+     */
+    TimerWheel.Timer<K> liveTimer(Object key, long now) {
+        TimerWheel.Timer<K> timer = timers.get(key);
+        if (timer != null && timer.expiresAt - now <= 0) {
+            wheel.unschedule(timer);
+            expire(timer);
+            return null;
+        }
+        return timer;
+    }
+
+    V put(K key, V value, long expireAfterWriteNanos) {
+        long now = advance();
+        TimerWheel.Timer<K> timer = liveTimer(key, now);
+        if (timer == null) {
+            timer = new TimerWheel.Timer<>(key);
+            timers.put(key, timer);
+        } else {
+            wheel.unschedule(timer);
+        }
+        timer.writeExpiresAt = now + expireAfterWriteNanos;
+        timer.expiresAt = Math.min(timer.writeExpiresAt, now + expireAfterAccessNanos);
+        wheel.schedule(timer);
+        // the engine may evict or reject the entries, removing their timers
+        V oldValue = cache.put(key, value);
+        if (oldValue != null) {
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        return oldValue;
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        final Iterator<Map.Entry<K, V>> it = cache.entrySet().iterator();
+        Map.Entry<K, V> current;
+
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        public Map.Entry<K, V> next() {
+            return current = it.next();
+        }
+
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            it.remove();
+            unschedule(current.getKey());
+            notifyRemoval(current.getKey(), current.getValue(), RemovalCause.EXPLICIT);
+            current = null;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return ExpiringCache.this.size();
+        }
+
+        public final void clear() {
+            ExpiringCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            advance();
+            EntryIterator it = new EntryIterator();
+            return new Iterator<K>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            if (containsKey(key)) {
+                ExpiringCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return ExpiringCache.this.size();
+        }
+
+        public final void clear() {
+            ExpiringCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            advance();
+            EntryIterator it = new EntryIterator();
+            return new Iterator<V>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public V next() {
+                    return it.next().getValue();
+                }
+
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return ExpiringCache.this.size();
+        }
+
+        public final void clear() {
+            ExpiringCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            advance();
+            return new EntryIterator();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link ExpiringCache} over the specified empty engine.
+     *
+     * @param cache             the empty {@link LruCache}, {@link LfuCache}, {@link WTinyLfuCache}, {@link ArcCache},
+     *                          {@link S3FifoCache}, {@link ClockProCache} or {@link AdaptiveCache}.
+     * @param expireAfterWrite  the default duration since the last write after which an entry expires,
+     *                          or zero if the entries do not expire after write by default.
+     * @param expireAfterAccess the duration since the last read or write after which an entry expires,
+     *                          or zero if the entries do not expire after access.
+     * @param unit              the unit of the durations.
+     * @param ticker            the source of the time.
+     * @throws IllegalArgumentException if the engine is not supported or not empty, or a duration is negative.
+     */
+    public ExpiringCache(ICache<K, V> cache, long expireAfterWrite, long expireAfterAccess,
+                         TimeUnit unit, Ticker ticker) {
+        if (!(cache instanceof CacheEngine)) {
+            throw new IllegalArgumentException("Unsupported cache: " + cache.getClass().getName());
+        }
+        if (!cache.isEmpty()) {
+            throw new IllegalArgumentException("The cache is not empty");
+        }
+        this.expireAfterWriteNanos = toNanos(expireAfterWrite, unit);
+        this.expireAfterAccessNanos = toNanos(expireAfterAccess, unit);
+        this.ticker = Objects.requireNonNull(ticker);
+        this.cache = (CacheEngine<K, V>) cache;
+        this.cache.setEvictionListener(this::onEviction);
+        timers = new HashMap<>();
+        wheel = new TimerWheel<>(ticker.read());
+    }
+
+    /**
+     * Constructs a {@link ExpiringCache} with the specified capacity, deletion strategy and durations
+     * and the default capacity factor (1.5).
+     *
+     * @param capacity          the cache capacity.
+     * @param strategy          the deletion strategy.
+     * @param expireAfterWrite  the default duration since the last write after which an entry expires,
+     *                          or zero if the entries do not expire after write by default.
+     * @param expireAfterAccess the duration since the last read or write after which an entry expires,
+     *                          or zero if the entries do not expire after access.
+     * @param unit              the unit of the durations.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or a duration is negative.
+     */
+    public ExpiringCache(int capacity, CacheDeletionStrategy strategy, long expireAfterWrite,
+                         long expireAfterAccess, TimeUnit unit) {
+        this(Cache.newEngine(capacity, Cache.DEFAULT_CAPACITY_FACTOR, strategy),
+                expireAfterWrite, expireAfterAccess, unit, Ticker.SYSTEM);
+    }
+
+    /**
+     * Associates the value with the key in this cache, the entry expires after the specified duration
+     * since this write instead of the default one.
+     *
+     * @param key      the key.
+     * @param value    the value.
+     * @param duration the duration since this write after which the entry expires.
+     * @param unit     the unit of the duration.
+     * @return the previous value associated with the key, or {@code null} if there was no mapping for the key.
+     * @throws IllegalArgumentException if the duration is not positive.
+     */
+    public V put(K key, V value, long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Illegal duration: " + duration);
+        }
+        return put(key, value, toNanos(duration, unit));
+    }
+
+    /**
+     * Removes the expired entries whose timers are due.
+     */
+    public void cleanUp() {
+        advance();
+    }
+
+    public int size() {
+        advance();
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return liveTimer(key, advance()) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        long now = advance();
+        for (Map.Entry<K, V> e : cache.entrySet()) {
+            if (Objects.equals(value, e.getValue()) && timers.get(e.getKey()).expiresAt - now > 0)
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        long now = advance();
+        TimerWheel.Timer<K> timer = liveTimer(key, now);
+        if (timer == null) {
+            // the engine records the miss, and W-TinyLFU and the adaptive policy account it
+            return cache.get(key);
+        }
+        if (expireAfterAccessNanos != NEVER) {
+            wheel.unschedule(timer);
+            timer.expiresAt = Math.min(timer.writeExpiresAt, now + expireAfterAccessNanos);
+            wheel.schedule(timer);
+        }
+        return cache.get(key);
+    }
+
+    public V put(K key, V value) {
+        return put(key, value, expireAfterWriteNanos);
+    }
+
+    public V remove(Object key) {
+        long now = advance();
+        TimerWheel.Timer<K> timer = timers.remove(key);
+        if (timer == null) {
+            return null;
+        }
+        wheel.unschedule(timer);
+        if (timer.expiresAt - now <= 0) {
+            V value = cache.discard(key);
+            if (statsCounter != null) {
+                statsCounter.recordEviction(RemovalCause.EXPIRED);
+            }
+            notifyRemoval(timer.key, value, RemovalCause.EXPIRED);
+            return null;
+        }
+        V value = cache.remove(key);
+        notifyRemoval(timer.key, value, RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void recordStats() {
+        cache.recordStats();
+        statsCounter = cache.statsCounter();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public void clear() {
+        List<RemovalNotification<K, V>> removed = null;
+        if (removalListener != null) {
+            long now = ticker.read();
+            removed = new ArrayList<>(cache.size());
+            for (Map.Entry<K, V> e : cache.entrySet()) {
+                // the entries expired but not removed yet are reported as expired
+                RemovalCause cause = timers.get(e.getKey()).expiresAt - now <= 0 ?
+                        RemovalCause.EXPIRED : RemovalCause.EXPLICIT;
+                removed.add(new RemovalNotification<>(e.getKey(), e.getValue(), cause));
+            }
+        }
+        cache.clear();
+        timers.clear();
+        wheel.clear();
+        if (removed != null) {
+            for (RemovalNotification<K, V> notification : removed) {
+                notification.deliver(removalListener);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,248 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Arrays;
+
+/**
+ * The LFU eviction order of a fixed number of slots, stored in {@code int} arrays.
+ * It consists of a doubly linked list of frequency buckets in the ascending order of frequencies,
+ * each bucket holds a doubly linked list of its slots in the order of their arrival to the bucket.
+ *
+ * <p>
+ * Incrementing the frequency of a slot moves it from its bucket to the tail of the next bucket,
+ * which is created right after the current one if it does not hold the next frequency yet.
+ * Empty buckets are removed immediately, so there are at most {@code capacity} buckets plus
+ * one transient bucket during the move. Freed buckets are reused through a free list,
+ * so no operation allocates memory.
+ *
+ * <p>
+ * The eviction candidate is the head slot of the first bucket, which gives exactly the same order
+ * as {@link LfuCache}: the least frequent, and the least recently moved among the equally frequent.
+ *
+ * @author paprikar
+ */
+final class FrequencyBuckets implements SlotOrder {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The previous slot within the bucket, per slot.
+     */
+    final int[] prev;
+
+    /**
+     * The next slot within the bucket, per slot.
+     */
+    final int[] next;
+
+    /**
+     * The bucket of the slot, per slot.
+     */
+    final int[] bucketOf;
+
+    /**
+     * The frequency of the bucket, per bucket.
+     */
+    final int[] frequency;
+
+    /**
+     * The first slot of the bucket, per bucket.
+     */
+    final int[] head;
+
+    /**
+     * The last slot of the bucket, per bucket.
+     */
+    final int[] tail;
+
+    /**
+     * The previous (less frequent) bucket, per bucket.
+     */
+    final int[] bucketPrev;
+
+    /**
+     * The next (more frequent) bucket, per bucket. Also links the free buckets.
+     */
+    final int[] bucketNext;
+
+    /**
+     * The least frequent bucket.
+     */
+    int first;
+
+    /**
+     * The head of the free list of buckets.
+     */
+    int freeBucket;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    int allocateBucket(int f) {
+        int b = freeBucket;
+        freeBucket = bucketNext[b];
+        frequency[b] = f;
+        head[b] = NIL;
+        tail[b] = NIL;
+        return b;
+    }
+
+    void releaseBucket(int b) {
+        int p = bucketPrev[b];
+        int n = bucketNext[b];
+        if (p == NIL) {
+            first = n;
+        } else {
+            bucketNext[p] = n;
+        }
+        if (n != NIL) {
+            bucketPrev[n] = p;
+        }
+        bucketNext[b] = freeBucket;
+        freeBucket = b;
+    }
+
+    /**
+     * Links the bucket {@code b} right after the bucket {@code after}, or first if {@code after} is {@link #NIL}.
+     */
+    void linkBucket(int b, int after) {
+        int n = after == NIL ? first : bucketNext[after];
+        bucketPrev[b] = after;
+        bucketNext[b] = n;
+        if (after == NIL) {
+            first = b;
+        } else {
+            bucketNext[after] = b;
+        }
+        if (n != NIL) {
+            bucketPrev[n] = b;
+        }
+    }
+
+    void append(int slot, int b) {
+        int t = tail[b];
+        prev[slot] = t;
+        next[slot] = NIL;
+        if (t == NIL) {
+            head[b] = slot;
+        } else {
+            next[t] = slot;
+        }
+        tail[b] = slot;
+        bucketOf[slot] = b;
+    }
+
+    /**
+     * Unlinks the slot from its bucket and returns {@code true} if the bucket became empty.
+     */
+    boolean unlink(int slot) {
+        int b = bucketOf[slot];
+        int p = prev[slot];
+        int n = next[slot];
+        if (p == NIL) {
+            head[b] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tail[b] = p;
+        } else {
+            prev[n] = p;
+        }
+        return head[b] == NIL;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    FrequencyBuckets(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        bucketOf = new int[capacity];
+        frequency = new int[capacity + 1];
+        head = new int[capacity + 1];
+        tail = new int[capacity + 1];
+        bucketPrev = new int[capacity + 1];
+        bucketNext = new int[capacity + 1];
+        clear();
+    }
+
+    /**
+     * Adds the slot with the zero frequency.
+     */
+    public void add(int slot) {
+        int b = first;
+        if (b == NIL || frequency[b] != 0) {
+            b = allocateBucket(0);
+            linkBucket(b, NIL);
+        }
+        append(slot, b);
+    }
+
+    /**
+     * Increments the frequency of the slot.
+     */
+    void increment(int slot) {
+        int b = bucketOf[slot];
+        int f = frequency[b];
+        int target = bucketNext[b];
+        if (target == NIL || frequency[target] != f + 1) {
+            target = allocateBucket(f + 1);
+            linkBucket(target, b);
+        }
+        if (unlink(slot)) {
+            releaseBucket(b);
+        }
+        append(slot, target);
+    }
+
+    /**
+     * Increments the frequency of the slot.
+     */
+    public void access(int slot) {
+        increment(slot);
+    }
+
+    /**
+     * Removes the slot.
+     */
+    public void remove(int slot) {
+        int b = bucketOf[slot];
+        if (unlink(slot)) {
+            releaseBucket(b);
+        }
+    }
+
+    int frequencyOf(int slot) {
+        return frequency[bucketOf[slot]];
+    }
+
+    /**
+     * Returns the eviction candidate, or {@link #NIL} if there are no slots.
+     */
+    public int victim() {
+        return first == NIL ? NIL : head[first];
+    }
+
+    /**
+     * Returns the slot following the specified one in the eviction order, or {@link #NIL}.
+     */
+    public int nextSlot(int slot) {
+        int n = next[slot];
+        if (n != NIL) {
+            return n;
+        }
+        int b = bucketNext[bucketOf[slot]];
+        return b == NIL ? NIL : head[b];
+    }
+
+    public void clear() {
+        first = NIL;
+        for (int b = 0; b < bucketNext.length; b++) {
+            bucketNext[b] = b + 1;
+        }
+        bucketNext[bucketNext.length - 1] = NIL;
+        freeBucket = 0;
+        Arrays.fill(bucketOf, NIL);
+    }
+}
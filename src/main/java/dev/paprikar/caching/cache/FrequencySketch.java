@@ -0,0 +1,165 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A probabilistic multiset for estimating the popularity of an element within a time window.
+ * The implementation is a count-min sketch of 4-bit counters: every {@code long} of the table
+ * holds 16 counters, an element is mapped to 4 counters (one per hash function)
+ * and its frequency is estimated as the minimum of them, so the estimate is at most 15.
+ *
+ * <p>
+ * To keep the sketch fresh, all counters are halved (aging) after the number of increments
+ * reaches the sample size, which is ten times the maximum number of tracked elements.
+ *
+ * <p>
+ * The sketch uses 8 bytes per each tracked element regardless of the element type,
+ * so it's much cheaper than keeping a counter per key.
+ *
+ * @author paprikar
+ */
+final class FrequencySketch {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The seeds of the hash functions.
+     */
+    static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * Clears the lowest bit of every counter after a shift.
+     */
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Selects the lowest bit of every counter.
+     */
+    static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * The maximum value of a counter.
+     */
+    static final int MAXIMUM_FREQUENCY = 15;
+
+    /**
+     * The table of counters.
+     */
+    final long[] table;
+
+    /**
+     * The mask to select an index of the table.
+     */
+    final int tableMask;
+
+    /**
+     * The number of increments after which all counters are halved.
+     */
+    final int sampleSize;
+
+    /**
+     * The number of increments since the last aging.
+     */
+    int size;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    /**
+     * Increments the {@code j}-th counter of the {@code i}-th element of the table, unless it's saturated.
+     */
+    boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        // odd counters lose a half during the shift
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link FrequencySketch} for the specified maximum number of tracked elements.
+     *
+     * @param maximumSize the maximum number of tracked elements, usually the cache capacity.
+     */
+    FrequencySketch(int maximumSize) {
+        int maximum = Math.min(Math.max(maximumSize, 1), 1 << 30);
+        table = new long[Math.max(Cache.ceilingPowerOfTwo(maximum), 8)];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * maximum, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the element, up to {@link #MAXIMUM_FREQUENCY}.
+     *
+     * @param e the element.
+     * @return the estimated frequency.
+     */
+    int frequency(Object e) {
+        int hash = spread(Objects.hashCode(e));
+        // the counter within each long is selected by the lowest bits of the hash
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of the element, halving all counters when the sample size is reached.
+     *
+     * @param e the element.
+     */
+    void increment(Object e) {
+        int hash = spread(Objects.hashCode(e));
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            added |= incrementAt(index, start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Clears all counters.
+     */
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+}
@@ -1,6 +1,56 @@
 package dev.paprikar.caching.cache;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public interface ICache<K, V> extends Map<K, V> {
+
+    /**
+     * Returns the values of the present keys, as if by {@link #get(Object)} for every key.
+     * The absent keys are not included.
+     *
+     * @param keys the keys.
+     * @return the map of the present keys and their values, in the order of the keys.
+     */
+    default Map<K, V> getAll(Iterable<? extends K> keys) {
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the listener notified about every entry removed from this cache with the cause of the removal,
+     * or removes the listener if it is {@code null}.
+     * The concurrent caches notify the listener after their locks are released.
+     *
+     * @param listener the listener of the removals, or {@code null}.
+     * @throws UnsupportedOperationException if this cache does not support the removal listeners.
+     */
+    default void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        throw new UnsupportedOperationException("Removal listeners are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Starts recording the statistics of this cache, which are returned by {@link #stats()}.
+     * The statistics are disabled by default and cost nothing until they are enabled.
+     *
+     * @throws UnsupportedOperationException if this cache does not support the statistics.
+     */
+    default void recordStats() {
+        throw new UnsupportedOperationException("Statistics are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded since {@link #recordStats()}.
+     *
+     * @return the statistics, or {@link CacheStats#EMPTY} if they are not recorded.
+     */
+    default CacheStats stats() {
+        return CacheStats.EMPTY;
+    }
 }
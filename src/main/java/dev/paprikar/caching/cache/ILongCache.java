@@ -0,0 +1,18 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * A cache with primitive {@code long} keys. The primitive operations do not box the keys.
+ * {@code int} keys are widened to {@code long} without boxing as well.
+ *
+ * @param <V> the type of mapped values
+ */
+public interface ILongCache<V> extends ICache<Long, V> {
+
+    boolean containsKey(long key);
+
+    V get(long key);
+
+    V put(long key, V value);
+
+    V remove(long key);
+}
@@ -0,0 +1,629 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation is an LRU cache with its own hash table. It uses the following data structures:
+ * <ul>
+ *     <li>{@code Node[]} - a table of the buckets of the nodes chained by their {@code next} links.</li>
+ *     <li>the intrusive {@code before} / {@code after} links of the nodes - a doubly linked list
+ *     of the nodes in the recency order, the least recently used node is the head of the list.</li>
+ * </ul>
+ *
+ * <p>
+ * Compared to {@link LruCache}, which removes and adds the key again in its {@code LinkedHashMap},
+ * every operation hashes the key once and looks it up in a single bucket.
+ * A hit only moves the node to the tail of the list, and an update replaces the value of the node,
+ * so neither of them allocates memory. A new key allocates a single node.
+ * The table is created in constructor and never grows, as the number of entries is bounded by the capacity.
+ * The entries of the Collection-views are the nodes themselves.
+ *
+ * <p>
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class IntrusiveLruCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The buckets of the nodes.
+     */
+    final Node<K, V>[] table;
+
+    /**
+     * The mask to select a bucket of the table.
+     */
+    final int mask;
+
+    /**
+     * The least recently used node.
+     */
+    Node<K, V> head;
+
+    /**
+     * The most recently used node.
+     */
+    Node<K, V> tail;
+
+    /**
+     * The number of entries.
+     */
+    int size;
+
+    /**
+     * The number of times this {@link IntrusiveLruCache} has been structurally modified,
+     * including the accesses which change the recency order.
+     * This field is used to make iterators on Collection-views of the {@link IntrusiveLruCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static final class Node<K, V> implements Map.Entry<K, V> {
+
+        final int hash;
+        final K key;
+        V value;
+
+        /**
+         * The next node of the bucket.
+         */
+        Node<K, V> next;
+
+        /**
+         * The less recently used node.
+         */
+        Node<K, V> before;
+
+        /**
+         * The more recently used node.
+         */
+        Node<K, V> after;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+
+        public final String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    Node<K, V> find(Object key) {
+        int hash = ObjectIndex.hash(key);
+        for (Node<K, V> n = table[hash & mask]; n != null; n = n.next) {
+            if (n.hash == hash && Objects.equals(n.key, key)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    void linkLast(Node<K, V> node) {
+        Node<K, V> t = tail;
+        node.before = t;
+        node.after = null;
+        if (t == null) {
+            head = node;
+        } else {
+            t.after = node;
+        }
+        tail = node;
+    }
+
+    void unlink(Node<K, V> node) {
+        Node<K, V> b = node.before;
+        Node<K, V> a = node.after;
+        if (b == null) {
+            head = a;
+        } else {
+            b.after = a;
+        }
+        if (a == null) {
+            tail = b;
+        } else {
+            a.before = b;
+        }
+    }
+
+    /**
+     * Moves the node to the tail of the list.
+     */
+    void access(Node<K, V> node) {
+        if (node != tail) {
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    /**
+     * Removes the node from its bucket.
+     */
+    void unlinkFromBucket(Node<K, V> node) {
+        int i = node.hash & mask;
+        Node<K, V> n = table[i];
+        if (n == node) {
+            table[i] = node.next;
+            return;
+        }
+        while (n.next != node) {
+            n = n.next;
+        }
+        n.next = node.next;
+    }
+
+    /**
+     * Adds a node of the absent key, evicting the least recently used node if the cache is full.
+     */
+    void insert(int hash, K key, V value) {
+        if (size >= capacity) {
+            // do eviction
+            Node<K, V> eldest = head;
+            unlinkFromBucket(eldest);
+            unlink(eldest);
+            size--;
+            if (statsCounter != null) {
+                statsCounter.recordEviction(RemovalCause.SIZE);
+            }
+            notifyRemoval(eldest.key, eldest.value, RemovalCause.SIZE);
+        }
+        int i = hash & mask;
+        Node<K, V> node = new Node<>(hash, key, value, table[i]);
+        table[i] = node;
+        linkLast(node);
+        size++;
+        modCount++;
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    void removeNode(Node<K, V> node) {
+        unlinkFromBucket(node);
+        unlink(node);
+        size--;
+        modCount++;
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            IntrusiveLruCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            Node<K, V> node = find(key);
+            if (node != null) {
+                removeNode(node);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = head; n != null; n = n.after) {
+                action.accept(n.key);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            IntrusiveLruCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = head; n != null; n = n.after) {
+                action.accept(n.value);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            IntrusiveLruCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Node<K, V> node = find(e.getKey());
+            return node != null && Objects.equals(e.getValue(), node.value);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Node<K, V> node = find(e.getKey());
+            if (node != null && Objects.equals(e.getValue(), node.value)) {
+                removeNode(node);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        Node<K, V> next;
+        Node<K, V> current;
+        int expectedModCount;
+
+        final Node<K, V> nextNode() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = node;
+            next = node.after;
+            return node;
+        }
+
+        public CacheIterator() {
+            next = head;
+            current = null;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final void remove() {
+            Node<K, V> node = current;
+            if (node == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = null;
+            removeNode(node);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link IntrusiveLruCache} with the specified capacity and capacity factor.
+     * The table is created with the power of two length not less than {@code capacity * capacityFactor}
+     * and large enough to keep its load factor not greater than 0.75.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the table.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public IntrusiveLruCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] t = (Node<K, V>[]) new Node<?, ?>[LongIndex.tableLength(capacity, capacityFactor)];
+        table = t;
+        mask = t.length - 1;
+    }
+
+    /**
+     * Constructs a {@link IntrusiveLruCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public IntrusiveLruCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        for (Node<K, V> n = head; n != null; n = n.after) {
+            if (Objects.equals(value, n.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Node<K, V> node = find(key);
+        if (node == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        access(node);
+        modCount++;
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        int hash = ObjectIndex.hash(key);
+        for (Node<K, V> n = table[hash & mask]; n != null; n = n.next) {
+            if (n.hash == hash && Objects.equals(n.key, key)) {
+                // key is already added
+                V oldValue = n.value;
+                n.value = value;
+                access(n);
+                modCount++;
+                notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+                return oldValue;
+            }
+        }
+        insert(hash, key, value);
+        return null;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        int hash = ObjectIndex.hash(key);
+        for (Node<K, V> n = table[hash & mask]; n != null; n = n.next) {
+            if (n.hash == hash && Objects.equals(n.key, key)) {
+                if (n.value == null) {
+                    break;
+                }
+                // unlike get, the lookup of an absent key is not recorded as a miss
+                if (statsCounter != null) {
+                    statsCounter.recordHit();
+                }
+                access(n);
+                modCount++;
+                return n.value;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        int hash = ObjectIndex.hash(key);
+        int i = hash & mask;
+        Node<K, V> prev = null;
+        for (Node<K, V> n = table[i]; n != null; prev = n, n = n.next) {
+            if (n.hash == hash && Objects.equals(n.key, key)) {
+                if (prev == null) {
+                    table[i] = n.next;
+                } else {
+                    prev.next = n.next;
+                }
+                unlink(n);
+                size--;
+                modCount++;
+                if (statsCounter != null) {
+                    statsCounter.recordRemove();
+                }
+                notifyRemoval(n.key, n.value, RemovalCause.EXPLICIT);
+                return n.value;
+            }
+        }
+        return null;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    public void clear() {
+        Node<K, V> removed = removalListener == null ? null : head;
+        Arrays.fill(table, null);
+        head = null;
+        tail = null;
+        size = 0;
+        modCount++;
+        // the removed nodes keep their recency links
+        for (Node<K, V> n = removed; n != null; n = n.after) {
+            removalListener.onRemoval(n.key, n.value, RemovalCause.EXPLICIT);
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
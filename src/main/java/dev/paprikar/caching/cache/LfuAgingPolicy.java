@@ -0,0 +1,20 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The policies of aging of the frequencies in {@link LfuCache}.
+ */
+public enum LfuAgingPolicy {
+    /**
+     * The frequencies only increase.
+     */
+    NONE,
+    /**
+     * All frequencies are halved periodically.
+     */
+    HALVING,
+    /**
+     * LFU with dynamic aging (LFU-DA): a new entry starts with the frequency
+     * of the last evicted entry (the cache age) plus one instead of zero.
+     */
+    DYNAMIC
+}
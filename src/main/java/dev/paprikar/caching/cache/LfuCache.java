@@ -8,32 +8,57 @@ import java.util.function.Consumer;
  * This implementation uses the following data structures:
  * <ul>
  *     <li>a doubly linked list of nodes of type {@link Node}
- *     that stores information about key, value and frequency.</li>
+ *     that stores information about key, value and the bucket of its frequency.</li>
  *     <li>a pointer to the head node of the doubly linked list.</li>
  *     <li>{@code HashMap<KEY, Node>} - to store information
  *     about the keys and corresponding nodes.</li>
- *     <li>{@code HashMap<FREQUENCY, Node>} - to store information
- *     about the most recently used node for each existing frequency.</li>
+ *     <li>frequency buckets of type {@link Bucket} - one per existing frequency,
+ *     that store the frequency and the first and the last nodes of its subsequence.</li>
  * </ul>
  *
  * <p>
- * Constant tracking of the head node and the most recently used node for each frequency
- * allows to perform all necessary operations to move nodes between frequency subsequences.
+ * The list is sorted by frequency, so the nodes of a bucket form a contiguous subsequence,
+ * and the next bucket is the bucket of the node following the last node of the subsequence.
+ * This allows to move nodes between frequency subsequences by a few pointer moves without any lookups.
  * A previously non-existing node will assume a zero frequency when added.
  * The frequency of a node is incremented when it is read or when the value associated with it is modified.
  * When the frequency is incremented, the node is removed from the subsequence related to the old frequency,
  * and is inserted at the end of the subsequence related to the new frequency.
- * If there is no information about the most recently used node in the next subsequence
- * the node is inserted at the end of the current subsequence, so that it does not break the sequence's integrity.
+ * If there is no subsequence related to the new frequency, a new bucket is created for the node
+ * right after the current subsequence, or the bucket itself takes the new frequency if the node is its only node.
+ * An emptied bucket is kept for reuse, so the frequency increments do not allocate memory in a steady state.
  *
  * <p>
- * All this allows to perform add / get / remove operations in a constant {@code O(1)} time.
+ * Optionally the frequencies are aged (see {@link LfuAgingPolicy}), so that entries
+ * which were popular in the past do not stay in the cache forever:
+ * <ul>
+ *     <li>{@link LfuAgingPolicy#HALVING} - all frequencies are halved after the specified number of operations.
+ *     Halving does not change the order of the nodes, so the sequence stays sorted,
+ *     and the buckets of the neighbouring subsequences with equal frequencies are merged in a single pass.
+ *     The pass takes {@code O(n)} time, which is amortized to {@code O(1)} as the period is not less than the capacity.</li>
+ *     <li>{@link LfuAgingPolicy#DYNAMIC} (LFU-DA) - the cache age is set to the frequency of every evicted node,
+ *     and a new node starts with the frequency equal to the cache age plus one instead of zero,
+ *     so the cache age grows with every eviction, even if the new nodes are evicted before their first hit.
+ *     Since the evicted node has the smallest frequency, no node has a frequency less than the cache age,
+ *     so the new node is still inserted into the head subsequence or the one right after it in a constant time.
+ *     Entries that are no longer accessed are overtaken by the growing cache age.</li>
+ * </ul>
+ *
+ * <p>
+ * Optionally the cache is also bounded by the total weight of the entries calculated by a {@link Weigher}.
+ * In this mode the head nodes are evicted until the new entry fits, the weight of a node is updated
+ * when its value is replaced, and the entries which are heavier than the maximum weight are handled
+ * according to the {@link OversizePolicy}. The weight is not updated by {@link Map.Entry#setValue}.
+ *
+ * <p>
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time
+ * (amortized, if the cache is bounded by the weight).
  *
  * @param <K> the type of keys maintained by this cache
  * @param <V> the type of mapped values
  * @author paprikar
  */
-public class LfuCache<K, V> implements ICache<K, V> {
+public class LfuCache<K, V> implements CacheEngine<K, V> {
 
     /* ---------------------------------------------------------------- */
     // Fields
@@ -43,20 +68,82 @@ public class LfuCache<K, V> implements ICache<K, V> {
      */
     static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
 
+    /**
+     * The multiplier of the capacity used as the aging period when none specified in constructor.
+     */
+    static final int DEFAULT_AGING_PERIOD_FACTOR = 10;
+
     /**
      * The cache capacity.
      */
     final int capacity;
 
+    /**
+     * The policy of aging of the frequencies.
+     */
+    final LfuAgingPolicy agingPolicy;
+
+    /**
+     * The number of operations between halvings of the frequencies.
+     */
+    final int agingPeriod;
+
+    /**
+     * The number of operations since the last halving of the frequencies.
+     */
+    int operations;
+
+    /**
+     * The frequency of the last evicted node, the initial frequency of new nodes is greater by one.
+     * Always zero unless the {@link LfuAgingPolicy#DYNAMIC} policy is used.
+     */
+    int cacheAge;
+
+    /**
+     * The weigher of the entries, or {@code null} if the cache is bounded only by the capacity.
+     */
+    final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * The maximum total weight of the entries.
+     */
+    final long maximumWeight;
+
+    /**
+     * The policy of handling the entries heavier than the maximum weight.
+     */
+    final OversizePolicy oversizePolicy;
+
+    /**
+     * The total weight of the entries.
+     */
+    long totalWeight;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+
     /**
      * The map for mapping keys and related nodes.
      */
     final Map<K, Node<K, V>> cache;
 
     /**
-     * The map for mapping the most recently used nodes for each frequency.
+     * The last emptied bucket kept for reuse, or {@code null}.
      */
-    final Map<Integer, Node<K, V>> frequencyTails;
+    Bucket<K, V> freeBucket;
 
     /**
      * The head (eldest) of the doubly linked list.
@@ -88,18 +175,40 @@ public class LfuCache<K, V> implements ICache<K, V> {
     /* ---------------------------------------------------------------- */
     // Internal utilities
 
+    /**
+     * The subsequence of the nodes with the same frequency.
+     */
+    static final class Bucket<K, V> {
+
+        int frequency;
+
+        /**
+         * The least recently moved node of the bucket.
+         */
+        Node<K, V> head;
+
+        /**
+         * The most recently moved node of the bucket.
+         */
+        Node<K, V> tail;
+
+        Bucket(int frequency) {
+            this.frequency = frequency;
+        }
+    }
+
     static class Node<K, V> implements Map.Entry<K, V> {
 
         final K key;
         V value;
-        int frequency;
+        Bucket<K, V> bucket;
+        int weight;
         Node<K, V> prev;
         Node<K, V> next;
 
-        public Node(K key, V value, int frequency) {
+        public Node(K key, V value) {
             this.key = key;
             this.value = value;
-            this.frequency = frequency;
         }
 
         public K getKey() {
@@ -163,50 +272,197 @@ public class LfuCache<K, V> implements ICache<K, V> {
         }
     }
 
-    boolean isFrequencyHead(Node<K, V> node) {
-        return node.prev == null ||
-                node.prev.frequency != node.frequency;
+    Bucket<K, V> newBucket(int frequency) {
+        Bucket<K, V> bucket = freeBucket;
+        if (bucket == null) {
+            return new Bucket<>(frequency);
+        }
+        freeBucket = null;
+        bucket.frequency = frequency;
+        return bucket;
     }
 
-    boolean isFrequencyTail(Node<K, V> node) {
-        return node.next == null ||
-                node.next.frequency != node.frequency;
+    void releaseBucket(Bucket<K, V> bucket) {
+        bucket.head = null;
+        bucket.tail = null;
+        freeBucket = bucket;
     }
 
-    void incrementNodeFrequency(Node<K, V> node) {
-        int oldFrequency = node.frequency;
-        int newFrequency = node.frequency + 1;
-        // the previous tail which related to new frequency
-        Node<K, V> targetTail = frequencyTails.put(newFrequency, node);
-        if (isFrequencyTail(node)) {
-            if (isFrequencyHead(node)) {
-                // this was the last node
-                frequencyTails.remove(oldFrequency);
+    /**
+     * Removes the node from the subsequence of its bucket, releasing the bucket if it becomes empty.
+     * The node itself stays in the list.
+     */
+    void detachFromBucket(Node<K, V> node) {
+        Bucket<K, V> bucket = node.bucket;
+        if (node == bucket.head) {
+            if (node == bucket.tail) {
+                releaseBucket(bucket);
             } else {
-                frequencyTails.put(oldFrequency, node.prev);
+                bucket.head = node.next;
             }
-            if (targetTail != null) {
-                // still need to move the node
-                if (node == head) {
-                    head = node.next;
-                }
-                node.unlink();
-                targetTail.insertNext(node);
+        } else if (node == bucket.tail) {
+            bucket.tail = node.prev;
+        }
+    }
+
+    /**
+     * Moves the node right after the specified node, which follows it in the list.
+     */
+    void moveAfter(Node<K, V> node, Node<K, V> target) {
+        if (node == head) {
+            head = node.next;
+        }
+        node.unlink();
+        target.insertNext(node);
+    }
+
+    void incrementNodeFrequency(Node<K, V> node) {
+        Bucket<K, V> bucket = node.bucket;
+        int newFrequency = bucket.frequency + 1;
+        Node<K, V> last = bucket.tail;
+        Node<K, V> following = last.next;
+        if (following == null || following.bucket.frequency != newFrequency) {
+            if (node == bucket.head && node == last) {
+                // the only node keeps its bucket
+                bucket.frequency = newFrequency;
+                return;
             }
+            detachFromBucket(node);
+            if (node != last) {
+                // insert right after the tail of old frequency
+                moveAfter(node, last);
+            }
+            Bucket<K, V> target = newBucket(newFrequency);
+            target.head = node;
+            target.tail = node;
+            node.bucket = target;
         } else {
-            // the move is guaranteed to happen
-            if (node == head) {
-                head = node.next;
+            Bucket<K, V> target = following.bucket;
+            detachFromBucket(node);
+            moveAfter(node, target.tail);
+            target.tail = node;
+            node.bucket = target;
+        }
+    }
+
+    int weigh(K key, V value) {
+        if (weigher == null) {
+            return 0;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Unlinks the node from the list, keeping the tails of the frequency subsequences.
+     */
+    void unlinkNode(Node<K, V> node) {
+        detachFromBucket(node);
+        if (node == head) {
+            head = node.next;
+        }
+        node.unlink();
+        totalWeight -= node.weight;
+    }
+
+    /**
+     * Adds a new node with the initial frequency as the tail of its frequency subsequence.
+     * No node has a frequency less than the cache age, and the initial frequency exceeds it at most by one,
+     * so the subsequence of the new node is either the head subsequence or the one right after it.
+     */
+    void linkNewNode(K key, V value, int weight) {
+        Node<K, V> newNode = new Node<>(key, value);
+        newNode.weight = weight;
+        totalWeight += weight;
+        cache.put(key, newNode);
+        int frequency = agingPolicy == LfuAgingPolicy.DYNAMIC ? cacheAge + 1 : 0;
+        if (head == null || head.bucket.frequency > frequency) {
+            Bucket<K, V> bucket = newBucket(frequency);
+            bucket.head = newNode;
+            bucket.tail = newNode;
+            newNode.bucket = bucket;
+            if (head != null) {
+                head.insertPrevious(newNode);
             }
-            node.unlink();
-            if (targetTail == null) {
-                // insert right after the tail of old frequency
-                frequencyTails.get(oldFrequency).insertNext(node);
+            head = newNode;
+            return;
+        }
+        Bucket<K, V> bucket = head.bucket;
+        if (bucket.frequency < frequency) {
+            // the head subsequence holds the nodes of the cache age
+            Node<K, V> following = bucket.tail.next;
+            if (following == null || following.bucket.frequency != frequency) {
+                Node<K, V> last = bucket.tail;
+                bucket = newBucket(frequency);
+                last.insertNext(newNode);
+                bucket.head = newNode;
+                bucket.tail = newNode;
+                newNode.bucket = bucket;
+                return;
+            }
+            bucket = following.bucket;
+        }
+        bucket.tail.insertNext(newNode);
+        bucket.tail = newNode;
+        newNode.bucket = bucket;
+    }
+
+    /**
+     * Evicts the head nodes until the size does not exceed the capacity.
+     */
+    void onEviction(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        if (evictionListener != null) {
+            evictionListener.onEviction(key, value);
+        }
+        notifyRemoval(key, value, RemovalCause.SIZE);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    void evictNode(Node<K, V> node) {
+        if (agingPolicy == LfuAgingPolicy.DYNAMIC && node == head) {
+            cacheAge = node.bucket.frequency;
+        }
+        unlinkNode(node);
+        cache.remove(node.key);
+        onEviction(node.key, node.value);
+    }
+
+    void onOperation() {
+        if (agingPolicy == LfuAgingPolicy.HALVING && ++operations >= agingPeriod) {
+            halveFrequencies();
+        }
+    }
+
+    void halveFrequencies() {
+        operations = 0;
+        Bucket<K, V> previous = null;
+        for (Node<K, V> n = head; n != null; ) {
+            Bucket<K, V> bucket = n.bucket;
+            Node<K, V> last = bucket.tail;
+            n = last.next;
+            bucket.frequency >>>= 1;
+            if (previous != null && previous.frequency == bucket.frequency) {
+                // merge the subsequence into the previous bucket
+                for (Node<K, V> m = bucket.head; m != n; m = m.next) {
+                    m.bucket = previous;
+                }
+                previous.tail = last;
+                releaseBucket(bucket);
             } else {
-                targetTail.insertNext(node);
+                previous = bucket;
             }
         }
-        node.frequency = newFrequency;
     }
 
     @SuppressWarnings("unchecked")
@@ -399,7 +655,7 @@ public class LfuCache<K, V> implements ICache<K, V> {
     abstract class CacheIterator {
         Node<K, V> next;
         Node<K, V> current;
-        final int expectedModCount;
+        int expectedModCount;
 
         final Node<K, V> nextNode() {
             Node<K, V> node = next;
@@ -434,6 +690,7 @@ public class LfuCache<K, V> implements ICache<K, V> {
             }
             current = null;
             LfuCache.this.remove(node.key);
+            expectedModCount = modCount;
         }
     }
 
@@ -462,25 +719,105 @@ public class LfuCache<K, V> implements ICache<K, V> {
     // Public operations
 
     /**
-     * Constructs a {@link LfuCache} with the specified capacity and capacity factor.
+     * Constructs a {@link LfuCache} with the specified capacity, capacity factor, aging policy and aging period.
      * {@code HashMap} like objects will be created like:<pre>
      * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
      *
      * @param capacity       the cache capacity.
      * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
-     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     * @param agingPolicy    the policy of aging of the frequencies.
+     * @param agingPeriod    the number of get / put operations between halvings of the frequencies,
+     *                       used only by the {@link LfuAgingPolicy#HALVING} policy.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one,
+     *                                  or the aging period is less than the capacity.
      */
-    public LfuCache(int capacity, float capacityFactor) {
+    public LfuCache(int capacity, float capacityFactor, LfuAgingPolicy agingPolicy, int agingPeriod) {
+        this(capacity, capacityFactor, agingPolicy, agingPeriod, Long.MAX_VALUE, null, OversizePolicy.REJECT);
+    }
+
+    /**
+     * Constructs a {@link LfuCache} bounded by both the capacity and the total weight of the entries,
+     * with the specified aging policy and aging period.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param agingPolicy    the policy of aging of the frequencies.
+     * @param agingPeriod    the number of get / put operations between halvings of the frequencies,
+     *                       used only by the {@link LfuAgingPolicy#HALVING} policy.
+     * @param maximumWeight  the maximum total weight of the entries.
+     * @param weigher        the weigher of the entries, or {@code null} to bound the cache only by the capacity.
+     * @param oversizePolicy the policy of handling the entries heavier than the maximum weight.
+     * @throws IllegalArgumentException if the capacity, capacity factor or maximum weight is less than one,
+     *                                  or the aging period is less than the capacity.
+     */
+    public LfuCache(int capacity, float capacityFactor, LfuAgingPolicy agingPolicy, int agingPeriod,
+                    long maximumWeight, Weigher<? super K, ? super V> weigher, OversizePolicy oversizePolicy) {
         if (capacity < 1) {
             throw new IllegalArgumentException("Illegal capacity: " + capacity);
         }
         if (capacityFactor < 1f) {
             throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
         }
+        if (agingPeriod < capacity) {
+            throw new IllegalArgumentException("Illegal aging period: " + agingPeriod);
+        }
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+        }
         this.capacity = capacity;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.oversizePolicy = Objects.requireNonNull(oversizePolicy);
+        this.agingPolicy = Objects.requireNonNull(agingPolicy);
+        this.agingPeriod = agingPeriod;
         int hashMapCapacity = (int) (capacity * capacityFactor);
         cache = new HashMap<>(hashMapCapacity, 1f);
-        frequencyTails = new HashMap<>(hashMapCapacity, 1f);
+    }
+
+    /**
+     * Constructs a {@link LfuCache} with the specified capacity, capacity factor, aging policy
+     * and the default aging period (ten times the capacity).
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param agingPolicy    the policy of aging of the frequencies.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public LfuCache(int capacity, float capacityFactor, LfuAgingPolicy agingPolicy) {
+        this(capacity, capacityFactor, agingPolicy,
+                (int) Math.min((long) capacity * DEFAULT_AGING_PERIOD_FACTOR, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Constructs a {@link LfuCache} bounded by both the capacity and the total weight of the entries, without aging.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param maximumWeight  the maximum total weight of the entries.
+     * @param weigher        the weigher of the entries, or {@code null} to bound the cache only by the capacity.
+     * @param oversizePolicy the policy of handling the entries heavier than the maximum weight.
+     * @throws IllegalArgumentException if the capacity, capacity factor or maximum weight is less than one.
+     */
+    public LfuCache(int capacity, float capacityFactor, long maximumWeight,
+                    Weigher<? super K, ? super V> weigher, OversizePolicy oversizePolicy) {
+        this(capacity, capacityFactor, LfuAgingPolicy.NONE, Integer.MAX_VALUE, maximumWeight, weigher, oversizePolicy);
+    }
+
+    /**
+     * Constructs a {@link LfuCache} with the specified capacity and capacity factor without aging.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public LfuCache(int capacity, float capacityFactor) {
+        this(capacity, capacityFactor, LfuAgingPolicy.NONE);
     }
 
     /**
@@ -516,83 +853,190 @@ public class LfuCache<K, V> implements ICache<K, V> {
     public V get(Object key) {
         Node<K, V> node;
         if ((node = cache.get(key)) == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
             return null;
         }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
         incrementNodeFrequency(node);
         modCount++;
+        onOperation();
         return node.value;
     }
 
     public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
         V oldValue;
         Node<K, V> node = cache.get(key);
+        int weight = weigh(key, value);
+        boolean oversize = weight > maximumWeight && oversizePolicy == OversizePolicy.REJECT;
         if (node == null) {
             oldValue = null;
-            if (cache.size() >= capacity) {
-                // do eviction
-                Node<K, V> oldHead = head;
-                head = head.next;
-                if (isFrequencyTail(oldHead)) {
-                    // this was the last node
-                    frequencyTails.remove(oldHead.frequency);
-                }
-                oldHead.unlink();
-                cache.remove(oldHead.key);
-            }
-            Node<K, V> newNode = new Node<>(key, value, 0);
-            cache.put(key, newNode);
-            Node<K, V> targetTail = frequencyTails.put(0, newNode);
-            if (targetTail == null) {
-                if (head != null) {
-                    head.insertPrevious(newNode);
-                }
-                head = newNode;
-            } else {
-                targetTail.insertNext(newNode);
+            if (oversize) {
+                onEviction(key, value);
+                return null;
+            }
+            // do eviction
+            while (head != null && (cache.size() >= capacity || totalWeight + weight > maximumWeight)) {
+                evictNode(head);
             }
+            linkNewNode(key, value, weight);
         } else {
             // key is already added
             oldValue = node.value;
+            if (oversize) {
+                unlinkNode(node);
+                cache.remove(key);
+                modCount++;
+                notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+                onEviction(key, value);
+                return oldValue;
+            }
             node.value = value;
+            totalWeight += weight - node.weight;
+            node.weight = weight;
             incrementNodeFrequency(node);
+            // evict the other nodes if the new value is heavier
+            while (totalWeight > maximumWeight) {
+                Node<K, V> victim = head == node ? node.next : head;
+                if (victim == null) {
+                    break;
+                }
+                evictNode(victim);
+            }
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
         }
         modCount++;
+        onOperation();
         return oldValue;
     }
 
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
     public V remove(Object key) {
         Node<K, V> node = cache.remove(key);
         if (node == null) {
             return null;
         }
-        if (isFrequencyTail(node)) {
-            if (isFrequencyHead(node)) {
-                frequencyTails.remove(key);
-            } else {
-                frequencyTails.put(node.frequency, node.prev);
-            }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
         }
-        if (node == head) {
-            head = node.next;
+        unlinkNode(node);
+        modCount++;
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    public V discard(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
         }
-        node.unlink();
+        unlinkNode(node);
         modCount++;
         return node.value;
     }
 
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the total weight of the entries, or zero if the cache is bounded only by the capacity.
+     *
+     * @return the total weight of the entries.
+     */
+    public long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this cache, in the iteration order of the map.
+     * Once the cache is full, the head node is evicted before each new node is linked,
+     * as in {@link #put(Object, Object)}, so the batch ends in the same state as putting the entries one by one
+     * (a single eviction pass after the batch would evict the new nodes, which have the lowest frequency).
+     * In the weighted mode the entries are put one by one.
+     *
+     * @param m the mappings to be stored in this cache.
+     */
     public void putAll(Map<? extends K, ? extends V> m) {
+        if (weigher != null) {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+            return;
+        }
         for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
             K k = e.getKey();
             V v = e.getValue();
-            put(k, v);
+            if (statsCounter != null) {
+                statsCounter.recordPut();
+            }
+            Node<K, V> node = cache.get(k);
+            if (node == null) {
+                while (cache.size() >= capacity) {
+                    evictNode(head);
+                }
+                linkNewNode(k, v, 0);
+            } else {
+                V oldValue = node.value;
+                node.value = v;
+                incrementNodeFrequency(node);
+                notifyRemoval(k, oldValue, RemovalCause.REPLACED);
+            }
+            modCount++;
+            onOperation();
         }
     }
 
     public void clear() {
+        Node<K, V> removed = removalListener == null ? null : head;
         cache.clear();
-        frequencyTails.clear();
         head = null;
+        totalWeight = 0;
+        operations = 0;
+        cacheAge = 0;
         modCount++;
+        // the unlinked nodes keep their links
+        for (Node<K, V> node = removed; node != null; node = node.next) {
+            removalListener.onRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        }
     }
 
     public Set<K> keySet() {
@@ -0,0 +1,411 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * This implementation loads the values of the missing keys into an underlying cache by a {@link CacheLoader}.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>the underlying cache - to store the loaded entries.</li>
+ *     <li>{@code ConcurrentHashMap<KEY, CompletableFuture>} - to store the loads in flight.</li>
+ * </ul>
+ *
+ * <p>
+ * At most one load of a key is in flight at any time: the first thread missing the key runs the loader,
+ * and the other threads missing the same key wait for its result instead of running their own loads.
+ * {@link #getAll(Iterable, CacheLoader)} loads all of the missing keys which are not in flight
+ * by a single {@link CacheLoader#loadAll(Set)} call and adds them to the underlying cache as a batch.
+ * A failed load is not cached, its exception is thrown to all of the waiting threads,
+ * and the next miss of the key starts a new load. A loader must not load the same key recursively.
+ *
+ * <p>
+ * The Map operations, including {@link #get(Object)}, do not load and are passed to the underlying cache,
+ * which has to be thread-safe to be used concurrently
+ * (for example {@link Cache} in the {@link CacheConcurrencyMode#STRIPED} mode).
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class LoadingCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The key of the loads in flight used for the {@code null} key.
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * The cache holding the loaded entries.
+     */
+    final ICache<K, V> cache;
+
+    /**
+     * The loader used by {@link #getOrLoad(Object)}.
+     */
+    final CacheLoader<? super K, ? extends V> loader;
+
+    /**
+     * The map for mapping keys and their loads in flight.
+     */
+    final ConcurrentHashMap<Object, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * The recorder of the loads, or {@code null} if the statistics are disabled.
+     */
+    volatile StatsCounter loadStats;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    void recordLoad(boolean success, long startTime) {
+        StatsCounter stats = loadStats;
+        if (stats != null) {
+            long loadTime = System.nanoTime() - startTime;
+            if (success) {
+                stats.recordLoadSuccess(loadTime);
+            } else {
+                stats.recordLoadFailure(loadTime);
+            }
+        }
+    }
+
+    static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    /**
+     * Rethrows the failure of a load: unchecked exceptions and errors as they are,
+     * checked exceptions wrapped in {@link CompletionException}.
+     */
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new CompletionException(e);
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link LoadingCache} over the specified cache with the specified loader.
+     *
+     * @param cache  the cache holding the loaded entries.
+     * @param loader the loader of the values of the missing keys.
+     */
+    public LoadingCache(ICache<K, V> cache, CacheLoader<? super K, ? extends V> loader) {
+        this.cache = Objects.requireNonNull(cache);
+        this.loader = Objects.requireNonNull(loader);
+    }
+
+    /**
+     * Constructs a {@link LoadingCache} over a new {@link Cache} with the specified capacity, deletion strategy,
+     * concurrency mode and loader.
+     *
+     * @param capacity        the cache capacity.
+     * @param strategy        the deletion strategy.
+     * @param concurrencyMode the concurrency mode.
+     * @param loader          the loader of the values of the missing keys.
+     * @throws IllegalArgumentException if the capacity is less than one,
+     *                                  or the strategy or concurrency mode is illegal.
+     */
+    public LoadingCache(int capacity, CacheDeletionStrategy strategy, CacheConcurrencyMode concurrencyMode,
+                        CacheLoader<? super K, ? extends V> loader) {
+        this(new Cache<>(capacity, strategy, concurrencyMode), loader);
+    }
+
+    /**
+     * Returns the value of the key, loading it by the loader of this cache if it is missing.
+     *
+     * @param key the key.
+     * @return the value, or {@code null} if the loader returned {@code null}.
+     * @throws CompletionException if the loader threw a checked exception.
+     */
+    public V getOrLoad(K key) {
+        return get(key, loader);
+    }
+
+    /**
+     * Returns the value of the key, loading it by the specified loader if it is missing.
+     * If the key is already being loaded, waits for that load instead.
+     *
+     * @param key    the key.
+     * @param loader the loader of the value.
+     * @return the value, or {@code null} if the loader returned {@code null}.
+     * @throws CompletionException if the loader threw a checked exception.
+     */
+    public V get(K key, CacheLoader<? super K, ? extends V> loader) {
+        V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+        Object loadKey = maskNull(key);
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loads.putIfAbsent(loadKey, load);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw rethrow(e);
+            }
+        }
+        try {
+            // the key may have been loaded between the miss and the registration of this load
+            value = cache.containsKey(key) ? cache.get(key) : null;
+            if (value == null) {
+                long startTime = System.nanoTime();
+                try {
+                    value = loader.load(key);
+                } catch (Throwable e) {
+                    recordLoad(false, startTime);
+                    throw e;
+                }
+                recordLoad(true, startTime);
+                if (value != null) {
+                    cache.put(key, value);
+                }
+            }
+            load.complete(value);
+            return value;
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+            throw rethrow(e);
+        } finally {
+            loads.remove(loadKey, load);
+        }
+    }
+
+    /**
+     * Returns the values of the keys, loading the missing ones by the loader of this cache in a single batch.
+     *
+     * @param keys the keys.
+     * @return the map of the keys and their values, in the order of the keys,
+     * the keys without values are not included.
+     * @throws CompletionException if the loader threw a checked exception.
+     */
+    public Map<K, V> getAllOrLoad(Iterable<? extends K> keys) {
+        return getAll(keys, loader);
+    }
+
+    /**
+     * Returns the values of the keys, loading the missing ones by the specified loader in a single batch.
+     * The keys which are already being loaded are waited for instead.
+     *
+     * @param keys   the keys.
+     * @param loader the loader of the values.
+     * @return the map of the keys and their values, in the order of the keys,
+     * the keys without values are not included.
+     * @throws CompletionException if the loader threw a checked exception.
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys, CacheLoader<? super K, ? extends V> loader) {
+        List<K> keyList = new ArrayList<>();
+        for (K key : keys) {
+            keyList.add(key);
+        }
+        Map<K, V> found = new HashMap<>(cache.getAll(keyList));
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+        for (K key : keyList) {
+            if (found.containsKey(key) || owned.containsKey(key) || waiting.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> load = new CompletableFuture<>();
+            CompletableFuture<V> inFlight = loads.putIfAbsent(maskNull(key), load);
+            if (inFlight == null) {
+                owned.put(key, load);
+            } else {
+                waiting.put(key, inFlight);
+            }
+        }
+        if (!owned.isEmpty()) {
+            try {
+                // the keys may have been loaded between the miss and the registration of the loads
+                Map<K, V> loaded = new LinkedHashMap<>();
+                Set<K> missing = new LinkedHashSet<>();
+                for (K key : owned.keySet()) {
+                    V value = cache.containsKey(key) ? cache.get(key) : null;
+                    if (value == null) {
+                        missing.add(key);
+                    } else {
+                        loaded.put(key, value);
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    long startTime = System.nanoTime();
+                    Map<? super K, ? extends V> values;
+                    try {
+                        values = loader.loadAll(missing);
+                    } catch (Throwable e) {
+                        recordLoad(false, startTime);
+                        throw e;
+                    }
+                    recordLoad(true, startTime);
+                    Map<K, V> batch = new LinkedHashMap<>();
+                    for (K key : missing) {
+                        V value = values.get(key);
+                        if (value != null) {
+                            batch.put(key, value);
+                        }
+                    }
+                    cache.putAll(batch);
+                    loaded.putAll(batch);
+                }
+                for (Map.Entry<K, CompletableFuture<V>> e : owned.entrySet()) {
+                    e.getValue().complete(loaded.get(e.getKey()));
+                }
+                found.putAll(loaded);
+            } catch (Throwable e) {
+                for (CompletableFuture<V> load : owned.values()) {
+                    load.completeExceptionally(e);
+                }
+                throw rethrow(e);
+            } finally {
+                for (Map.Entry<K, CompletableFuture<V>> e : owned.entrySet()) {
+                    loads.remove(maskNull(e.getKey()), e.getValue());
+                }
+            }
+        }
+        for (Map.Entry<K, CompletableFuture<V>> e : waiting.entrySet()) {
+            V value;
+            try {
+                value = e.getValue().join();
+            } catch (CompletionException ex) {
+                throw rethrow(ex);
+            }
+            if (value != null) {
+                found.put(e.getKey(), value);
+            }
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keyList) {
+            V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        return cache.containsValue(value);
+    }
+
+    public V get(Object key) {
+        return cache.get(key);
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        return cache.getOrDefault(key, defaultValue);
+    }
+
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        return cache.getAll(keys);
+    }
+
+    public V put(K key, V value) {
+        return cache.put(key, value);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return cache.putIfAbsent(key, value);
+    }
+
+    public V remove(Object key) {
+        return cache.remove(key);
+    }
+
+    public boolean remove(Object key, Object value) {
+        return cache.remove(key, value);
+    }
+
+    public V replace(K key, V value) {
+        return cache.replace(key, value);
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        return cache.replace(key, oldValue, newValue);
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return cache.computeIfAbsent(key, mappingFunction);
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return cache.computeIfPresent(key, remappingFunction);
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return cache.compute(key, remappingFunction);
+    }
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return cache.merge(key, value, remappingFunction);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        cache.putAll(m);
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        cache.setRemovalListener(listener);
+    }
+
+    public void recordStats() {
+        cache.recordStats();
+        if (loadStats == null) {
+            loadStats = new StatsCounter();
+        }
+    }
+
+    /**
+     * Returns the statistics of the underlying cache together with the statistics of the loads.
+     *
+     * @return the statistics, or {@link CacheStats#EMPTY} if they are not recorded.
+     */
+    public CacheStats stats() {
+        StatsCounter stats = loadStats;
+        return stats == null ? cache.stats() : cache.stats().plus(stats.snapshot());
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public Set<K> keySet() {
+        return cache.keySet();
+    }
+
+    public Collection<V> values() {
+        return cache.values();
+    }
+
+    public Set<Entry<K, V>> entrySet() {
+        return cache.entrySet();
+    }
+}
@@ -0,0 +1,125 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash index that maps {@code long} keys to slots of parallel arrays.
+ * The keys themselves are stored by the owner in the {@code keys} array, indexed by slot,
+ * so the table holds only {@code slot + 1} values ({@code 0} marks an empty bucket).
+ *
+ * <p>
+ * Collisions are resolved by linear probing, and deletion shifts the following entries back
+ * instead of leaving tombstones, so the probe sequences never grow with the number of removals.
+ * No operation allocates memory.
+ *
+ * @author paprikar
+ */
+final class LongIndex {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The maximum load factor of the table.
+     */
+    static final float MAXIMUM_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The table of {@code slot + 1} values.
+     */
+    final int[] table;
+
+    /**
+     * The mask to select a bucket of the table.
+     */
+    final int mask;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the length of the table for the specified capacity and capacity factor:
+     * the power of two not less than {@code capacity * capacityFactor},
+     * but large enough to keep the load factor not greater than {@link #MAXIMUM_LOAD_FACTOR}.
+     */
+    static int tableLength(int capacity, float capacityFactor) {
+        long length = Math.max((long) (capacity * (double) capacityFactor),
+                (long) Math.ceil(capacity / (double) MAXIMUM_LOAD_FACTOR));
+        if (length > 1 << 30) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        return Cache.ceilingPowerOfTwo((int) Math.max(length, 2));
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    LongIndex(int capacity, float capacityFactor) {
+        table = new int[tableLength(capacity, capacityFactor)];
+        mask = table.length - 1;
+    }
+
+    /**
+     * Returns the slot of the key, or {@code -1} if the key is absent.
+     */
+    int find(long key, long[] keys) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Maps the absent key to the slot.
+     */
+    void insert(long key, int slot) {
+        int i = hash(key) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Removes the mapping of the key and returns its slot, or {@code -1} if the key is absent.
+     */
+    int remove(long key, long[] keys) {
+        int i = hash(key) & mask;
+        int slot;
+        for (; ; i = (i + 1) & mask) {
+            slot = table[i] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (keys[slot] == key) {
+                break;
+            }
+        }
+        // shift back the following entries of the cluster that may not stay behind the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int ideal = hash(keys[table[j] - 1]) & mask;
+            // the entry may move to the hole unless its ideal bucket lies cyclically in (hole, j]
+            if (((j - ideal) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+        return slot;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+    }
+}
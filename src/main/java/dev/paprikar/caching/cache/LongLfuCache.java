@@ -0,0 +1,77 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * This implementation is an LFU cache with primitive {@code long} keys.
+ * The frequencies are maintained by {@link FrequencyBuckets}, a list of frequency buckets
+ * stored in {@code int} arrays, so unlike {@link LfuCache} no frequency is ever boxed.
+ * The eviction order is the same as the one of {@link LfuCache}.
+ *
+ * <p>
+ * The primitive operations neither box the keys nor allocate memory,
+ * and perform add / get / remove operations in a constant {@code O(1)} time.
+ *
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class LongLfuCache<V> extends AbstractLongCache<V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The frequencies of the slots.
+     */
+    final FrequencyBuckets buckets;
+
+    /* ---------------------------------------------------------------- */
+    // Eviction order
+
+    void onAdd(int slot) {
+        buckets.add(slot);
+    }
+
+    void onAccess(int slot) {
+        buckets.increment(slot);
+    }
+
+    void onRemove(int slot) {
+        buckets.remove(slot);
+    }
+
+    int victim() {
+        return buckets.victim();
+    }
+
+    int nextSlot(int slot) {
+        return buckets.nextSlot(slot);
+    }
+
+    void onClear() {
+        buckets.clear();
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link LongLfuCache} with the specified capacity and capacity factor.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public LongLfuCache(int capacity, float capacityFactor) {
+        super(capacity, capacityFactor);
+        buckets = new FrequencyBuckets(capacity);
+    }
+
+    /**
+     * Constructs a {@link LongLfuCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public LongLfuCache(int capacity) {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR);
+    }
+}
@@ -0,0 +1,116 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * This implementation is an LRU cache with primitive {@code long} keys.
+ * The recency order is a doubly linked list of slots stored in the {@code prev[]} and {@code next[]} arrays,
+ * the least recently used slot is the head of the list.
+ * The slot of an evicted entry is reused by the new one.
+ *
+ * <p>
+ * The primitive operations neither box the keys nor allocate memory,
+ * and perform add / get / remove operations in a constant {@code O(1)} time.
+ *
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class LongLruCache<V> extends AbstractLongCache<V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The previous (less recently used) slot, per slot.
+     */
+    final int[] prev;
+
+    /**
+     * The next (more recently used) slot, per slot.
+     */
+    final int[] next;
+
+    /**
+     * The least recently used slot.
+     */
+    int head = NIL;
+
+    /**
+     * The most recently used slot.
+     */
+    int tail = NIL;
+
+    /* ---------------------------------------------------------------- */
+    // Eviction order
+
+    void onAdd(int slot) {
+        int t = tail;
+        prev[slot] = t;
+        next[slot] = NIL;
+        if (t == NIL) {
+            head = slot;
+        } else {
+            next[t] = slot;
+        }
+        tail = slot;
+    }
+
+    void onAccess(int slot) {
+        if (slot != tail) {
+            onRemove(slot);
+            onAdd(slot);
+        }
+    }
+
+    void onRemove(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p == NIL) {
+            head = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tail = p;
+        } else {
+            prev[n] = p;
+        }
+    }
+
+    int victim() {
+        return head;
+    }
+
+    int nextSlot(int slot) {
+        return next[slot];
+    }
+
+    void onClear() {
+        head = NIL;
+        tail = NIL;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link LongLruCache} with the specified capacity and capacity factor.
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public LongLruCache(int capacity, float capacityFactor) {
+        super(capacity, capacityFactor);
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+
+    /**
+     * Constructs a {@link LongLruCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public LongLruCache(int capacity) {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR);
+    }
+}
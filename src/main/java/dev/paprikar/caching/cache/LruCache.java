@@ -1,9 +1,7 @@
 package dev.paprikar.caching.cache;
 
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * This implementation uses {@code LinkedHashMap} to store information
@@ -15,13 +13,25 @@ import java.util.Set;
  * case of his addition or getting, including modifying the value.
  *
  * <p>
- * All this allows to perform add / get / remove operations in a constant {@code O(1)} time.
+ * Optionally the cache is also bounded by the total weight of the entries calculated by a {@link Weigher}.
+ * In this mode the eldest entries are evicted until the new entry fits, and the entries
+ * which are heavier than the maximum weight are handled according to the {@link OversizePolicy}.
+ * The weight of an entry is calculated once when it is put and kept until the entry is removed.
+ * The weight is not updated by {@link Map.Entry#setValue}.
+ *
+ * <p>
+ * The removals through the views are the same as {@link #remove(Object)}: they are recorded in the statistics,
+ * reported to the {@link RemovalListener} and subtracted from the total weight.
+ *
+ * <p>
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time
+ * (amortized, if the cache is bounded by the weight).
  *
  * @param <K> the type of keys maintained by this cache
  * @param <V> the type of mapped values
  * @author paprikar
  */
-public class LruCache<K, V> implements ICache<K, V> {
+public class LruCache<K, V> implements CacheEngine<K, V> {
 
     /* ---------------------------------------------------------------- */
     // Fields
@@ -41,6 +51,324 @@ public class LruCache<K, V> implements ICache<K, V> {
      */
     final Map<K, V> cache;
 
+    /**
+     * The weigher of the entries, or {@code null} if the cache is bounded only by the capacity.
+     */
+    final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * The maximum total weight of the entries.
+     */
+    final long maximumWeight;
+
+    /**
+     * The policy of handling the entries heavier than the maximum weight.
+     */
+    final OversizePolicy oversizePolicy;
+
+    /**
+     * Map for mapping keys and the weights of their entries calculated when they were put,
+     * or {@code null} if the cache is bounded only by the capacity.
+     */
+    final Map<K, Integer> weights;
+
+    /**
+     * The total weight of the entries.
+     */
+    long totalWeight;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * The number of entries {@link #putAll(Map)} may add over the capacity before an eviction pass,
+     * so that the map never grows beyond its initial capacity.
+     */
+    final int batchCapacity;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    void onEviction(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        if (evictionListener != null) {
+            evictionListener.onEviction(key, value);
+        }
+        notifyRemoval(key, value, RemovalCause.SIZE);
+    }
+
+    /**
+     * Records the explicit removal of the entry which is already unlinked from the map.
+     */
+    void onRemoval(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        releaseWeight(key);
+        notifyRemoval(key, value, RemovalCause.EXPLICIT);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    int weigh(K key, V value) {
+        if (weigher == null) {
+            return 0;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Subtracts the weight of the removed entry of the key from the total weight.
+     */
+    void releaseWeight(Object key) {
+        if (weights != null) {
+            totalWeight -= weights.remove(key);
+        }
+    }
+
+    /**
+     * Evicts the eldest entries until the entry of the specified weight fits.
+     */
+    void evictFor(int weight) {
+        Iterator<Map.Entry<K, V>> it = cache.entrySet().iterator();
+        while (it.hasNext() && (cache.size() >= capacity || totalWeight + weight > maximumWeight)) {
+            Map.Entry<K, V> e = it.next();
+            it.remove();
+            releaseWeight(e.getKey());
+            onEviction(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Evicts the eldest entries until the size does not exceed the capacity.
+     */
+    void evictOverflow() {
+        Iterator<Map.Entry<K, V>> it = cache.entrySet().iterator();
+        while (cache.size() > capacity) {
+            Map.Entry<K, V> e = it.next();
+            it.remove();
+            onEviction(e.getKey(), e.getValue());
+        }
+    }
+
+    V putWeighted(K key, V value) {
+        int weight = weigh(key, value);
+        V oldValue = cache.remove(key);
+        if (oldValue != null) {
+            releaseWeight(key);
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        if (weight > maximumWeight && oversizePolicy == OversizePolicy.REJECT) {
+            onEviction(key, value);
+            return oldValue;
+        }
+        evictFor(weight);
+        cache.put(key, value);
+        weights.put(key, weight);
+        totalWeight += weight;
+        return oldValue;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Views
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            LruCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return cache.containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return LruCache.this.remove(key) != null;
+        }
+
+        public Object[] toArray() {
+            return cache.keySet().toArray();
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return cache.keySet().toArray(a);
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            cache.keySet().forEach(action);
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            LruCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return cache.containsValue(o);
+        }
+
+        public Object[] toArray() {
+            return cache.values().toArray();
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return cache.values().toArray(a);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            cache.values().forEach(action);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            LruCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return cache.entrySet().contains(o);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            V value = cache.get(key);
+            if (value != null && Objects.equals(e.getValue(), value)) {
+                LruCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
+            cache.entrySet().forEach(action);
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    /**
+     * Iterates over the entries of the map, which also makes the iterator fail-fast.
+     * The removal unlinks the entry through the iterator of the map and then is recorded like {@link #remove(Object)}.
+     */
+    abstract class CacheIterator {
+        final Iterator<Map.Entry<K, V>> iterator;
+        Map.Entry<K, V> current;
+
+        final Map.Entry<K, V> nextEntry() {
+            return current = iterator.next();
+        }
+
+        public CacheIterator() {
+            iterator = cache.entrySet().iterator();
+            current = null;
+        }
+
+        public final boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        public final void remove() {
+            Map.Entry<K, V> e = current;
+            if (e == null) {
+                throw new IllegalStateException();
+            }
+            current = null;
+            K key = e.getKey();
+            V value = e.getValue();
+            iterator.remove();
+            onRemoval(key, value);
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextEntry().getKey();
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextEntry().getValue();
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextEntry();
+        }
+    }
+
     /* ---------------------------------------------------------------- */
     // Public operations
 
@@ -54,15 +382,40 @@ public class LruCache<K, V> implements ICache<K, V> {
      * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
      */
     public LruCache(int capacity, float capacityFactor) {
+        this(capacity, capacityFactor, Long.MAX_VALUE, null, OversizePolicy.REJECT);
+    }
+
+    /**
+     * Constructs a {@link LruCache} bounded by both the capacity and the total weight of the entries.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1.0f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param maximumWeight  the maximum total weight of the entries.
+     * @param weigher        the weigher of the entries, or {@code null} to bound the cache only by the capacity.
+     * @param oversizePolicy the policy of handling the entries heavier than the maximum weight.
+     * @throws IllegalArgumentException if the capacity, capacity factor or maximum weight is less than one.
+     */
+    public LruCache(int capacity, float capacityFactor, long maximumWeight,
+                    Weigher<? super K, ? super V> weigher, OversizePolicy oversizePolicy) {
         if (capacity < 1) {
             throw new IllegalArgumentException("Illegal capacity: " + capacity);
         }
         if (capacityFactor < 1.0f) {
             throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
         }
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+        }
         this.capacity = capacity;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.oversizePolicy = Objects.requireNonNull(oversizePolicy);
         int hashMapCapacity = (int) (capacity * capacityFactor);
         cache = new LinkedHashMap<>(hashMapCapacity, 1.0f);
+        weights = weigher == null ? null : new HashMap<>(hashMapCapacity, 1.0f);
+        batchCapacity = Math.max(1, hashMapCapacity - capacity);
     }
 
     /**
@@ -94,8 +447,14 @@ public class LruCache<K, V> implements ICache<K, V> {
     public V get(Object key) {
         V value = cache.remove(key);
         if (value == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
             return null;
         }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
         @SuppressWarnings("unchecked")
         K k = (K) key;
         cache.put(k, value);
@@ -103,6 +462,12 @@ public class LruCache<K, V> implements ICache<K, V> {
     }
 
     public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        if (weigher != null) {
+            return putWeighted(key, value);
+        }
         V oldValue;
         V v;
         if ((v = cache.get(key)) == null) {
@@ -110,46 +475,150 @@ public class LruCache<K, V> implements ICache<K, V> {
             if (cache.size() >= capacity) {
                 // do eviction
                 K k = cache.keySet().iterator().next();
-                cache.remove(k);
+                onEviction(k, cache.remove(k));
             }
         } else {
             // key is already added
             oldValue = v;
             cache.remove(key);
+            notifyRemoval(key, v, RemovalCause.REPLACED);
         }
         cache.put(key, value);
         return oldValue;
     }
 
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
     public V remove(Object key) {
         V value;
-        return (value = cache.remove(key)) == null ? null : value;
+        if ((value = cache.remove(key)) == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        onRemoval(k, value);
+        return value;
+    }
+
+    public V discard(Object key) {
+        V value;
+        if ((value = cache.remove(key)) == null) {
+            return null;
+        }
+        releaseWeight(key);
+        return value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
     }
 
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the total weight of the entries, or zero if the cache is bounded only by the capacity.
+     *
+     * @return the total weight of the entries.
+     */
+    public long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this cache, in the iteration order of the map.
+     * The entries are inserted as a batch, and then the eldest entries are evicted in a single pass,
+     * which ends in the same state as putting the entries one by one.
+     * In the weighted mode the entries are put one by one.
+     *
+     * @param m the mappings to be stored in this cache.
+     */
     public void putAll(Map<? extends K, ? extends V> m) {
         if (m.isEmpty()) {
             return;
         }
+        if (weigher != null) {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+            return;
+        }
         for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
             K k = e.getKey();
             V v = e.getValue();
-            put(k, v);
+            if (statsCounter != null) {
+                statsCounter.recordPut();
+            }
+            // move the key to the tail
+            V oldValue = cache.remove(k);
+            cache.put(k, v);
+            if (oldValue != null) {
+                notifyRemoval(k, oldValue, RemovalCause.REPLACED);
+            }
+            if (cache.size() >= capacity + batchCapacity) {
+                evictOverflow();
+            }
         }
+        evictOverflow();
     }
 
     public void clear() {
+        List<Map.Entry<K, V>> removed = removalListener == null ? null : new ArrayList<>(cache.entrySet());
         cache.clear();
+        if (weights != null) {
+            weights.clear();
+        }
+        totalWeight = 0;
+        if (removed != null) {
+            for (Map.Entry<K, V> e : removed) {
+                removalListener.onRemoval(e.getKey(), e.getValue(), RemovalCause.EXPLICIT);
+            }
+        }
     }
 
     public Set<K> keySet() {
-        return cache.keySet();
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
     }
 
     public Collection<V> values() {
-        return cache.values();
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
     }
 
-    public Set<Entry<K, V>> entrySet() {
-        return cache.entrySet();
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
     }
 }
@@ -0,0 +1,106 @@
+package dev.paprikar.caching.cache;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An open addressing hash index that maps object keys to slots of parallel arrays.
+ * The keys and their spread hashes are stored by the owner in the {@code keys} and {@code hashes} arrays,
+ * indexed by slot, so the table holds only {@code slot + 1} values ({@code 0} marks an empty bucket)
+ * and {@link Object#hashCode()} is called once per operation.
+ *
+ * <p>
+ * Collisions are resolved by linear probing, and deletion shifts the following entries back
+ * instead of leaving tombstones (see {@link LongIndex}). No operation allocates memory.
+ *
+ * @author paprikar
+ */
+final class ObjectIndex {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The table of {@code slot + 1} values.
+     */
+    final int[] table;
+
+    /**
+     * The mask to select a bucket of the table.
+     */
+    final int mask;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static int hash(Object key) {
+        int h = Objects.hashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    ObjectIndex(int capacity, float capacityFactor) {
+        table = new int[LongIndex.tableLength(capacity, capacityFactor)];
+        mask = table.length - 1;
+    }
+
+    /**
+     * Returns the slot of the key with the specified hash, or {@code -1} if the key is absent.
+     */
+    int find(Object key, int hash, Object[] keys, int[] hashes) {
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (hashes[slot] == hash && Objects.equals(keys[slot], key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Maps the absent key with the specified hash to the slot.
+     */
+    void insert(int hash, int slot) {
+        int i = hash & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Removes the mapping of the key with the specified hash and returns its slot,
+     * or {@code -1} if the key is absent.
+     */
+    int remove(Object key, int hash, Object[] keys, int[] hashes) {
+        int i = hash & mask;
+        int slot;
+        for (; ; i = (i + 1) & mask) {
+            slot = table[i] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (hashes[slot] == hash && Objects.equals(keys[slot], key)) {
+                break;
+            }
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int ideal = hashes[table[j] - 1] & mask;
+            if (((j - ideal) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+        return slot;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+    }
+}
@@ -0,0 +1,606 @@
+package dev.paprikar.caching.cache;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation is an LRU or LFU cache which stores the values outside of the Java heap.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>{@link SlabAllocator} - the direct {@link ByteBuffer} pages, carved into the chunks
+ *     of power of two sizes. The bytes of a value are copied to a chunk of the smallest fitting size.</li>
+ *     <li>parallel arrays {@code keys[]}, {@code hashes[]}, {@code refs[]} and {@code lengths[]} indexed by slot,
+ *     which hold the keys and the primitive references to the chunks.</li>
+ *     <li>{@link ObjectIndex} - an open addressing index that maps keys to slots.</li>
+ *     <li>{@link RecencyList} or {@link FrequencyBuckets} - the eviction order of the slots
+ *     stored in {@code int} arrays.</li>
+ * </ul>
+ *
+ * <p>
+ * So the garbage collector sees only a few arrays regardless of the number and size of the values.
+ * The cache is bounded both by the number of entries and by the off-heap memory:
+ * if a chunk cannot be allocated, the entries are evicted in the eviction order until it can.
+ * A page once carved into chunks of some size is used by the values of that size only,
+ * so a strongly changing distribution of the value sizes may cause extra evictions.
+ *
+ * <p>
+ * {@link #get(Object)} returns a read-only zero-copy view of the value, which is valid until the entry
+ * is replaced, removed or evicted, and must be copied to be kept longer.
+ * The old values returned by {@link #put(Object, ByteBuffer)} and {@link #remove(Object)} are copied to the heap.
+ * {@code null} values are not supported.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @author paprikar
+ */
+public class OffHeapCache<K> implements ICache<K, ByteBuffer> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The absent slot.
+     */
+    static final int NIL = SlotOrder.NIL;
+
+    /**
+     * The page size used when none specified in constructor.
+     */
+    static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The keys, per slot.
+     */
+    final Object[] keys;
+
+    /**
+     * The spread hashes of the keys, per slot.
+     */
+    final int[] hashes;
+
+    /**
+     * The references to the chunks of the values, per slot.
+     */
+    final long[] refs;
+
+    /**
+     * The lengths of the values, per slot.
+     */
+    final int[] lengths;
+
+    /**
+     * The index for locating the slots of keys.
+     */
+    final ObjectIndex index;
+
+    /**
+     * The eviction order of the slots.
+     */
+    final SlotOrder order;
+
+    /**
+     * The off-heap storage of the values.
+     */
+    final SlabAllocator slabs;
+
+    /**
+     * The stack of free slots.
+     */
+    final int[] freeSlots;
+
+    /**
+     * The number of free slots in the stack.
+     */
+    int freeCount;
+
+    /**
+     * The number of never used slots, which follow the used ones.
+     */
+    int nextUnused;
+
+    /**
+     * The number of entries.
+     */
+    int size;
+
+    /**
+     * The number of times this {@link OffHeapCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link OffHeapCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<ByteBuffer> valuesView;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, ByteBuffer>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    ByteBuffer valueAt(int slot) {
+        return slabs.view(refs[slot], lengths[slot]);
+    }
+
+    int find(Object key) {
+        return index.find(key, ObjectIndex.hash(key), keys, hashes);
+    }
+
+    /**
+     * Removes the entry of the slot, which is already removed from the index.
+     */
+    void release(int slot) {
+        order.remove(slot);
+        slabs.free(slabs.sizeClass(lengths[slot]), refs[slot]);
+        keys[slot] = null;
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    void evict(int slot) {
+        index.remove(keys[slot], hashes[slot], keys, hashes);
+        release(slot);
+    }
+
+    /**
+     * Allocates a chunk of the size class, evicting the entries except the specified one if necessary.
+     */
+    long allocate(int sizeClass, int keptSlot) {
+        long ref;
+        while ((ref = slabs.allocate(sizeClass)) < 0) {
+            int victim = order.victim();
+            if (victim == keptSlot && victim != NIL) {
+                victim = order.nextSlot(victim);
+            }
+            if (victim == NIL) {
+                throw new IllegalStateException("Not enough off-heap memory for the chunk of "
+                        + SlabAllocator.chunkSize(sizeClass) + " bytes");
+            }
+            evict(victim);
+        }
+        return ref;
+    }
+
+    final class SlotEntry implements Map.Entry<K, ByteBuffer> {
+
+        final int slot;
+        final K key;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = keyAt(slot);
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public ByteBuffer getValue() {
+            return valueAt(slot);
+        }
+
+        public ByteBuffer setValue(ByteBuffer value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(getValue(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            OffHeapCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            int slot = index.remove(key, ObjectIndex.hash(key), keys, hashes);
+            if (slot < 0) {
+                return false;
+            }
+            release(slot);
+            modCount++;
+            return true;
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = order.victim(); s != NIL; s = order.nextSlot(s)) {
+                action.accept(keyAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class Values extends AbstractCollection<ByteBuffer> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            OffHeapCache.this.clear();
+        }
+
+        public Iterator<ByteBuffer> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final void forEach(Consumer<? super ByteBuffer> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (int s = order.victim(); s != NIL; s = order.nextSlot(s)) {
+                action.accept(valueAt(s));
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, ByteBuffer>> {
+
+        public int size() {
+            return size;
+        }
+
+        public final void clear() {
+            OffHeapCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, ByteBuffer>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int slot = find(e.getKey());
+            return slot >= 0 && Objects.equals(e.getValue(), valueAt(slot));
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                keySet().remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        int next;
+        int current;
+        int expectedModCount;
+
+        final int nextSlot() {
+            int slot = next;
+            if (slot == NIL) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = slot;
+            next = order.nextSlot(slot);
+            return slot;
+        }
+
+        public CacheIterator() {
+            next = order.victim();
+            current = NIL;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != NIL;
+        }
+
+        public final void remove() {
+            int slot = current;
+            if (slot == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = NIL;
+            keySet().remove(keys[slot]);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return keyAt(nextSlot());
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<ByteBuffer> {
+        public final ByteBuffer next() {
+            return valueAt(nextSlot());
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, ByteBuffer>> {
+        public final Map.Entry<K, ByteBuffer> next() {
+            return new SlotEntry(nextSlot());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link OffHeapCache} with the specified capacity, capacity factor, deletion strategy,
+     * off-heap memory limit and page size. The pages are allocated on demand.
+     *
+     * @param capacity       the cache capacity (the maximum number of entries).
+     * @param capacityFactor the capacity factor that affects the length of the index.
+     * @param strategy       the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param maxMemory      the maximum number of bytes of the off-heap pages.
+     * @param pageSize       the page size, a power of two not less than 64, which also limits the value size.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one,
+     *                                  the strategy is illegal, the page size is not a power of two
+     *                                  not less than 64, or the memory limit is less than the page size.
+     */
+    public OffHeapCache(int capacity, float capacityFactor, CacheDeletionStrategy strategy,
+                        long maxMemory, int pageSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        if (pageSize < SlabAllocator.MINIMUM_CHUNK_SIZE || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("Illegal page size: " + pageSize);
+        }
+        if (maxMemory < pageSize || maxMemory / pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal max memory: " + maxMemory);
+        }
+        switch (strategy) {
+            case LFU:
+                order = new FrequencyBuckets(capacity);
+                break;
+            case LRU:
+                order = new RecencyList(capacity);
+                break;
+            default:
+                throw new IllegalArgumentException("Illegal strategy: " + strategy);
+        }
+        this.capacity = capacity;
+        index = new ObjectIndex(capacity, capacityFactor);
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        refs = new long[capacity];
+        lengths = new int[capacity];
+        freeSlots = new int[capacity];
+        slabs = new SlabAllocator(pageSize, (int) (maxMemory / pageSize));
+    }
+
+    /**
+     * Constructs a {@link OffHeapCache} with the specified capacity, deletion strategy, off-heap memory limit,
+     * the default capacity factor (1.5) and the default page size (1 MiB).
+     *
+     * @param capacity  the cache capacity (the maximum number of entries).
+     * @param strategy  the deletion strategy, {@link CacheDeletionStrategy#LRU} or {@link CacheDeletionStrategy#LFU}.
+     * @param maxMemory the maximum number of bytes of the off-heap pages.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or the memory limit is less than 1 MiB.
+     */
+    public OffHeapCache(int capacity, CacheDeletionStrategy strategy, long maxMemory) {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR, strategy, maxMemory, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Returns the number of bytes of the allocated off-heap pages.
+     *
+     * @return the number of bytes of the allocated off-heap pages.
+     */
+    public long offHeapBytes() {
+        return slabs.allocatedBytes();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        if (!(value instanceof ByteBuffer)) {
+            return false;
+        }
+        for (int s = order.victim(); s != NIL; s = order.nextSlot(s)) {
+            if (value.equals(valueAt(s)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a read-only view of the value to which the specified key is mapped,
+     * or {@code null} if this cache contains no mapping for the key.
+     * The view is valid until the entry is replaced, removed or evicted.
+     */
+    public ByteBuffer get(Object key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        order.access(slot);
+        modCount++;
+        return valueAt(slot);
+    }
+
+    /**
+     * Copies the remaining bytes of the value off-heap and associates them with the specified key.
+     * The position of the value is not changed.
+     *
+     * @return a heap copy of the previous value, or {@code null} if there was no mapping for the key.
+     * @throws NullPointerException     if the value is {@code null}.
+     * @throws IllegalArgumentException if the value is larger than the page size.
+     * @throws IllegalStateException    if the value does not fit the off-heap memory even after evicting
+     *                                  all other entries.
+     */
+    public ByteBuffer put(K key, ByteBuffer value) {
+        int length = value.remaining();
+        int sizeClass = slabs.sizeClass(length);
+        int hash = ObjectIndex.hash(key);
+        int slot = index.find(key, hash, keys, hashes);
+        if (slot >= 0) {
+            // key is already added
+            ByteBuffer oldValue = slabs.copy(refs[slot], lengths[slot]);
+            int oldSizeClass = slabs.sizeClass(lengths[slot]);
+            if (oldSizeClass != sizeClass) {
+                long ref = allocate(sizeClass, slot);
+                slabs.free(oldSizeClass, refs[slot]);
+                refs[slot] = ref;
+            }
+            slabs.write(refs[slot], value);
+            lengths[slot] = length;
+            order.access(slot);
+            modCount++;
+            return oldValue;
+        }
+        if (size >= capacity) {
+            evict(order.victim());
+        }
+        long ref = allocate(sizeClass, NIL);
+        slot = freeCount > 0 ? freeSlots[--freeCount] : nextUnused++;
+        keys[slot] = key;
+        hashes[slot] = hash;
+        refs[slot] = ref;
+        lengths[slot] = length;
+        slabs.write(ref, value);
+        index.insert(hash, slot);
+        order.add(slot);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping for a key from this cache if it is present.
+     *
+     * @return a heap copy of the previous value, or {@code null} if there was no mapping for the key.
+     */
+    public ByteBuffer remove(Object key) {
+        int slot = index.remove(key, ObjectIndex.hash(key), keys, hashes);
+        if (slot < 0) {
+            return null;
+        }
+        ByteBuffer value = slabs.copy(refs[slot], lengths[slot]);
+        release(slot);
+        modCount++;
+        return value;
+    }
+
+    public void putAll(Map<? extends K, ? extends ByteBuffer> m) {
+        for (Map.Entry<? extends K, ? extends ByteBuffer> e : m.entrySet()) {
+            K k = e.getKey();
+            ByteBuffer v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this cache. The allocated off-heap pages are kept for reuse.
+     */
+    public void clear() {
+        index.clear();
+        order.clear();
+        slabs.clear();
+        Arrays.fill(keys, null);
+        freeCount = 0;
+        nextUnused = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<ByteBuffer> values() {
+        Collection<ByteBuffer> v;
+        return (v = valuesView) == null ?
+                (valuesView = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, ByteBuffer>> entrySet() {
+        Set<Map.Entry<K, ByteBuffer>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
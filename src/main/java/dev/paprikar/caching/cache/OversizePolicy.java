@@ -0,0 +1,16 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The policies of handling the entries whose weight exceeds the maximum weight of a cache.
+ */
+public enum OversizePolicy {
+    /**
+     * The entry is not stored, and the previous mapping for its key is removed.
+     */
+    REJECT,
+    /**
+     * All other entries are evicted and the entry is stored alone,
+     * so it will be evicted by the next added entry.
+     */
+    ADMIT
+}
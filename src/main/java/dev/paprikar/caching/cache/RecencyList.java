@@ -0,0 +1,89 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The LRU eviction order of a fixed number of slots, stored in {@code int} arrays.
+ * It is a doubly linked list of slots in the recency order, the least recently used slot is the head of the list.
+ * No operation allocates memory.
+ *
+ * @author paprikar
+ */
+final class RecencyList implements SlotOrder {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The previous (less recently used) slot, per slot.
+     */
+    final int[] prev;
+
+    /**
+     * The next (more recently used) slot, per slot.
+     */
+    final int[] next;
+
+    /**
+     * The least recently used slot.
+     */
+    int head = NIL;
+
+    /**
+     * The most recently used slot.
+     */
+    int tail = NIL;
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    RecencyList(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+
+    public void add(int slot) {
+        int t = tail;
+        prev[slot] = t;
+        next[slot] = NIL;
+        if (t == NIL) {
+            head = slot;
+        } else {
+            next[t] = slot;
+        }
+        tail = slot;
+    }
+
+    public void access(int slot) {
+        if (slot != tail) {
+            remove(slot);
+            add(slot);
+        }
+    }
+
+    public void remove(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p == NIL) {
+            head = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tail = p;
+        } else {
+            prev[n] = p;
+        }
+    }
+
+    public int victim() {
+        return head;
+    }
+
+    public int nextSlot(int slot) {
+        return next[slot];
+    }
+
+    public void clear() {
+        head = NIL;
+        tail = NIL;
+    }
+}
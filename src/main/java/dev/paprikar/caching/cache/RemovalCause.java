@@ -0,0 +1,39 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The cause of the removal of a cache entry.
+ *
+ * @author paprikar
+ */
+public enum RemovalCause {
+
+    /**
+     * The entry was removed by the user.
+     */
+    EXPLICIT,
+
+    /**
+     * The value of the entry was replaced by the user.
+     */
+    REPLACED,
+
+    /**
+     * The entry expired.
+     */
+    EXPIRED,
+
+    /**
+     * The entry was evicted to keep the size or the weight of the cache within its bound,
+     * or rejected because it is heavier than the maximum weight.
+     */
+    SIZE;
+
+    /**
+     * Returns whether the entry was removed automatically rather than by the user.
+     *
+     * @return {@code true} if the cause is {@link #EXPIRED} or {@link #SIZE}.
+     */
+    public boolean wasEvicted() {
+        return this == EXPIRED || this == SIZE;
+    }
+}
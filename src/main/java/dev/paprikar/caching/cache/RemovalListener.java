@@ -0,0 +1,47 @@
+package dev.paprikar.caching.cache;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Notified when an entry is removed from a cache (see {@link ICache#setRemovalListener(RemovalListener)}),
+ * so that the resources of the value can be released or the entry can be moved elsewhere.
+ *
+ * <p>
+ * A listener is called synchronously by the thread which removed the entry, after the internal locks
+ * of the cache are released. An exception thrown by the listener is propagated to that thread.
+ * A slow listener can be wrapped by {@link #async(RemovalListener, Executor)}.
+ * A listener must not modify the cache synchronously.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * Returns a listener which queues the notifications and passes them to the specified listener
+     * in batches on the executor, so the notifying thread only adds them to a lock-free queue.
+     * The notifications are delivered in the order of the removals by a single task at a time.
+     * An exception thrown by the listener is passed to the uncaught exception handler of the executing thread,
+     * and the delivery of the batch continues.
+     *
+     * @param listener the listener.
+     * @param executor the executor of the deliveries.
+     * @param <K>      the type of keys
+     * @param <V>      the type of values
+     * @return the asynchronous listener.
+     */
+    static <K, V> RemovalListener<K, V> async(RemovalListener<K, V> listener, Executor executor) {
+        return new BatchingRemovalListener<>(listener, executor);
+    }
+
+    /**
+     * Notifies about the removal of the entry.
+     *
+     * @param key   the key.
+     * @param value the value, or the previous value if it was replaced.
+     * @param cause the cause of the removal.
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+}
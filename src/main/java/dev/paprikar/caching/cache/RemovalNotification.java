@@ -0,0 +1,27 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * A removal recorded for the delivery to a {@link RemovalListener} at a later time.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+final class RemovalNotification<K, V> {
+
+    final K key;
+
+    final V value;
+
+    final RemovalCause cause;
+
+    RemovalNotification(K key, V value, RemovalCause cause) {
+        this.key = key;
+        this.value = value;
+        this.cause = cause;
+    }
+
+    void deliver(RemovalListener<? super K, ? super V> listener) {
+        listener.onRemoval(key, value, cause);
+    }
+}
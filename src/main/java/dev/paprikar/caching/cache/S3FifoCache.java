@@ -0,0 +1,738 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation of the S3-FIFO policy uses the following data structures:
+ * <ul>
+ *     <li>two FIFO queues of nodes of type {@link Node} in the order of insertion:
+ *     the small queue (10% of the capacity) for the new entries and the main queue for the rest.</li>
+ *     <li>{@code HashMap<KEY, Node>} - to store information
+ *     about the keys and corresponding nodes.</li>
+ *     <li>a {@code LinkedHashSet<KEY>} ghost queue of the keys recently evicted from the small queue,
+ *     holding at most as many keys as the main queue holds entries.</li>
+ * </ul>
+ *
+ * <p>
+ * Every node has a 2-bit frequency: a hit only increments it up to {@link #MAXIMUM_FREQUENCY}
+ * and never moves the node, so reads do not touch the queues at all.
+ * A new entry is added to the small queue, or to the main queue if its key is found in the ghost queue.
+ * When the cache is full, the eldest entry of the small queue is moved to the main queue if it was read
+ * since the insertion, otherwise it is evicted and its key is remembered in the ghost queue.
+ * When the small queue is within its part of the capacity, the eldest entry of the main queue is evicted,
+ * unless it was read, in which case it is reinserted with a decremented frequency.
+ *
+ * <p>
+ * The one-hit wonders and the scans are evicted from the small queue quickly,
+ * while the entries read more than once stay in the main queue.
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time
+ * (amortized for the eviction, as a node is reinserted at most {@link #MAXIMUM_FREQUENCY} times per read).
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class S3FifoCache<K, V> implements CacheEngine<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The part of the capacity occupied by the small queue.
+     */
+    static final double SMALL_RATIO = 0.1;
+
+    /**
+     * The maximum frequency of a node, which fits in 2 bits.
+     */
+    static final int MAXIMUM_FREQUENCY = 3;
+
+    static final byte SMALL = 0;
+    static final byte MAIN = 1;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The capacity of the small queue.
+     */
+    final int smallCapacity;
+
+    /**
+     * The maximum number of keys in the ghost queue.
+     */
+    final int ghostCapacity;
+
+    /**
+     * The map for mapping keys and related nodes.
+     */
+    final Map<K, Node<K, V>> cache;
+
+    /**
+     * The queue of the new entries.
+     */
+    final FifoQueue<K, V> small;
+
+    /**
+     * The queue of the entries read while in the small queue or found in the ghost queue.
+     */
+    final FifoQueue<K, V> main;
+
+    /**
+     * The keys evicted from {@link #small}, the eldest first.
+     */
+    final Set<K> ghosts;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * The number of times this {@link S3FifoCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link S3FifoCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static class Node<K, V> implements Map.Entry<K, V> {
+
+        final K key;
+        V value;
+        byte queue;
+        byte frequency;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        public Node(K key, V value, byte queue) {
+            this.key = key;
+            this.value = value;
+            this.queue = queue;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes in the order of insertion, the head is the eldest one.
+     * The links are needed only to remove a node explicitly.
+     */
+    static final class FifoQueue<K, V> {
+
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        void addLast(Node<K, V> node) {
+            Node<K, V> t = tail;
+            node.prev = t;
+            node.next = null;
+            if (t == null) {
+                head = node;
+            } else {
+                t.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> p = node.prev;
+            Node<K, V> n = node.next;
+            if (p == null) {
+                head = n;
+            } else {
+                p.next = n;
+                node.prev = null;
+            }
+            if (n == null) {
+                tail = p;
+            } else {
+                n.prev = p;
+                node.next = null;
+            }
+            size--;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    FifoQueue<K, V> queueOf(Node<K, V> node) {
+        return node.queue == SMALL ? small : main;
+    }
+
+    static void onHit(Node<?, ?> node) {
+        if (node.frequency < MAXIMUM_FREQUENCY) {
+            node.frequency++;
+        }
+    }
+
+    void evictNode(Node<K, V> node) {
+        queueOf(node).remove(node);
+        cache.remove(node.key);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        if (evictionListener != null) {
+            evictionListener.onEviction(node.key, node.value);
+        }
+        notifyRemoval(node.key, node.value, RemovalCause.SIZE);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    void addGhost(K key) {
+        if (ghosts.size() >= ghostCapacity) {
+            Iterator<K> it = ghosts.iterator();
+            it.next();
+            it.remove();
+        }
+        ghosts.add(key);
+    }
+
+    /**
+     * Evicts a single entry.
+     */
+    void evict() {
+        while (true) {
+            if (small.size >= smallCapacity || main.size == 0) {
+                Node<K, V> node = small.head;
+                if (node.frequency > 0) {
+                    // read since the insertion
+                    small.remove(node);
+                    node.frequency = 0;
+                    node.queue = MAIN;
+                    main.addLast(node);
+                    continue;
+                }
+                addGhost(node.key);
+                evictNode(node);
+                return;
+            }
+            Node<K, V> node = main.head;
+            if (node.frequency > 0) {
+                main.remove(node);
+                node.frequency--;
+                main.addLast(node);
+                continue;
+            }
+            evictNode(node);
+            return;
+        }
+    }
+
+    Node<K, V> nextNode(Node<K, V> node) {
+        if (node.next != null) {
+            return node.next;
+        }
+        return node.queue == SMALL ? main.head : null;
+    }
+
+    Node<K, V> firstNode() {
+        return small.head != null ? small.head : main.head;
+    }
+
+    @SuppressWarnings("unchecked")
+    final <T> T[] prepareArray(T[] a) {
+        int size = cache.size();
+        if (a.length < size) {
+            return (T[]) java.lang.reflect.Array.
+                    newInstance(a.getClass().getComponentType(), size);
+        }
+        if (a.length > size) {
+            a[size] = null;
+        }
+        return a;
+    }
+
+    final <T> T[] keysToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.key;
+        }
+        return a;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            S3FifoCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return S3FifoCache.this.remove(key) != null;
+        }
+
+        public Object[] toArray() {
+            return keysToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return keysToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.key);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final <T> T[] valuesToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.value;
+        }
+        return a;
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            S3FifoCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public Object[] toArray() {
+            return valuesToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return valuesToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.value);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            S3FifoCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> candidate = cache.get(key);
+            return Objects.equals(e, candidate);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> node = cache.get(key);
+            if (node == null) {
+                return false;
+            }
+            Object value = e.getValue();
+            if (Objects.equals(value, node.value)) {
+                S3FifoCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super Entry<K, V>> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        Node<K, V> next;
+        Node<K, V> current;
+        int expectedModCount;
+
+        final Node<K, V> nextNode() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = node;
+            next = S3FifoCache.this.nextNode(node);
+            return node;
+        }
+
+        public CacheIterator() {
+            next = firstNode();
+            current = null;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final void remove() {
+            Node<K, V> node = current;
+            if (node == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = null;
+            S3FifoCache.this.remove(node.key);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link S3FifoCache} with the specified capacity and capacity factor.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public S3FifoCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        smallCapacity = Math.max(1, (int) (capacity * SMALL_RATIO));
+        ghostCapacity = Math.max(1, capacity - smallCapacity);
+        int hashMapCapacity = (int) (capacity * capacityFactor);
+        cache = new HashMap<>(hashMapCapacity, 1f);
+        small = new FifoQueue<>();
+        main = new FifoQueue<>();
+        ghosts = new LinkedHashSet<>((int) (ghostCapacity * capacityFactor), 1f);
+    }
+
+    /**
+     * Constructs a {@link S3FifoCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public S3FifoCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            if (Objects.equals(value, n.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Node<K, V> node;
+        if ((node = cache.get(key)) == null) {
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        onHit(node);
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        V oldValue;
+        Node<K, V> node = cache.get(key);
+        if (node == null) {
+            oldValue = null;
+            if (cache.size() >= capacity) {
+                evict();
+            }
+            Node<K, V> newNode = new Node<>(key, value, ghosts.remove(key) ? MAIN : SMALL);
+            cache.put(key, newNode);
+            queueOf(newNode).addLast(newNode);
+        } else {
+            // key is already added
+            oldValue = node.value;
+            node.value = value;
+            onHit(node);
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        modCount++;
+        return oldValue;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        queueOf(node).remove(node);
+        modCount++;
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    public V discard(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        queueOf(node).remove(node);
+        modCount++;
+        return node.value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        List<Node<K, V>> removed = removalListener == null ? null : new ArrayList<>(cache.values());
+        cache.clear();
+        small.clear();
+        main.clear();
+        ghosts.clear();
+        modCount++;
+        if (removed != null) {
+            for (Node<K, V> node : removed) {
+                removalListener.onRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,468 @@
+package dev.paprikar.caching.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A log-structured store of serialized entries on disk, the second tier of a {@link TieredCache}.
+ * It uses the following data structures:
+ * <ul>
+ *     <li>segment files of the same size, each mapped into memory as a whole.
+ *     The records are only appended to the active segment, and a full segment is sealed.</li>
+ *     <li>{@code HashMap<KEY, LOCATION>} - the index of the keys and the locations of their records,
+ *     {@code segment id << 32 | offset}.</li>
+ * </ul>
+ *
+ * <p>
+ * A record is {@code int keyLength, int valueLength, key bytes, value bytes}.
+ * A replaced or removed record stays in its segment as dead space, which is counted per segment.
+ * When a sealed segment is mostly dead, it is compacted on the executor in the background:
+ * the live records are copied to the active segment one by one, and then the segment file is deleted.
+ * When all the segments are used, the oldest one is evicted as a whole, together with its live records.
+ *
+ * <p>
+ * All the operations are synchronized, so the compaction holds the lock only while copying a single record.
+ * The segment files left from a previous run are deleted, as the index is kept only in memory.
+ *
+ * @param <K> the type of keys
+ * @author paprikar
+ */
+final class SegmentLog<K> implements Closeable {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final String SEGMENT_PREFIX = "segment-";
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * The size of the header of a record.
+     */
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * The part of the live bytes of a sealed segment below which the segment is compacted.
+     */
+    static final double COMPACTION_THRESHOLD = 0.5;
+
+    final Path directory;
+
+    final int segmentSize;
+
+    final int maxSegments;
+
+    final Serializer<K> keySerializer;
+
+    final Executor executor;
+
+    /**
+     * The listener of the live records dropped with an evicted segment, called with the value bytes.
+     */
+    final EvictionListener<K, byte[]> evictionListener;
+
+    /**
+     * The locations of the records of the keys.
+     */
+    final Map<K, Long> index = new HashMap<>();
+
+    /**
+     * The segments by id, in the order of creation.
+     */
+    final Map<Integer, Segment> segments = new LinkedHashMap<>();
+
+    /**
+     * Whether a compaction task is scheduled or running.
+     */
+    final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * The buffer of the serialized key.
+     */
+    final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+
+    final DataOutputStream keyOut = new DataOutputStream(keyBytes);
+
+    /**
+     * The segment the records are appended to, or {@code null} if there is none yet.
+     */
+    Segment active;
+
+    int nextId;
+
+    boolean closed;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static final class Segment {
+
+        final int id;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        /**
+         * The end of the appended records.
+         */
+        int writePosition;
+
+        /**
+         * The number of bytes of the live records.
+         */
+        int liveBytes;
+
+        Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        int recordSize(int offset) {
+            return HEADER_SIZE + buffer.getInt(offset) + buffer.getInt(offset + Integer.BYTES);
+        }
+
+        byte[] bytes(int offset, int length) {
+            ByteBuffer b = buffer.duplicate();
+            b.position(offset);
+            byte[] bytes = new byte[length];
+            b.get(bytes);
+            return bytes;
+        }
+
+        byte[] key(int offset) {
+            return bytes(offset + HEADER_SIZE, buffer.getInt(offset));
+        }
+
+        byte[] value(int offset) {
+            return bytes(offset + HEADER_SIZE + buffer.getInt(offset), buffer.getInt(offset + Integer.BYTES));
+        }
+    }
+
+    static long location(int segmentId, int offset) {
+        return (long) segmentId << 32 | offset;
+    }
+
+    static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offset(long location) {
+        return (int) location;
+    }
+
+    static UncheckedIOException unchecked(IOException e) {
+        return new UncheckedIOException(e);
+    }
+
+    K readKey(byte[] bytes) {
+        try {
+            return keySerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw unchecked(e);
+        }
+    }
+
+    Segment newSegment() throws IOException {
+        int id = nextId++;
+        Path file = directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            Segment segment = new Segment(id, file, channel, buffer);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the segment. The file stays mapped until the buffer is collected.
+     */
+    void deleteSegment(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        if (active == segment) {
+            active = null;
+        }
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    /**
+     * Drops the oldest segment and the live records in it.
+     */
+    void evictOldest() throws IOException {
+        Segment segment = segments.values().iterator().next();
+        List<Map.Entry<K, byte[]>> evicted = new ArrayList<>();
+        for (int offset = 0; offset < segment.writePosition; offset += segment.recordSize(offset)) {
+            K key = readKey(segment.key(offset));
+            Long location = index.get(key);
+            if (location != null && location == location(segment.id, offset)) {
+                index.remove(key);
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(key, segment.value(offset)));
+            }
+        }
+        deleteSegment(segment);
+        for (Map.Entry<K, byte[]> e : evicted) {
+            evictionListener.onEviction(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Makes the active segment able to hold the record, sealing the full one.
+     *
+     * @param evict whether the oldest segment may be evicted to make room for a new one.
+     * @return {@code false} if a new segment is needed, but all the segments are used and may not be evicted.
+     */
+    boolean reserve(int size, boolean evict) throws IOException {
+        if (active != null && active.writePosition + size <= segmentSize) {
+            return true;
+        }
+        if (segments.size() >= maxSegments) {
+            if (!evict) {
+                return false;
+            }
+            evictOldest();
+        }
+        active = newSegment();
+        scheduleCompaction();
+        return true;
+    }
+
+    /**
+     * Appends the record to the active segment and returns its location.
+     */
+    long append(byte[] key, byte[] value) {
+        Segment segment = active;
+        int offset = segment.writePosition;
+        ByteBuffer b = segment.buffer.duplicate();
+        b.position(offset);
+        b.putInt(key.length).putInt(value.length).put(key).put(value);
+        int size = HEADER_SIZE + key.length + value.length;
+        segment.writePosition += size;
+        segment.liveBytes += size;
+        return location(segment.id, offset);
+    }
+
+    void markDead(long location) {
+        Segment segment = segments.get(segmentId(location));
+        segment.liveBytes -= segment.recordSize(offset(location));
+    }
+
+    /**
+     * Returns the sealed segment with the least part of the live bytes below the threshold, or {@code null}.
+     */
+    synchronized Segment compactionCandidate() {
+        Segment candidate = null;
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.liveBytes < segment.writePosition * COMPACTION_THRESHOLD
+                    && (candidate == null || (double) segment.liveBytes / segment.writePosition
+                    < (double) candidate.liveBytes / candidate.writePosition)) {
+                candidate = segment;
+            }
+        }
+        return candidate;
+    }
+
+    void scheduleCompaction() {
+        if (compactionCandidate() != null && compacting.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        compact();
+                    } finally {
+                        compacting.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the next sealed segment schedules it again
+                compacting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Copies the live records of the segment to the active segment and deletes the segment.
+     *
+     * @return {@code false} if the segment could not be compacted as all the segments are used.
+     */
+    boolean compact(Segment segment) throws IOException {
+        int offset = 0;
+        while (true) {
+            synchronized (this) {
+                if (closed || segments.get(segment.id) != segment) {
+                    // evicted meanwhile
+                    return true;
+                }
+                if (offset >= segment.writePosition) {
+                    deleteSegment(segment);
+                    return true;
+                }
+                int size = segment.recordSize(offset);
+                byte[] key = segment.key(offset);
+                K k = readKey(key);
+                Long location = index.get(k);
+                if (location != null && location == location(segment.id, offset)) {
+                    if (!reserve(size, false)) {
+                        return false;
+                    }
+                    index.put(k, append(key, segment.value(offset)));
+                    segment.liveBytes -= size;
+                }
+                offset += size;
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link SegmentLog} in the directory, deleting the segment files left there.
+     *
+     * @throws IOException if the directory cannot be created or cleaned.
+     */
+    SegmentLog(Path directory, int segmentSize, int maxSegments, Serializer<K> keySerializer,
+               Executor executor, EvictionListener<K, byte[]> evictionListener) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.executor = Objects.requireNonNull(executor);
+        this.evictionListener = Objects.requireNonNull(evictionListener);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Returns the value bytes of the key, or {@code null} if the key is absent.
+     */
+    synchronized byte[] get(Object key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        return segments.get(segmentId(location)).value(offset(location));
+    }
+
+    /**
+     * Appends the record of the key, replacing the previous one.
+     *
+     * @return {@code false} if the record is larger than a segment and was not stored.
+     */
+    synchronized boolean put(K key, byte[] value) {
+        if (closed) {
+            throw new IllegalStateException("The log is closed");
+        }
+        try {
+            keyBytes.reset();
+            keySerializer.write(key, keyOut);
+            int size = HEADER_SIZE + keyBytes.size() + value.length;
+            Long oldLocation = index.remove(key);
+            if (oldLocation != null) {
+                markDead(oldLocation);
+            }
+            if (size > segmentSize) {
+                return false;
+            }
+            reserve(size, true);
+            index.put(key, append(keyBytes.toByteArray(), value));
+            return true;
+        } catch (IOException e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Removes the record of the key and returns its value bytes, or {@code null} if the key is absent.
+     */
+    synchronized byte[] remove(Object key) {
+        Long location = index.remove(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] value = segments.get(segmentId(location)).value(offset(location));
+        markDead(location);
+        return value;
+    }
+
+    /**
+     * Returns a snapshot of the keys.
+     */
+    synchronized List<K> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    synchronized void clear() {
+        index.clear();
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                deleteSegment(segment);
+            }
+        } catch (IOException e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Compacts the segments which are mostly dead.
+     */
+    void compact() {
+        try {
+            Segment segment;
+            while ((segment = compactionCandidate()) != null) {
+                if (!compact(segment)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Returns the total size of the segment files.
+     */
+    synchronized long diskSize() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.clear();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            deleteSegment(segment);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dev.paprikar.caching.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the keys or values of a cache in a binary form (see {@link CacheSnapshots}).
+ *
+ * @param <T> the type of serialized objects
+ * @author paprikar
+ */
+public interface Serializer<T> {
+
+    /**
+     * Serializes {@link String} objects in the modified UTF-8 encoding, up to 65535 bytes.
+     */
+    Serializer<String> STRING = new Serializer<String>() {
+        public void write(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /**
+     * Serializes {@link Integer} objects.
+     */
+    Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /**
+     * Serializes {@link Long} objects.
+     */
+    Serializer<Long> LONG = new Serializer<Long>() {
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * Serializes {@code byte[]} objects prefixed with their length.
+     */
+    Serializer<byte[]> BYTE_ARRAY = new Serializer<byte[]>() {
+        public void write(byte[] value, DataOutput out) throws IOException {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+
+        public byte[] read(DataInput in) throws IOException {
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            return value;
+        }
+    };
+
+    /**
+     * Writes the object to the output.
+     *
+     * @param value the object, not {@code null}.
+     * @param out   the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     * Reads the object written by {@link #write(Object, DataOutput)} from the input.
+     *
+     * @param in the input.
+     * @return the object.
+     * @throws IOException if an I/O error occurs.
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,272 @@
+package dev.paprikar.caching.cache;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A slab allocator of chunks of direct {@link ByteBuffer} pages.
+ * The chunk sizes are the powers of two from {@link #MINIMUM_CHUNK_SIZE} up to the page size (size classes).
+ * A page is carved into the chunks of a single size class when the class has no free chunks,
+ * and the freed chunks are reused by the same class. When the memory limit is reached,
+ * a page without allocated chunks is taken back from its class and carved for another one.
+ *
+ * <p>
+ * A chunk is referenced by a {@code long} value: the page index in the high half
+ * and the offset within the page in the low half, so the owner keeps only primitive references on-heap.
+ *
+ * @author paprikar
+ */
+final class SlabAllocator {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The size of the smallest chunk.
+     */
+    static final int MINIMUM_CHUNK_SIZE = 64;
+
+    static final int MINIMUM_CHUNK_SHIFT = Integer.numberOfTrailingZeros(MINIMUM_CHUNK_SIZE);
+
+    /**
+     * The page size.
+     */
+    final int pageSize;
+
+    /**
+     * The allocated pages.
+     */
+    final ByteBuffer[] pages;
+
+    /**
+     * The number of allocated pages.
+     */
+    int pageCount;
+
+    /**
+     * The size class the page is carved into, or {@code -1} if the page is free, per page.
+     */
+    final int[] pageClass;
+
+    /**
+     * The number of allocated chunks, per page.
+     */
+    final int[] pageUsed;
+
+    /**
+     * The number of carved pages without allocated chunks.
+     */
+    int emptyPages;
+
+    /**
+     * The stack of allocated pages which are not carved.
+     */
+    final int[] freePages;
+
+    /**
+     * The number of pages in the stack of free pages.
+     */
+    int freePageCount;
+
+    /**
+     * The stacks of free chunks, per size class.
+     */
+    final long[][] freeChunks;
+
+    /**
+     * The number of free chunks in the stacks, per size class.
+     */
+    final int[] freeCounts;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static long ref(int page, int offset) {
+        return ((long) page << 32) | offset;
+    }
+
+    static int page(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    static int offset(long ref) {
+        return (int) ref;
+    }
+
+    void push(int sizeClass, long ref) {
+        long[] stack = freeChunks[sizeClass];
+        int count = freeCounts[sizeClass];
+        if (count == stack.length) {
+            freeChunks[sizeClass] = stack = Arrays.copyOf(stack, Math.max(16, count << 1));
+        }
+        stack[count] = ref;
+        freeCounts[sizeClass] = count + 1;
+    }
+
+    /**
+     * Returns a page which is not carved, or {@code -1} if there are no pages left.
+     */
+    int takePage() {
+        if (freePageCount > 0) {
+            return freePages[--freePageCount];
+        }
+        if (pageCount < pages.length) {
+            pages[pageCount] = ByteBuffer.allocateDirect(pageSize);
+            return pageCount++;
+        }
+        return reclaimPage();
+    }
+
+    /**
+     * Takes back a carved page without allocated chunks, removing its chunks from the stack of its size class.
+     * Returns the page, or {@code -1} if there is no such page.
+     */
+    int reclaimPage() {
+        if (emptyPages == 0) {
+            return -1;
+        }
+        int page = 0;
+        while (pageClass[page] < 0 || pageUsed[page] > 0) {
+            page++;
+        }
+        int sizeClass = pageClass[page];
+        long[] stack = freeChunks[sizeClass];
+        int count = 0;
+        for (int i = 0; i < freeCounts[sizeClass]; i++) {
+            if (page(stack[i]) != page) {
+                stack[count++] = stack[i];
+            }
+        }
+        freeCounts[sizeClass] = count;
+        pageClass[page] = -1;
+        emptyPages--;
+        return page;
+    }
+
+    /**
+     * Carves a page into the chunks of the size class, returns {@code false} if there are no pages left.
+     */
+    boolean carve(int sizeClass) {
+        int page = takePage();
+        if (page < 0) {
+            return false;
+        }
+        pageClass[page] = sizeClass;
+        emptyPages++;
+        int chunkSize = chunkSize(sizeClass);
+        for (int offset = pageSize - chunkSize; offset >= 0; offset -= chunkSize) {
+            push(sizeClass, ref(page, offset));
+        }
+        return true;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    SlabAllocator(int pageSize, int maximumPages) {
+        this.pageSize = pageSize;
+        pages = new ByteBuffer[maximumPages];
+        pageClass = new int[maximumPages];
+        pageUsed = new int[maximumPages];
+        freePages = new int[maximumPages];
+        int classes = Integer.numberOfTrailingZeros(pageSize) - MINIMUM_CHUNK_SHIFT + 1;
+        freeChunks = new long[classes][];
+        freeCounts = new int[classes];
+        for (int c = 0; c < classes; c++) {
+            freeChunks[c] = new long[Math.min(16, pageSize / chunkSize(c))];
+        }
+    }
+
+    /**
+     * Returns the size class of the chunks able to hold the specified number of bytes.
+     *
+     * @throws IllegalArgumentException if the length exceeds the page size.
+     */
+    int sizeClass(int length) {
+        if (length > pageSize) {
+            throw new IllegalArgumentException("Value is too large: " + length);
+        }
+        if (length <= MINIMUM_CHUNK_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MINIMUM_CHUNK_SHIFT;
+    }
+
+    static int chunkSize(int sizeClass) {
+        return MINIMUM_CHUNK_SIZE << sizeClass;
+    }
+
+    /**
+     * Allocates a chunk of the size class and returns its reference,
+     * or {@code -1} if there are no free chunks of the class and no pages left.
+     */
+    long allocate(int sizeClass) {
+        if (freeCounts[sizeClass] == 0 && !carve(sizeClass)) {
+            return -1;
+        }
+        long ref = freeChunks[sizeClass][--freeCounts[sizeClass]];
+        if (pageUsed[page(ref)]++ == 0) {
+            emptyPages--;
+        }
+        return ref;
+    }
+
+    void free(int sizeClass, long ref) {
+        push(sizeClass, ref);
+        if (--pageUsed[page(ref)] == 0) {
+            emptyPages++;
+        }
+    }
+
+    /**
+     * Copies the remaining bytes of the source to the chunk, the position of the source is not changed.
+     */
+    void write(long ref, ByteBuffer src) {
+        ByteBuffer dst = pages[page(ref)].duplicate();
+        ((Buffer) dst).position(offset(ref));
+        dst.put(src.duplicate());
+    }
+
+    /**
+     * Returns a read-only view of the first {@code length} bytes of the chunk.
+     */
+    ByteBuffer view(long ref, int length) {
+        ByteBuffer view = pages[page(ref)].asReadOnlyBuffer();
+        int offset = offset(ref);
+        ((Buffer) view).limit(offset + length);
+        ((Buffer) view).position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Returns a heap copy of the first {@code length} bytes of the chunk.
+     */
+    ByteBuffer copy(long ref, int length) {
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(view(ref, length));
+        ((Buffer) copy).flip();
+        return copy;
+    }
+
+    /**
+     * Returns the number of bytes of the allocated pages.
+     */
+    long allocatedBytes() {
+        return (long) pageCount * pageSize;
+    }
+
+    /**
+     * Frees all chunks. The allocated pages are kept and carved again on demand.
+     */
+    void clear() {
+        for (int page = 0; page < pageCount; page++) {
+            pageClass[page] = -1;
+            pageUsed[page] = 0;
+            freePages[page] = page;
+        }
+        freePageCount = pageCount;
+        emptyPages = 0;
+        Arrays.fill(freeCounts, 0);
+    }
+}
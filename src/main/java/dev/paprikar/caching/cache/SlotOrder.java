@@ -0,0 +1,44 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * The eviction order of a fixed number of slots of parallel arrays.
+ *
+ * @author paprikar
+ */
+interface SlotOrder {
+
+    /**
+     * The absent slot.
+     */
+    int NIL = -1;
+
+    /**
+     * Adds the new slot to the eviction order.
+     */
+    void add(int slot);
+
+    /**
+     * Records the access to the slot.
+     */
+    void access(int slot);
+
+    /**
+     * Removes the slot from the eviction order.
+     */
+    void remove(int slot);
+
+    /**
+     * Returns the next slot to evict, or {@link #NIL} if there are no slots.
+     */
+    int victim();
+
+    /**
+     * Returns the slot following the specified one in the eviction order, or {@link #NIL}.
+     */
+    int nextSlot(int slot);
+
+    /**
+     * Removes all slots from the eviction order.
+     */
+    void clear();
+}
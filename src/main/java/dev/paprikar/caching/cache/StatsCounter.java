@@ -0,0 +1,107 @@
+package dev.paprikar.caching.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the statistics of a cache in striped {@link LongAdder} counters,
+ * so the concurrent recording threads do not contend.
+ * The caches hold {@code null} instead of a counter when the statistics are disabled.
+ *
+ * @author paprikar
+ */
+final class StatsCounter {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    final LongAdder hitCount = new LongAdder();
+
+    final LongAdder missCount = new LongAdder();
+
+    final LongAdder putCount = new LongAdder();
+
+    final LongAdder removeCount = new LongAdder();
+
+    final LongAdder loadSuccessCount = new LongAdder();
+
+    final LongAdder loadFailureCount = new LongAdder();
+
+    final LongAdder totalLoadTime = new LongAdder();
+
+    /**
+     * The number of evictions, per {@link RemovalCause} ordinal.
+     */
+    final LongAdder[] evictionCounts;
+
+    /**
+     * The number of loads, per power of two of the load time in nanoseconds (see {@link CacheStats}).
+     */
+    final LongAdder[] loadTimeHistogram;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    static long[] sum(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    void recordLoad(LongAdder count, long loadTime) {
+        count.increment();
+        totalLoadTime.add(loadTime);
+        loadTimeHistogram[CacheStats.bucket(loadTime)].increment();
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    StatsCounter() {
+        evictionCounts = newAdders(RemovalCause.values().length);
+        loadTimeHistogram = newAdders(CacheStats.HISTOGRAM_BUCKETS);
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordPut() {
+        putCount.increment();
+    }
+
+    void recordRemove() {
+        removeCount.increment();
+    }
+
+    void recordEviction(RemovalCause cause) {
+        evictionCounts[cause.ordinal()].increment();
+    }
+
+    void recordLoadSuccess(long loadTime) {
+        recordLoad(loadSuccessCount, loadTime);
+    }
+
+    void recordLoadFailure(long loadTime) {
+        recordLoad(loadFailureCount, loadTime);
+    }
+
+    CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), putCount.sum(), removeCount.sum(),
+                loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum(),
+                sum(evictionCounts), sum(loadTimeHistogram));
+    }
+}
@@ -0,0 +1,642 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * This implementation splits the key space into a power of two number of segments.
+ * Each segment is an independent cache engine (for example {@link LruCache} or {@link LfuCache})
+ * with its own part of the capacity, guarded by its own lock.
+ * A key is always mapped to the same segment, so operations on different segments never contend.
+ *
+ * <p>
+ * The eviction decisions are made per segment, so they approximate the global policy.
+ * To keep the approximation close, every segment holds at least {@link #MINIMUM_SEGMENT_CAPACITY}
+ * entries, which means that small caches consist of a single segment
+ * and behave exactly like the underlying engine.
+ *
+ * <p>
+ * The iterators of the Collection-views are weakly consistent:
+ * each segment is copied under its lock when the iterator reaches it,
+ * so they never throw {@link ConcurrentModificationException}.
+ *
+ * <p>
+ * The removals made by the segments are collected per thread and passed to the {@link RemovalListener}
+ * after the segment lock is released, so a slow listener never blocks the other threads.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class StripedCache<K, V> implements ICache<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The concurrency level used when none specified in constructor.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum number of segments.
+     */
+    static final int MAXIMUM_SEGMENTS = 1 << 16;
+
+    /**
+     * The minimum number of entries per segment.
+     */
+    static final int MINIMUM_SEGMENT_CAPACITY = 16;
+
+    /**
+     * The segments, each guarded by its own lock.
+     */
+    final Segment<K, V>[] segments;
+
+    /**
+     * The shift used to select a segment by the high bits of the spread hash.
+     */
+    final int segmentShift;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    volatile RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The removals made by the current thread under a segment lock and not yet passed to the listener.
+     */
+    final ThreadLocal<Deque<RemovalNotification<K, V>>> pendingRemovals = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static final class Segment<K, V> extends ReentrantLock {
+
+        final ICache<K, V> cache;
+
+        Segment(ICache<K, V> cache) {
+            this.cache = cache;
+        }
+    }
+
+    static int segmentCount(int capacity, int concurrencyLevel) {
+        int maximum = Math.min(MAXIMUM_SEGMENTS, Math.max(1, capacity / MINIMUM_SEGMENT_CAPACITY));
+        int count = 1;
+        while (count < concurrencyLevel && count << 1 <= maximum) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    int segmentIndex(Object key) {
+        if (segmentShift == 32) {
+            return 0;
+        }
+        int h = Objects.hashCode(key) * 0x9E3779B9;
+        return h >>> segmentShift;
+    }
+
+    Segment<K, V> segmentFor(Object key) {
+        return segments[segmentIndex(key)];
+    }
+
+    /**
+     * Releases the lock of the segment and then passes the pending removals to the listener.
+     */
+    void unlock(Segment<K, V> segment) {
+        segment.unlock();
+        RemovalListener<? super K, ? super V> listener = removalListener;
+        if (listener != null && !segment.isHeldByCurrentThread()) {
+            Deque<RemovalNotification<K, V>> pending = pendingRemovals.get();
+            RemovalNotification<K, V> notification;
+            while ((notification = pending.poll()) != null) {
+                notification.deliver(listener);
+            }
+        }
+    }
+
+    void deferRemoval(K key, V value, RemovalCause cause) {
+        pendingRemovals.get().add(new RemovalNotification<>(key, value, cause));
+    }
+
+    List<Map.Entry<K, V>> snapshot(Segment<K, V> segment) {
+        segment.lock();
+        try {
+            List<Map.Entry<K, V>> entries = new ArrayList<>(segment.cache.size());
+            for (Map.Entry<K, V> e : segment.cache.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(e));
+            }
+            return entries;
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return StripedCache.this.size();
+        }
+
+        public final void clear() {
+            StripedCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return StripedCache.this.remove(key) != null;
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return StripedCache.this.size();
+        }
+
+        public final void clear() {
+            StripedCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return StripedCache.this.size();
+        }
+
+        public final void clear() {
+            StripedCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Segment<K, V> segment = segmentFor(e.getKey());
+            segment.lock();
+            try {
+                return segment.cache.entrySet().contains(e);
+            } finally {
+                unlock(segment);
+            }
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return StripedCache.this.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        int nextSegment;
+        Iterator<Map.Entry<K, V>> segmentIterator;
+        Map.Entry<K, V> current;
+
+        CacheIterator() {
+            segmentIterator = Collections.emptyIterator();
+        }
+
+        final Map.Entry<K, V> nextEntry() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current = segmentIterator.next();
+        }
+
+        public final boolean hasNext() {
+            while (!segmentIterator.hasNext()) {
+                if (nextSegment == segments.length) {
+                    return false;
+                }
+                segmentIterator = snapshot(segments[nextSegment++]).iterator();
+            }
+            return true;
+        }
+
+        public final void remove() {
+            Map.Entry<K, V> e = current;
+            if (e == null) {
+                throw new IllegalStateException();
+            }
+            current = null;
+            StripedCache.this.remove(e.getKey());
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextEntry().getKey();
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextEntry().getValue();
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextEntry();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link StripedCache} with the specified capacity, capacity factor,
+     * deletion strategy of the segments and concurrency level.
+     * The number of segments is the smallest power of two not less than the concurrency level,
+     * limited so that every segment holds at least {@link #MINIMUM_SEGMENT_CAPACITY} entries.
+     * The capacity is distributed between the segments as evenly as possible.
+     *
+     * @param capacity         the cache capacity.
+     * @param capacityFactor   the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @param strategy         the deletion strategy of the segments.
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     * @throws IllegalArgumentException if the capacity, capacity factor or concurrency level is less than one,
+     *                                  or the strategy is illegal.
+     */
+    public StripedCache(int capacity, float capacityFactor, CacheDeletionStrategy strategy, int concurrencyLevel) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+        }
+        int count = segmentCount(capacity, concurrencyLevel);
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] s = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+            s[i] = new Segment<>(Cache.<K, V>newEngine(segmentCapacity, capacityFactor, strategy));
+        }
+        segments = s;
+        segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Constructs a {@link StripedCache} with the specified capacity, deletion strategy of the segments,
+     * the default capacity factor (1.5) and the default concurrency level (four times the number of processors).
+     *
+     * @param capacity the cache capacity.
+     * @param strategy the deletion strategy of the segments.
+     * @throws IllegalArgumentException if the capacity is less than one or the strategy is illegal.
+     */
+    public StripedCache(int capacity, CacheDeletionStrategy strategy) {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR, strategy, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public int size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                size += segment.cache.size();
+            } finally {
+                unlock(segment);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                if (!segment.cache.isEmpty()) {
+                    return false;
+                }
+            } finally {
+                unlock(segment);
+            }
+        }
+        return true;
+    }
+
+    public boolean containsKey(Object key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.containsKey(key);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                if (segment.cache.containsValue(value)) {
+                    return true;
+                }
+            } finally {
+                unlock(segment);
+            }
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.get(key);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.getOrDefault(key, defaultValue);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.put(key, value);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.putIfAbsent(key, value);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V remove(Object key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.remove(key);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.remove(key, value);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V replace(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.replace(key, value);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.replace(key, oldValue, newValue);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.computeIfAbsent(key, mappingFunction);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.computeIfPresent(key, remappingFunction);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.compute(key, remappingFunction);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.cache.merge(key, value, remappingFunction);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    /**
+     * Returns the values of the present keys, locking every segment once.
+     *
+     * @param keys the keys.
+     * @return the map of the present keys and their values, grouped by the segments.
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        List<List<K>> batches = new ArrayList<>(Collections.nCopies(segments.length, null));
+        for (K key : keys) {
+            int i = segmentIndex(key);
+            List<K> batch = batches.get(i);
+            if (batch == null) {
+                batches.set(i, batch = new ArrayList<>());
+            }
+            batch.add(key);
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            List<K> batch = batches.get(i);
+            if (batch == null) {
+                continue;
+            }
+            Segment<K, V> segment = segments[i];
+            segment.lock();
+            try {
+                result.putAll(segment.cache.getAll(batch));
+            } finally {
+                unlock(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this cache,
+     * passing each segment its part of the mappings as a batch under a single lock.
+     *
+     * @param m the mappings to be stored in this cache.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        List<Map<K, V>> batches = new ArrayList<>(Collections.nCopies(segments.length, null));
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            int i = segmentIndex(k);
+            Map<K, V> batch = batches.get(i);
+            if (batch == null) {
+                batches.set(i, batch = new LinkedHashMap<>());
+            }
+            batch.put(k, e.getValue());
+        }
+        for (int i = 0; i < segments.length; i++) {
+            Map<K, V> batch = batches.get(i);
+            if (batch == null) {
+                continue;
+            }
+            Segment<K, V> segment = segments[i];
+            segment.lock();
+            try {
+                segment.cache.putAll(batch);
+            } finally {
+                unlock(segment);
+            }
+        }
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                segment.cache.setRemovalListener(listener == null ? null : this::deferRemoval);
+            } finally {
+                unlock(segment);
+            }
+        }
+    }
+
+    public void recordStats() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                segment.cache.recordStats();
+            } finally {
+                unlock(segment);
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the statistics of the segments.
+     *
+     * @return the statistics, or {@link CacheStats#EMPTY} if they are not recorded.
+     */
+    public CacheStats stats() {
+        CacheStats stats = CacheStats.EMPTY;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                stats = stats.plus(segment.cache.stats());
+            } finally {
+                unlock(segment);
+            }
+        }
+        return stats;
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                segment.cache.clear();
+            } finally {
+                unlock(segment);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
@@ -0,0 +1,23 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * A source of the time in nanoseconds, used to measure the expiration of cache entries.
+ * Only the differences between the returned values are meaningful.
+ *
+ * @author paprikar
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * The ticker backed by {@link System#nanoTime()}.
+     */
+    Ticker SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current time in nanoseconds.
+     *
+     * @return the current time in nanoseconds.
+     */
+    long read();
+}
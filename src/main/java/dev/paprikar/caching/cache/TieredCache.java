@@ -0,0 +1,458 @@
+package dev.paprikar.caching.cache;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This implementation is a two-tier cache. It uses the following data structures:
+ * <ul>
+ *     <li>the engine of the deletion strategy - the first tier (L1) on the heap.</li>
+ *     <li>{@link SegmentLog} - the second tier (L2) in the memory-mapped segment files on disk,
+ *     with an index of the keys on the heap.</li>
+ * </ul>
+ *
+ * <p>
+ * An entry is in one tier at a time. An entry evicted from L1 is serialized and appended to L2
+ * instead of being lost. A read that misses L1 looks the key up in L2, and an L2 hit moves the entry
+ * back to L1, which may spill another entry to L2. When L2 is full, its oldest segment is dropped
+ * together with its entries, which are the only entries removed with the {@link RemovalCause#SIZE} cause,
+ * as well as the entries larger than a segment. The dead space of the replaced and promoted entries
+ * is reclaimed by the compaction of L2 on the executor.
+ *
+ * <p>
+ * The cache is not thread-safe, only the compaction runs in the background.
+ * The views are unmodifiable and read the values of L2 from disk.
+ * The files of L2 are deleted by {@link #close()}, and the cache must not be used after that.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class TieredCache<K, V> implements ICache<K, V>, Closeable {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The size of a segment file used when none specified in constructor.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /**
+     * The minimum size of a segment file.
+     */
+    static final int MIN_SEGMENT_SIZE = 4 << 10;
+
+    /**
+     * The first tier.
+     */
+    final CacheEngine<K, V> cache;
+
+    /**
+     * The second tier.
+     */
+    final SegmentLog<K> log;
+
+    final Serializer<V> valueSerializer;
+
+    /**
+     * The buffer of the serialized value.
+     */
+    final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+
+    final DataOutputStream valueOut = new DataOutputStream(valueBytes);
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    byte[] serialize(V value) {
+        try {
+            valueBytes.reset();
+            valueSerializer.write(value, valueOut);
+            return valueBytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    V deserialize(byte[] bytes) {
+        try {
+            return valueSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void onRemoval(K key, V value, RemovalCause cause) {
+        if (statsCounter != null && cause == RemovalCause.SIZE) {
+            statsCounter.recordEviction(cause);
+        }
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    /**
+     * Moves the entry evicted from L1 to L2.
+     */
+    void spill(K key, V value) {
+        if (!log.put(key, serialize(value))) {
+            // larger than a segment
+            onRemoval(key, value, RemovalCause.SIZE);
+        }
+    }
+
+    void onLogEviction(K key, byte[] value) {
+        onRemoval(key, removalListener == null ? null : deserialize(value), RemovalCause.SIZE);
+    }
+
+    /**
+     * Iterates over the entries of L1 and then over a snapshot of the keys of L2.
+     */
+    abstract class TieredIterator {
+        final Iterator<Map.Entry<K, V>> l1 = cache.entrySet().iterator();
+        Iterator<K> l2;
+
+        public final boolean hasNext() {
+            if (l2 == null) {
+                if (l1.hasNext()) {
+                    return true;
+                }
+                l2 = log.keys().iterator();
+            }
+            return l2.hasNext();
+        }
+
+        final Map.Entry<K, V> nextEntry() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (l2 == null) {
+                Map.Entry<K, V> e = l1.next();
+                return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue());
+            }
+            K key = l2.next();
+            byte[] value = log.get(key);
+            return new AbstractMap.SimpleImmutableEntry<>(key, value == null ? null : deserialize(value));
+        }
+
+        final K nextKey() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return l2 == null ? l1.next().getKey() : l2.next();
+        }
+    }
+
+    final class KeyIterator extends TieredIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextKey();
+        }
+    }
+
+    final class ValueIterator extends TieredIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextEntry().getValue();
+        }
+    }
+
+    final class EntryIterator extends TieredIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextEntry();
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return TieredCache.this.size();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return TieredCache.this.size();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return TieredCache.this.size();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link TieredCache} with the specified capacity of L1, capacity factor, deletion strategy,
+     * directory, serializers, disk size and segment size of L2, and the executor of the compaction.
+     * The segment files left in the directory are deleted.
+     *
+     * @param capacity        the capacity of L1.
+     * @param capacityFactor  the capacity factor of L1.
+     * @param strategy        the deletion strategy of L1.
+     * @param directory       the directory of the segment files, created if absent.
+     * @param keySerializer   the serializer of the keys.
+     * @param valueSerializer the serializer of the values.
+     * @param maxDiskSize     the maximum total size of the segment files, at least two segments.
+     * @param segmentSize     the size of a segment file, from 4 KiB to 1 GiB.
+     * @param executor        the executor of the compaction.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one, the strategy is illegal,
+     *                                  or the sizes are illegal.
+     * @throws IOException              if the directory cannot be created or cleaned.
+     */
+    public TieredCache(int capacity, float capacityFactor, CacheDeletionStrategy strategy, Path directory,
+                       Serializer<K> keySerializer, Serializer<V> valueSerializer, long maxDiskSize,
+                       int segmentSize, Executor executor) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > 1 << 30) {
+            throw new IllegalArgumentException("Illegal segment size: " + segmentSize);
+        }
+        if (maxDiskSize < 2L * segmentSize) {
+            throw new IllegalArgumentException("Illegal maximum disk size: " + maxDiskSize);
+        }
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+        cache = Cache.newEngine(capacity, capacityFactor, strategy);
+        cache.setEvictionListener(this::spill);
+        int maxSegments = (int) Math.min(Integer.MAX_VALUE, maxDiskSize / segmentSize);
+        log = new SegmentLog<>(directory, segmentSize, maxSegments, keySerializer, executor, this::onLogEviction);
+    }
+
+    /**
+     * Constructs a {@link TieredCache} with the specified capacity of L1, deletion strategy, directory,
+     * serializers and disk size of L2, the default capacity factor (1.5) and segment size (64 MiB),
+     * which compacts L2 on the common pool.
+     *
+     * @param capacity        the capacity of L1.
+     * @param strategy        the deletion strategy of L1.
+     * @param directory       the directory of the segment files, created if absent.
+     * @param keySerializer   the serializer of the keys.
+     * @param valueSerializer the serializer of the values.
+     * @param maxDiskSize     the maximum total size of the segment files, at least two segments.
+     * @throws IllegalArgumentException if the capacity is less than one, the strategy is illegal,
+     *                                  or the disk size is less than two segments.
+     * @throws IOException              if the directory cannot be created or cleaned.
+     */
+    public TieredCache(int capacity, CacheDeletionStrategy strategy, Path directory, Serializer<K> keySerializer,
+                       Serializer<V> valueSerializer, long maxDiskSize) throws IOException {
+        this(capacity, Cache.DEFAULT_CAPACITY_FACTOR, strategy, directory, keySerializer, valueSerializer,
+                maxDiskSize, DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public int size() {
+        return cache.size() + log.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key) || log.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        return cache.containsValue(value) || values().contains(value);
+    }
+
+    public V get(Object key) {
+        V value = cache.get(key);
+        if (value == null) {
+            byte[] bytes = log.remove(key);
+            if (bytes != null) {
+                // promote the entry back to L1
+                value = deserialize(bytes);
+                @SuppressWarnings("unchecked")
+                K k = (K) key;
+                cache.put(k, value);
+            }
+        }
+        if (statsCounter != null) {
+            if (value == null) {
+                statsCounter.recordMiss();
+            } else {
+                statsCounter.recordHit();
+            }
+        }
+        return value;
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        // the old record leaves L2 first, so that the spill of the put cannot evict it with its segment
+        byte[] bytes = log.remove(key);
+        V oldValue = cache.put(key, value);
+        if (oldValue == null && bytes != null) {
+            oldValue = deserialize(bytes);
+        }
+        if (oldValue != null) {
+            onRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        return oldValue;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        V value = cache.remove(key);
+        if (value == null) {
+            byte[] bytes = log.remove(key);
+            if (bytes == null) {
+                return null;
+            }
+            value = deserialize(bytes);
+        }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        onRemoval(k, value, RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    /**
+     * Returns the number of the entries in L2.
+     *
+     * @return the number of the entries on disk.
+     */
+    public int diskEntries() {
+        return log.size();
+    }
+
+    /**
+     * Returns the total size of the segment files of L2.
+     *
+     * @return the size in bytes.
+     */
+    public long diskSize() {
+        return log.diskSize();
+    }
+
+    /**
+     * Compacts the mostly dead segments of L2 in the calling thread.
+     */
+    public void compact() {
+        log.compact();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        List<Map.Entry<K, V>> removed = removalListener == null ? null : new ArrayList<>(entrySet());
+        cache.clear();
+        log.clear();
+        if (removed != null) {
+            for (Map.Entry<K, V> e : removed) {
+                removalListener.onRemoval(e.getKey(), e.getValue(), RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files of L2. The cache must not be used after that.
+     *
+     * @throws IOException if a file cannot be deleted.
+     */
+    public void close() throws IOException {
+        log.close();
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
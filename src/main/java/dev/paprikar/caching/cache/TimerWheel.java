@@ -0,0 +1,191 @@
+package dev.paprikar.caching.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel that schedules the expiration of cache entries.
+ * The wheels are arrays of buckets, each bucket is a circular doubly linked list of timers
+ * with a sentinel. The wheels have the bucket spans of about a second, a minute, an hour, a day,
+ * and the last one holds the timers due in more than six days:
+ * <pre>
+ * span:    2^30 ns (1.07 s), 2^36 ns (1.14 m), 2^42 ns (1.22 h), 2^47 ns (1.63 d), 2^49 ns (6.5 d)
+ * buckets: 64,               64,               32,               4,                1</pre>
+ *
+ * <p>
+ * A timer is added to the bucket of the finest wheel whose total span covers its delay,
+ * and is removed in a constant time. When the time advances, only the buckets
+ * whose spans have passed are visited: the due timers are expired and the rest are moved
+ * to the finer wheels. So every timer is touched a bounded number of times,
+ * and the expiration takes an amortized {@code O(1)} time without ever scanning all entries.
+ *
+ * @param <K> the type of keys of the timers
+ * @author paprikar
+ */
+final class TimerWheel<K> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The number of buckets, per wheel.
+     */
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+    /**
+     * The binary logarithm of the bucket span, per wheel.
+     */
+    static final int[] SHIFTS = {30, 36, 42, 47, 49};
+
+    /**
+     * The total spans of the wheels, the timers with a greater delay are held by the last wheel.
+     */
+    static final long[] SPANS = {1L << 36, 1L << 42, 1L << 47, 1L << 49};
+
+    static final class Timer<K> {
+
+        final K key;
+
+        /**
+         * The time of the expiration after the last write.
+         */
+        long writeExpiresAt;
+
+        /**
+         * The time of the expiration.
+         */
+        long expiresAt;
+
+        Timer<K> prev;
+        Timer<K> next;
+
+        Timer(K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The sentinels of the buckets, per wheel.
+     */
+    final Timer<K>[][] wheels;
+
+    /**
+     * The time of the last advance.
+     */
+    long nanos;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    Timer<K> findBucket(long time) {
+        long delay = time - nanos;
+        int last = wheels.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (delay < SPANS[i]) {
+                long ticks = time >>> SHIFTS[i];
+                return wheels[i][(int) ticks & (BUCKETS[i] - 1)];
+            }
+        }
+        return wheels[last][0];
+    }
+
+    void expire(int wheel, long previousTicks, long delta, Consumer<Timer<K>> expirer) {
+        Timer<K>[] buckets = wheels[wheel];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) previousTicks & mask;
+        for (int i = start; i < start + steps; i++) {
+            Timer<K> sentinel = buckets[i & mask];
+            Timer<K> timer = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (timer != sentinel) {
+                Timer<K> next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                if (timer.expiresAt - nanos <= 0) {
+                    expirer.accept(timer);
+                } else {
+                    // cascade to a finer wheel
+                    schedule(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos) {
+        this.nanos = nanos;
+        wheels = (Timer<K>[][]) new Timer<?>[BUCKETS.length][];
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] = (Timer<K>[]) new Timer<?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Timer<K> sentinel = new Timer<>(null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheels[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds the unscheduled timer to the bucket of its expiration time.
+     */
+    void schedule(Timer<K> timer) {
+        Timer<K> sentinel = findBucket(timer.expiresAt);
+        Timer<K> last = sentinel.prev;
+        timer.prev = last;
+        timer.next = sentinel;
+        last.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * Removes the timer from its bucket, if it is scheduled.
+     */
+    void unschedule(Timer<K> timer) {
+        if (timer.next != null) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.prev = null;
+            timer.next = null;
+        }
+    }
+
+    /**
+     * Advances the time and passes the due timers, which are already unscheduled, to the expirer.
+     */
+    void advance(long now, Consumer<Timer<K>> expirer) {
+        long previous = nanos;
+        nanos = now;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, expirer);
+        }
+    }
+
+    /**
+     * Unschedules all timers.
+     */
+    void clear() {
+        for (Timer<K>[] buckets : wheels) {
+            for (Timer<K> sentinel : buckets) {
+                for (Timer<K> timer = sentinel.next; timer != sentinel; ) {
+                    Timer<K> next = timer.next;
+                    timer.prev = null;
+                    timer.next = null;
+                    timer = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+    }
+}
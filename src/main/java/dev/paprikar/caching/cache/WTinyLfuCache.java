@@ -0,0 +1,771 @@
+package dev.paprikar.caching.cache;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This implementation of the Window-TinyLFU policy uses the following data structures:
+ * <ul>
+ *     <li>three doubly linked lists of nodes of type {@link Node} in the recency order:
+ *     the admission window, the probation and the protected segments of the main region.</li>
+ *     <li>{@code HashMap<KEY, Node>} - to store information
+ *     about the keys and corresponding nodes.</li>
+ *     <li>{@link FrequencySketch} - a compact 4-bit count-min sketch that estimates
+ *     the frequency of keys, including the ones that are no longer cached,
+ *     with periodic halving of all counters.</li>
+ * </ul>
+ *
+ * <p>
+ * A new entry is added to the admission window (1% of the capacity), which is a plain LRU.
+ * An entry evicted from the window becomes a candidate to the main region: the candidate
+ * is admitted only if the sketch estimates it to be more frequent than the victim, the least
+ * recently used entry of the probation segment. Otherwise the candidate itself is evicted.
+ * A hit in the probation segment promotes the entry to the protected segment (80% of the main region),
+ * the overflow of the protected segment is demoted back to the probation segment.
+ *
+ * <p>
+ * The window lets recent bursts survive, while the admission filter keeps one-hit wonders
+ * out of the main region, and the sketch uses only 8 bytes per cached entry instead of a per-key counter.
+ *
+ * <p>
+ * All this allows to perform add / get / remove operations in a constant {@code O(1)} time.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @author paprikar
+ */
+public class WTinyLfuCache<K, V> implements CacheEngine<K, V> {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The capacity factor used when none specified in constructor.
+     */
+    static final float DEFAULT_CAPACITY_FACTOR = 1.5f;
+
+    /**
+     * The part of the capacity occupied by the admission window.
+     */
+    static final double WINDOW_RATIO = 0.01;
+
+    /**
+     * The part of the main region occupied by the protected segment.
+     */
+    static final double PROTECTED_RATIO = 0.8;
+
+    static final byte WINDOW = 0;
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+
+    /**
+     * The cache capacity.
+     */
+    final int capacity;
+
+    /**
+     * The capacity of the admission window.
+     */
+    final int windowCapacity;
+
+    /**
+     * The capacity of the protected segment.
+     */
+    final int protectedCapacity;
+
+    /**
+     * The map for mapping keys and related nodes.
+     */
+    final Map<K, Node<K, V>> cache;
+
+    /**
+     * The frequency sketch used by the admission filter.
+     */
+    final FrequencySketch sketch;
+
+    /**
+     * The listener of the evictions, or {@code null}.
+     */
+    EvictionListener<K, V> evictionListener;
+
+    /**
+     * The listener of the removals, or {@code null}.
+     */
+    RemovalListener<? super K, ? super V> removalListener;
+
+    /**
+     * The recorder of the statistics, or {@code null} if they are disabled.
+     */
+    StatsCounter statsCounter;
+
+    final AccessOrderDeque<K, V> window;
+
+    final AccessOrderDeque<K, V> probation;
+
+    final AccessOrderDeque<K, V> protectedSegment;
+
+    /**
+     * The number of times this {@link WTinyLfuCache} has been structurally modified.
+     * This field is used to make iterators on Collection-views of the {@link WTinyLfuCache} fail-fast.
+     * (See {@link ConcurrentModificationException})
+     */
+    int modCount;
+
+    /**
+     * Holds cached {@link KeySet}
+     */
+    Set<K> keySet;
+
+    /**
+     * Holds cached {@link Values}
+     */
+    Collection<V> values;
+
+    /**
+     * Holds cached {@link EntrySet}
+     */
+    Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static class Node<K, V> implements Map.Entry<K, V> {
+
+        final K key;
+        V value;
+        byte queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        public Node(K key, V value, byte queue) {
+            this.key = key;
+            this.value = value;
+            this.queue = queue;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes in the recency order, the head is the least recently used one.
+     */
+    static final class AccessOrderDeque<K, V> {
+
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        void addLast(Node<K, V> node) {
+            Node<K, V> t = tail;
+            node.prev = t;
+            node.next = null;
+            if (t == null) {
+                head = node;
+            } else {
+                t.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> p = node.prev;
+            Node<K, V> n = node.next;
+            if (p == null) {
+                head = n;
+            } else {
+                p.next = n;
+                node.prev = null;
+            }
+            if (n == null) {
+                tail = p;
+            } else {
+                n.prev = p;
+                node.next = null;
+            }
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    AccessOrderDeque<K, V> dequeOf(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    void onHit(Node<K, V> node) {
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedSegment.addLast(node);
+                if (protectedSegment.size > protectedCapacity) {
+                    // demote the least recently used protected node
+                    Node<K, V> demoted = protectedSegment.head;
+                    protectedSegment.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protectedSegment.moveToLast(node);
+                break;
+        }
+    }
+
+    void evictNode(Node<K, V> node) {
+        dequeOf(node).remove(node);
+        cache.remove(node.key);
+        if (statsCounter != null) {
+            statsCounter.recordEviction(RemovalCause.SIZE);
+        }
+        if (evictionListener != null) {
+            evictionListener.onEviction(node.key, node.value);
+        }
+        notifyRemoval(node.key, node.value, RemovalCause.SIZE);
+    }
+
+    void notifyRemoval(K key, V value, RemovalCause cause) {
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    void evict() {
+        while (window.size > windowCapacity) {
+            // the least recently used node of the window becomes a candidate
+            Node<K, V> candidate = window.head;
+            window.remove(candidate);
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            if (cache.size() <= capacity) {
+                continue;
+            }
+            Node<K, V> victim = probation.head;
+            if (victim == candidate) {
+                victim = protectedSegment.head;
+            }
+            if (victim == null) {
+                evictNode(candidate);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+            }
+        }
+    }
+
+    Node<K, V> nextNode(Node<K, V> node) {
+        if (node.next != null) {
+            return node.next;
+        }
+        switch (node.queue) {
+            case WINDOW:
+                if (probation.head != null) {
+                    return probation.head;
+                }
+                return protectedSegment.head;
+            case PROBATION:
+                return protectedSegment.head;
+            default:
+                return null;
+        }
+    }
+
+    Node<K, V> firstNode() {
+        if (window.head != null) {
+            return window.head;
+        }
+        if (probation.head != null) {
+            return probation.head;
+        }
+        return protectedSegment.head;
+    }
+
+    @SuppressWarnings("unchecked")
+    final <T> T[] prepareArray(T[] a) {
+        int size = cache.size();
+        if (a.length < size) {
+            return (T[]) java.lang.reflect.Array.
+                    newInstance(a.getClass().getComponentType(), size);
+        }
+        if (a.length > size) {
+            a[size] = null;
+        }
+        return a;
+    }
+
+    final <T> T[] keysToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.key;
+        }
+        return a;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            WTinyLfuCache.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return WTinyLfuCache.this.remove(key) != null;
+        }
+
+        public Object[] toArray() {
+            return keysToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return keysToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.key);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final <T> T[] valuesToArray(T[] a) {
+        int idx = 0;
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            ((Object[]) a)[idx++] = n.value;
+        }
+        return a;
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            WTinyLfuCache.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public Object[] toArray() {
+            return valuesToArray(new Object[cache.size()]);
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return valuesToArray(prepareArray(a));
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n.value);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return cache.size();
+        }
+
+        public final void clear() {
+            WTinyLfuCache.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> candidate = cache.get(key);
+            return Objects.equals(e, candidate);
+        }
+
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> node = cache.get(key);
+            if (node == null) {
+                return false;
+            }
+            Object value = e.getValue();
+            if (Objects.equals(value, node.value)) {
+                WTinyLfuCache.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public final void forEach(Consumer<? super Entry<K, V>> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int mc = modCount;
+            for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+                action.accept(n);
+            }
+            if (modCount != mc) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Iterators
+
+    abstract class CacheIterator {
+        Node<K, V> next;
+        Node<K, V> current;
+        int expectedModCount;
+
+        final Node<K, V> nextNode() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = node;
+            next = WTinyLfuCache.this.nextNode(node);
+            return node;
+        }
+
+        public CacheIterator() {
+            next = firstNode();
+            current = null;
+            expectedModCount = modCount;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final void remove() {
+            Node<K, V> node = current;
+            if (node == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            current = null;
+            WTinyLfuCache.this.remove(node.key);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends CacheIterator
+            implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends CacheIterator
+            implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends CacheIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link WTinyLfuCache} with the specified capacity and capacity factor.
+     * {@code HashMap} like objects will be created like:<pre>
+     * new HashMap<>((int) (capacity * capacityFactor), 1f);</pre>
+     *
+     * @param capacity       the cache capacity.
+     * @param capacityFactor the capacity factor that affects the capacity of {@code HashMap} like objects.
+     * @throws IllegalArgumentException if the capacity or capacity factor is less than one.
+     */
+    public WTinyLfuCache(int capacity, float capacityFactor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (capacityFactor < 1f) {
+            throw new IllegalArgumentException("Illegal capacity factor: " + capacityFactor);
+        }
+        this.capacity = capacity;
+        windowCapacity = Math.max(1, (int) (capacity * WINDOW_RATIO));
+        protectedCapacity = (int) ((capacity - windowCapacity) * PROTECTED_RATIO);
+        int hashMapCapacity = (int) (capacity * capacityFactor);
+        cache = new HashMap<>(hashMapCapacity, 1f);
+        sketch = new FrequencySketch(capacity);
+        window = new AccessOrderDeque<>();
+        probation = new AccessOrderDeque<>();
+        protectedSegment = new AccessOrderDeque<>();
+    }
+
+    /**
+     * Constructs a {@link WTinyLfuCache} with the specified capacity and the default capacity factor (1.5).
+     *
+     * @param capacity the cache capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public WTinyLfuCache(int capacity) {
+        this(capacity, DEFAULT_CAPACITY_FACTOR);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (Node<K, V> n = firstNode(); n != null; n = nextNode(n)) {
+            if (Objects.equals(value, n.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        Node<K, V> node;
+        if ((node = cache.get(key)) == null) {
+            // misses are counted too, so that the filter can admit the key on the next put
+            sketch.increment(key);
+            if (statsCounter != null) {
+                statsCounter.recordMiss();
+            }
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordHit();
+        }
+        onHit(node);
+        modCount++;
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        if (statsCounter != null) {
+            statsCounter.recordPut();
+        }
+        V oldValue;
+        Node<K, V> node = cache.get(key);
+        if (node == null) {
+            oldValue = null;
+            sketch.increment(key);
+            Node<K, V> newNode = new Node<>(key, value, WINDOW);
+            cache.put(key, newNode);
+            window.addLast(newNode);
+            evict();
+        } else {
+            // key is already added
+            oldValue = node.value;
+            node.value = value;
+            onHit(node);
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        modCount++;
+        return oldValue;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        // unlike get, the lookup of an absent key is not recorded as a miss
+        if (cache.containsKey(key)) {
+            V v = get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        // the same as the miss of get followed by put
+        sketch.increment(key);
+        return put(key, value);
+    }
+
+    public V remove(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        if (statsCounter != null) {
+            statsCounter.recordRemove();
+        }
+        dequeOf(node).remove(node);
+        modCount++;
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    public V discard(Object key) {
+        Node<K, V> node = cache.remove(key);
+        if (node == null) {
+            return null;
+        }
+        dequeOf(node).remove(node);
+        modCount++;
+        return node.value;
+    }
+
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        removalListener = listener;
+    }
+
+    public void setEvictionListener(EvictionListener<K, V> listener) {
+        evictionListener = listener;
+    }
+
+    public StatsCounter statsCounter() {
+        return statsCounter;
+    }
+
+    public void setStatsCounter(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    public void recordStats() {
+        if (statsCounter == null) {
+            statsCounter = new StatsCounter();
+        }
+    }
+
+    public CacheStats stats() {
+        return statsCounter == null ? CacheStats.EMPTY : statsCounter.snapshot();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K k = e.getKey();
+            V v = e.getValue();
+            put(k, v);
+        }
+    }
+
+    public void clear() {
+        List<Node<K, V>> removed = removalListener == null ? null : new ArrayList<>(cache.values());
+        cache.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        modCount++;
+        if (removed != null) {
+            for (Node<K, V> node : removed) {
+                removalListener.onRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ?
+                (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> v;
+        return (v = values) == null ?
+                (values = new Values()) : v;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ?
+                (entrySet = new EntrySet()) : es;
+    }
+}
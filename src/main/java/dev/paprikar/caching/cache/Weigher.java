@@ -0,0 +1,22 @@
+package dev.paprikar.caching.cache;
+
+/**
+ * Calculates the weight of a cache entry, for example the approximate number of bytes of its value.
+ * The weight is calculated when the entry is put, and the cache keeps it until the entry is removed.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author paprikar
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of the entry.
+     *
+     * @param key   the key of the entry.
+     * @param value the value of the entry.
+     * @return the non-negative weight of the entry.
+     */
+    int weigh(K key, V value);
+}
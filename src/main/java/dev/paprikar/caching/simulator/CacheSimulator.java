@@ -0,0 +1,330 @@
+package dev.paprikar.caching.simulator;
+
+import dev.paprikar.caching.cache.Cache;
+import dev.paprikar.caching.cache.CacheDeletionStrategy;
+import dev.paprikar.caching.cache.CacheStats;
+import dev.paprikar.caching.cache.ICache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Replays an access trace against a cache per every pair of a deletion strategy and a capacity
+ * to compare their hit rates offline.
+ *
+ * <p>
+ * Every key of the trace is read from the cache and put into it on a miss.
+ * The trace is read only once: the keys are read by blocks of {@link #BLOCK_SIZE}, and every block
+ * is replayed against all the caches in parallel on a {@link ForkJoinPool}, while the next block is being read.
+ * Each cache is accessed by a single task at a time, so the caches are not thread-safe.
+ *
+ * <p>
+ * Usage:<pre>
+ * CacheSimulator [--format text|binary] [--strategies LRU,LFU,...] [--capacities 1000,10000,...]
+ *                [--parallelism n] trace...
+ * CacheSimulator --convert text-trace binary-trace</pre>
+ *
+ * @author paprikar
+ */
+public class CacheSimulator {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The number of the keys replayed per task.
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The strategies compared when none specified.
+     */
+    static final List<CacheDeletionStrategy> DEFAULT_STRATEGIES = Collections.unmodifiableList(Arrays.asList(
+            CacheDeletionStrategy.LRU, CacheDeletionStrategy.LFU, CacheDeletionStrategy.W_TINY_LFU,
+            CacheDeletionStrategy.ARC, CacheDeletionStrategy.S3_FIFO, CacheDeletionStrategy.CLOCK_PRO,
+            CacheDeletionStrategy.ADAPTIVE));
+
+    /**
+     * The capacities compared when none specified.
+     */
+    static final int[] DEFAULT_CAPACITIES = {1_000, 10_000, 100_000};
+
+    static final String USAGE = "Usage:\n" +
+            "  CacheSimulator [--format text|binary] [--strategies LRU,LFU,...] [--capacities 1000,10000,...]\n" +
+            "                 [--parallelism n] trace...\n" +
+            "  CacheSimulator --convert text-trace binary-trace";
+
+    final List<CacheDeletionStrategy> strategies;
+
+    final int[] capacities;
+
+    final ForkJoinPool pool;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    /**
+     * Replays the current block of keys against a cache.
+     */
+    static final class Replay extends RecursiveAction {
+
+        final CacheDeletionStrategy strategy;
+        final int capacity;
+        final ICache<Long, Long> cache;
+
+        Long[] keys;
+        int count;
+
+        /**
+         * The time spent in the cache operations, in nanoseconds.
+         */
+        long totalTime;
+
+        Replay(CacheDeletionStrategy strategy, int capacity) {
+            this.strategy = strategy;
+            this.capacity = capacity;
+            cache = new Cache<>(capacity, strategy);
+            cache.recordStats();
+        }
+
+        @Override
+        protected void compute() {
+            ICache<Long, Long> cache = this.cache;
+            Long[] keys = this.keys;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Long key = keys[i];
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+            totalTime += System.nanoTime() - start;
+        }
+
+        SimulationResult result() {
+            CacheStats stats = cache.stats();
+            return new SimulationResult(strategy, capacity, stats.hitCount(), stats.missCount(),
+                    stats.evictionCount(), totalTime);
+        }
+    }
+
+    /**
+     * Replays the current block against all the caches.
+     */
+    static final class Round extends RecursiveAction {
+
+        final List<Replay> replays;
+
+        Round(List<Replay> replays) {
+            this.replays = replays;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(replays);
+        }
+    }
+
+    /**
+     * Reads the next block and boxes the keys once for all the caches.
+     */
+    static int readBlock(TraceReader reader, long[] buffer, Long[] keys) throws IOException {
+        int count = reader.read(buffer);
+        for (int i = 0; i < count; i++) {
+            keys[i] = buffer[i];
+        }
+        return count;
+    }
+
+    static List<CacheDeletionStrategy> parseStrategies(String value) {
+        List<CacheDeletionStrategy> strategies = new ArrayList<>();
+        for (String name : value.split(",")) {
+            strategies.add(CacheDeletionStrategy.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return strategies;
+    }
+
+    static int[] parseCapacities(String value) {
+        String[] names = value.split(",");
+        int[] capacities = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            capacities[i] = Integer.parseInt(names[i].trim());
+        }
+        return capacities;
+    }
+
+    static String requireValue(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link CacheSimulator} comparing every strategy with every capacity.
+     *
+     * @param strategies the deletion strategies.
+     * @param capacities the cache capacities.
+     * @param pool       the pool running the replays.
+     * @throws IllegalArgumentException if there are no strategies or capacities, or a capacity is less than one.
+     */
+    public CacheSimulator(Collection<CacheDeletionStrategy> strategies, int[] capacities, ForkJoinPool pool) {
+        if (strategies.isEmpty() || capacities.length == 0) {
+            throw new IllegalArgumentException("No strategies or capacities to compare");
+        }
+        for (int capacity : capacities) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Illegal capacity: " + capacity);
+            }
+        }
+        this.strategies = new ArrayList<>(strategies);
+        this.capacities = capacities.clone();
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Constructs a {@link CacheSimulator} running the replays on the common pool.
+     *
+     * @param strategies the deletion strategies.
+     * @param capacities the cache capacities.
+     * @throws IllegalArgumentException if there are no strategies or capacities, or a capacity is less than one.
+     */
+    public CacheSimulator(Collection<CacheDeletionStrategy> strategies, int[] capacities) {
+        this(strategies, capacities, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replays the trace against new caches.
+     *
+     * @param reader the reader of the trace.
+     * @return the results ordered by strategy and then by capacity, in the order specified in constructor.
+     * @throws IOException if the trace cannot be read.
+     */
+    public List<SimulationResult> run(TraceReader reader) throws IOException {
+        List<Replay> replays = new ArrayList<>(strategies.size() * capacities.length);
+        for (CacheDeletionStrategy strategy : strategies) {
+            for (int capacity : capacities) {
+                replays.add(new Replay(strategy, capacity));
+            }
+        }
+        long[] buffer = new long[BLOCK_SIZE];
+        Long[] current = new Long[BLOCK_SIZE];
+        Long[] next = new Long[BLOCK_SIZE];
+        int count = readBlock(reader, buffer, current);
+        while (count > 0) {
+            for (Replay replay : replays) {
+                replay.reinitialize();
+                replay.keys = current;
+                replay.count = count;
+            }
+            ForkJoinTask<Void> round = pool.submit(new Round(replays));
+            int nextCount;
+            try {
+                nextCount = readBlock(reader, buffer, next);
+            } finally {
+                round.join();
+            }
+            Long[] keys = current;
+            current = next;
+            next = keys;
+            count = nextCount;
+        }
+        List<SimulationResult> results = new ArrayList<>(replays.size());
+        for (Replay replay : replays) {
+            results.add(replay.result());
+        }
+        return results;
+    }
+
+    /**
+     * Formats the results as a table ordered by capacity and then by hit rate,
+     * the best strategy for every capacity going first.
+     *
+     * @param results the results.
+     * @return the table.
+     */
+    public static String format(List<SimulationResult> results) {
+        List<SimulationResult> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingInt(SimulationResult::capacity)
+                .thenComparing(Comparator.comparingDouble(SimulationResult::hitRate).reversed()));
+        StringBuilder sb = new StringBuilder(String.format("%-12s %12s %9s %14s %14s %14s %14s%n",
+                "strategy", "capacity", "hit rate", "hits", "misses", "evictions", "requests/s"));
+        for (SimulationResult r : sorted) {
+            sb.append(String.format("%-12s %12d %8.2f%% %14d %14d %14d %14.0f%n",
+                    r.strategy(), r.capacity(), r.hitRate() * 100, r.hitCount(), r.missCount(),
+                    r.evictionCount(), r.throughput()));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        TraceFormat format = null;
+        List<CacheDeletionStrategy> strategies = DEFAULT_STRATEGIES;
+        int[] capacities = DEFAULT_CAPACITIES;
+        int parallelism = 0;
+        List<Path> traces = new ArrayList<>();
+        try {
+            if (args.length > 0 && args[0].equals("--convert")) {
+                if (args.length != 3) {
+                    throw new IllegalArgumentException("Expected the text and the binary traces");
+                }
+                try (TraceReader reader = new TraceReader(Paths.get(args[1]), TraceFormat.TEXT);
+                     TraceWriter writer = new TraceWriter(Paths.get(args[2]))) {
+                    writer.writeAll(reader);
+                }
+                return;
+            }
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format":
+                        format = TraceFormat.valueOf(requireValue(args, ++i).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--strategies":
+                        strategies = parseStrategies(requireValue(args, ++i));
+                        break;
+                    case "--capacities":
+                        capacities = parseCapacities(requireValue(args, ++i));
+                        break;
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(requireValue(args, ++i));
+                        break;
+                    default:
+                        traces.add(Paths.get(args[i]));
+                }
+            }
+            if (traces.isEmpty()) {
+                throw new IllegalArgumentException("No traces specified");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+        try {
+            CacheSimulator simulator = new CacheSimulator(strategies, capacities, pool);
+            for (Path trace : traces) {
+                TraceFormat traceFormat = format != null ? format : TraceReader.detectFormat(trace);
+                List<SimulationResult> results;
+                try (TraceReader reader = new TraceReader(trace, traceFormat)) {
+                    results = simulator.run(reader);
+                }
+                System.out.println(trace + " (" + results.get(0).requestCount() + " requests)");
+                System.out.println(format(results));
+            }
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+}
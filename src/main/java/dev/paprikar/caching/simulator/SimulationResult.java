@@ -0,0 +1,102 @@
+package dev.paprikar.caching.simulator;
+
+import dev.paprikar.caching.cache.CacheDeletionStrategy;
+
+/**
+ * The result of replaying a trace against a cache with one deletion strategy and capacity
+ * (see {@link CacheSimulator}).
+ *
+ * @author paprikar
+ */
+public final class SimulationResult {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    final CacheDeletionStrategy strategy;
+
+    final int capacity;
+
+    final long hitCount;
+
+    final long missCount;
+
+    final long evictionCount;
+
+    /**
+     * The time spent in the cache operations, in nanoseconds.
+     */
+    final long totalTime;
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    SimulationResult(CacheDeletionStrategy strategy, int capacity, long hitCount, long missCount,
+                     long evictionCount, long totalTime) {
+        this.strategy = strategy;
+        this.capacity = capacity;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.totalTime = totalTime;
+    }
+
+    public CacheDeletionStrategy strategy() {
+        return strategy;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the ratio of the hits to the requests, or {@code 1.0} if there were no requests.
+     *
+     * @return the hit rate.
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long totalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Returns the number of the requests per second, each request being a read and a write on a miss.
+     *
+     * @return the throughput, or {@code 0.0} if no time was spent.
+     */
+    public double throughput() {
+        return totalTime == 0 ? 0.0 : requestCount() * 1e9 / totalTime;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationResult{" +
+                "strategy=" + strategy +
+                ", capacity=" + capacity +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", totalTime=" + totalTime +
+                '}';
+    }
+}
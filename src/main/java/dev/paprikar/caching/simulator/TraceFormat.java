@@ -0,0 +1,19 @@
+package dev.paprikar.caching.simulator;
+
+/**
+ * The formats of the access trace files read by {@link TraceReader}.
+ *
+ * @author paprikar
+ */
+public enum TraceFormat {
+    /**
+     * A key per line. A line of at most 18 decimal digits with an optional minus sign is the key itself,
+     * any other line is replaced by its 64-bit FNV-1a hash. Empty lines are skipped.
+     */
+    TEXT,
+    /**
+     * A header ({@code int} magic, {@code int} version) followed by the keys as big-endian {@code long}s
+     * (see {@link TraceWriter}).
+     */
+    BINARY
+}
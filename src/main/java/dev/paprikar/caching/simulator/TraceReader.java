@@ -0,0 +1,222 @@
+package dev.paprikar.caching.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the keys of an access trace file in blocks (see {@link TraceFormat}).
+ *
+ * <p>
+ * The file is mapped into memory by regions of at most {@link #REGION_SIZE} bytes, one region at a time,
+ * so a trace of any size is streamed without copying it into the heap. A text line is never split between
+ * regions: the next region is mapped from the beginning of the line.
+ *
+ * @author paprikar
+ */
+public class TraceReader implements Closeable {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The maximum number of bytes mapped at once.
+     */
+    static final int REGION_SIZE = 1 << 30;
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    final FileChannel channel;
+
+    final TraceFormat format;
+
+    /**
+     * The size of the file.
+     */
+    final long size;
+
+    /**
+     * The currently mapped region.
+     */
+    MappedByteBuffer buffer;
+
+    /**
+     * The position of the mapped region in the file.
+     */
+    long regionStart;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    void map(long position) throws IOException {
+        long length = Math.min(REGION_SIZE, size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        regionStart = position;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the bytes.
+     */
+    static long hash(ByteBuffer buffer, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= buffer.get(i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the key of a non-empty text line.
+     */
+    static long parseKey(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int digits = end - i;
+        if (digits < 1 || digits > 18) {
+            // longer numbers may overflow, so they are hashed as any other line
+            return hash(buffer, start, end);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return hash(buffer, start, end);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    int readBinary(long[] keys) throws IOException {
+        int count = 0;
+        while (count < keys.length) {
+            if (buffer.remaining() < Long.BYTES) {
+                long position = regionStart + buffer.position();
+                if (position == size) {
+                    break;
+                }
+                if (size - position < Long.BYTES) {
+                    throw new IOException("Truncated trace: " + (size - position) + " trailing bytes");
+                }
+                map(position);
+            }
+            keys[count++] = buffer.getLong();
+        }
+        return count;
+    }
+
+    int readText(long[] keys) throws IOException {
+        int count = 0;
+        while (count < keys.length) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit) {
+                if (regionStart + limit < size) {
+                    // the line continues in the next region
+                    if (start == 0) {
+                        throw new IOException("Line is longer than " + REGION_SIZE + " bytes at " + regionStart);
+                    }
+                    map(regionStart + start);
+                    continue;
+                }
+                if (start == limit) {
+                    break;
+                }
+            }
+            buffer.position(end < limit ? end + 1 : end);
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end > start) {
+                keys[count++] = parseKey(buffer, start, end);
+            }
+        }
+        return count;
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Opens the trace file for reading.
+     *
+     * @param file   the trace file.
+     * @param format the format of the file.
+     * @throws IOException if the file cannot be opened, or it is not a binary trace of a supported version.
+     */
+    public TraceReader(Path file, TraceFormat format) throws IOException {
+        this.format = format;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            map(0);
+            if (format == TraceFormat.BINARY) {
+                if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != TraceWriter.MAGIC) {
+                    throw new IOException("Not a binary trace: " + file);
+                }
+                int version = buffer.getInt();
+                if (version != TraceWriter.VERSION) {
+                    throw new IOException("Unsupported trace version: " + version);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the format of the file, {@link TraceFormat#BINARY} if it starts with the binary trace magic,
+     * or {@link TraceFormat#TEXT} otherwise.
+     *
+     * @param file the trace file.
+     * @return the format of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static TraceFormat detectFormat(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // reads until the header is full or the file ends
+            }
+            return !header.hasRemaining() && header.getInt(0) == TraceWriter.MAGIC
+                    ? TraceFormat.BINARY : TraceFormat.TEXT;
+        }
+    }
+
+    public TraceFormat format() {
+        return format;
+    }
+
+    /**
+     * Reads the next keys of the trace into the array.
+     *
+     * @param keys the array to fill.
+     * @return the number of the keys read, less than the length of the array only at the end of the trace,
+     * or {@code -1} if the end has already been reached.
+     * @throws IOException if the file cannot be read, or a binary trace is truncated.
+     */
+    public int read(long[] keys) throws IOException {
+        int count = format == TraceFormat.BINARY ? readBinary(keys) : readText(keys);
+        return count == 0 && keys.length > 0 ? -1 : count;
+    }
+
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+}
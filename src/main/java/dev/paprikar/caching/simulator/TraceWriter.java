@@ -0,0 +1,73 @@
+package dev.paprikar.caching.simulator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the keys to a binary access trace file (see {@link TraceFormat#BINARY}).
+ * The format is:<pre>
+ * int magic, int version, long key until the end of the file</pre>
+ *
+ * @author paprikar
+ */
+public class TraceWriter implements Closeable {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    static final int MAGIC = 0x43545243;
+
+    static final int VERSION = 1;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    final DataOutputStream out;
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Creates or truncates the file and writes the header.
+     *
+     * @param file the trace file.
+     * @throws IOException if the file cannot be written.
+     */
+    public TraceWriter(Path file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    public void write(long key) throws IOException {
+        out.writeLong(key);
+    }
+
+    /**
+     * Writes all the keys of the reader, for example to convert a text trace to the binary format.
+     *
+     * @param reader the reader of a trace.
+     * @throws IOException if the trace cannot be read or written.
+     */
+    public void writeAll(TraceReader reader) throws IOException {
+        long[] keys = new long[BUFFER_SIZE];
+        int count;
+        while ((count = reader.read(keys)) >= 0) {
+            for (int i = 0; i < count; i++) {
+                out.writeLong(keys[i]);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+}
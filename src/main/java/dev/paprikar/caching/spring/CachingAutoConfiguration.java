@@ -0,0 +1,29 @@
+package dev.paprikar.caching.spring;
+
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers a {@link SpringCacheManager} configured by the {@code caching.*} properties
+ * unless the application defines its own {@link CacheManager}.
+ * It goes before the Spring Boot cache auto-configuration, which otherwise falls back
+ * to the unbounded {@code ConcurrentMapCacheManager}.
+ *
+ * @author paprikar
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnMissingBean(CacheManager.class)
+@AutoConfigureBefore(CacheAutoConfiguration.class)
+@EnableConfigurationProperties(CachingProperties.class)
+public class CachingAutoConfiguration {
+
+    @Bean
+    public SpringCacheManager cacheManager(CachingProperties properties) {
+        return new SpringCacheManager(properties);
+    }
+}
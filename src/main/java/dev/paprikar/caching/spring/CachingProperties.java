@@ -0,0 +1,133 @@
+package dev.paprikar.caching.spring;
+
+import dev.paprikar.caching.cache.CacheConcurrencyMode;
+import dev.paprikar.caching.cache.CacheDeletionStrategy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The configuration of the caches created by {@link SpringCacheManager}, bound to the {@code caching.*} properties:
+ * <pre>
+ * caching.defaults.capacity=1000
+ * caching.defaults.strategy=LRU
+ * caching.caches.users.capacity=10000
+ * caching.caches.users.strategy=LFU
+ * caching.caches.sessions.concurrency-mode=BUFFERED</pre>
+ * The unset settings of a named cache are taken from {@link #getDefaults()}.
+ *
+ * @author paprikar
+ */
+@ConfigurationProperties(prefix = "caching")
+public class CachingProperties {
+
+    /**
+     * The settings of a cache.
+     */
+    public static class Spec {
+
+        /**
+         * The cache capacity.
+         */
+        private Integer capacity;
+
+        /**
+         * The capacity factor that affects the capacity of {@code HashMap} like objects.
+         */
+        private Float capacityFactor;
+
+        /**
+         * The deletion strategy.
+         */
+        private CacheDeletionStrategy strategy;
+
+        /**
+         * The concurrency mode, {@link CacheConcurrencyMode#NONE} guards the whole cache by a single lock.
+         */
+        private CacheConcurrencyMode concurrencyMode;
+
+        public Integer getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(Integer capacity) {
+            this.capacity = capacity;
+        }
+
+        public Float getCapacityFactor() {
+            return capacityFactor;
+        }
+
+        public void setCapacityFactor(Float capacityFactor) {
+            this.capacityFactor = capacityFactor;
+        }
+
+        public CacheDeletionStrategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(CacheDeletionStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public CacheConcurrencyMode getConcurrencyMode() {
+            return concurrencyMode;
+        }
+
+        public void setConcurrencyMode(CacheConcurrencyMode concurrencyMode) {
+            this.concurrencyMode = concurrencyMode;
+        }
+    }
+
+    /**
+     * The settings used by the caches where they are not set.
+     */
+    private final Spec defaults = new Spec();
+
+    /**
+     * The settings of the named caches, which are created on startup.
+     */
+    private final Map<String, Spec> caches = new LinkedHashMap<>();
+
+    /**
+     * Whether the caches missing in {@link #caches} are created with the default settings on the first request.
+     */
+    private boolean dynamic = true;
+
+    /**
+     * Whether the {@code null} values are cached.
+     */
+    private boolean allowNullValues = true;
+
+    public CachingProperties() {
+        defaults.setCapacity(1000);
+        defaults.setCapacityFactor(1.5f);
+        defaults.setStrategy(CacheDeletionStrategy.LRU);
+        defaults.setConcurrencyMode(CacheConcurrencyMode.STRIPED);
+    }
+
+    public Spec getDefaults() {
+        return defaults;
+    }
+
+    public Map<String, Spec> getCaches() {
+        return caches;
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    public void setDynamic(boolean dynamic) {
+        this.dynamic = dynamic;
+    }
+
+    public boolean isAllowNullValues() {
+        return allowNullValues;
+    }
+
+    public void setAllowNullValues(boolean allowNullValues) {
+        this.allowNullValues = allowNullValues;
+    }
+}
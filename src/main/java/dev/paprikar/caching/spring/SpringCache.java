@@ -0,0 +1,118 @@
+package dev.paprikar.caching.spring;
+
+import dev.paprikar.caching.cache.CacheLoader;
+import dev.paprikar.caching.cache.ICache;
+import dev.paprikar.caching.cache.LoadingCache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * This implementation adapts a thread-safe {@link ICache} to the Spring {@link org.springframework.cache.Cache}.
+ *
+ * <p>
+ * The {@code null} values are stored as {@link org.springframework.cache.support.NullValue} if they are allowed.
+ * {@link #get(Object, Callable)} loads the value through a {@link LoadingCache},
+ * so at most one load of a key is in flight and the other threads missing the key wait for its result.
+ * A failed load is not cached, and its exception is thrown to all of the waiting threads
+ * wrapped in {@link ValueRetrievalException}.
+ *
+ * @author paprikar
+ */
+public class SpringCache extends AbstractValueAdaptingCache {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    /**
+     * The loader of the underlying {@link LoadingCache}, never used as the loads always specify their own loader.
+     */
+    static final CacheLoader<Object, Object> NO_LOADER = key -> {
+        throw new UnsupportedOperationException("No default loader");
+    };
+
+    final String name;
+
+    final ICache<Object, Object> cache;
+
+    final LoadingCache<Object, Object> loadingCache;
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link SpringCache} over the specified cache.
+     *
+     * @param name            the name of the cache.
+     * @param cache           the thread-safe cache holding the entries.
+     * @param allowNullValues whether the {@code null} values are cached.
+     */
+    public SpringCache(String name, ICache<Object, Object> cache, boolean allowNullValues) {
+        super(allowNullValues);
+        this.name = Objects.requireNonNull(name);
+        this.cache = Objects.requireNonNull(cache);
+        loadingCache = new LoadingCache<>(cache, NO_LOADER);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ICache<Object, Object> getNativeCache() {
+        return cache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        return cache.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return (T) fromStoreValue(loadingCache.get(key, k -> {
+            T value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(k, valueLoader, e);
+            }
+            return toStoreValue(value);
+        }));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        cache.put(key, toStoreValue(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return toValueWrapper(cache.putIfAbsent(key, toStoreValue(value)));
+    }
+
+    @Override
+    public void evict(Object key) {
+        cache.remove(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return cache.remove(key) != null;
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean notEmpty = !cache.isEmpty();
+        cache.clear();
+        return notEmpty;
+    }
+}
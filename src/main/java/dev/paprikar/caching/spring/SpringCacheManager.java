@@ -0,0 +1,88 @@
+package dev.paprikar.caching.spring;
+
+import dev.paprikar.caching.cache.Cache;
+import dev.paprikar.caching.cache.CacheConcurrencyMode;
+import dev.paprikar.caching.cache.CacheDeletionStrategy;
+import dev.paprikar.caching.cache.ICache;
+import dev.paprikar.caching.cache.StripedCache;
+import org.springframework.cache.support.AbstractCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This implementation creates a {@link SpringCache} over a {@link Cache} per every cache name
+ * with the settings specified in {@link CachingProperties}.
+ *
+ * <p>
+ * The named caches are created on initialization. If {@link CachingProperties#isDynamic()} is set,
+ * the other caches are created with the default settings on the first request,
+ * otherwise they are missing. The Spring caches are always shared between threads,
+ * so the caches in the {@link CacheConcurrencyMode#NONE} mode are guarded by a single lock
+ * (a {@link StripedCache} with a single segment).
+ *
+ * @author paprikar
+ */
+public class SpringCacheManager extends AbstractCacheManager {
+
+    /* ---------------------------------------------------------------- */
+    // Fields
+
+    final CachingProperties properties;
+
+    /* ---------------------------------------------------------------- */
+    // Internal utilities
+
+    static <T> T orDefault(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    SpringCache createCache(String name, CachingProperties.Spec spec) {
+        CachingProperties.Spec defaults = properties.getDefaults();
+        int capacity = orDefault(spec.getCapacity(), defaults.getCapacity());
+        float capacityFactor = orDefault(spec.getCapacityFactor(), defaults.getCapacityFactor());
+        CacheDeletionStrategy strategy = orDefault(spec.getStrategy(), defaults.getStrategy());
+        CacheConcurrencyMode concurrencyMode = orDefault(spec.getConcurrencyMode(), defaults.getConcurrencyMode());
+        ICache<Object, Object> cache;
+        if (concurrencyMode == CacheConcurrencyMode.NONE) {
+            cache = new StripedCache<>(capacity, capacityFactor, strategy, 1);
+        } else {
+            cache = new Cache<>(capacity, capacityFactor, strategy, concurrencyMode);
+        }
+        return new SpringCache(name, cache, properties.isAllowNullValues());
+    }
+
+    /* ---------------------------------------------------------------- */
+    // Public operations
+
+    /**
+     * Constructs a {@link SpringCacheManager} with the specified settings.
+     * The caches are created by {@link #initializeCaches()}, which is called by the Spring container.
+     *
+     * @param properties the settings of the caches.
+     */
+    public SpringCacheManager(CachingProperties properties) {
+        this.properties = Objects.requireNonNull(properties);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the settings of a cache are illegal.
+     */
+    @Override
+    protected List<SpringCache> loadCaches() {
+        List<SpringCache> caches = new ArrayList<>(properties.getCaches().size());
+        for (Map.Entry<String, CachingProperties.Spec> e : properties.getCaches().entrySet()) {
+            caches.add(createCache(e.getKey(), e.getValue()));
+        }
+        return caches;
+    }
+
+    @Override
+    protected SpringCache getMissingCache(String name) {
+        return properties.isDynamic() ? createCache(name, properties.getDefaults()) : null;
+    }
+}
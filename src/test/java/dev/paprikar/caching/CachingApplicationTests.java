@@ -1,20 +1,87 @@
 package dev.paprikar.caching;
 
+import dev.paprikar.caching.cache.AdaptiveCache;
+import dev.paprikar.caching.cache.ArcCache;
+import dev.paprikar.caching.cache.ArrayLfuCache;
+import dev.paprikar.caching.cache.AsyncCache;
 import dev.paprikar.caching.cache.Cache;
+import dev.paprikar.caching.cache.CacheConcurrencyMode;
 import dev.paprikar.caching.cache.CacheDeletionStrategy;
+import dev.paprikar.caching.cache.CacheLoader;
+import dev.paprikar.caching.cache.CacheMBeans;
+import dev.paprikar.caching.cache.CacheSnapshots;
+import dev.paprikar.caching.cache.CacheStats;
+import dev.paprikar.caching.cache.ClockProCache;
+import dev.paprikar.caching.cache.ExpiringCache;
+import dev.paprikar.caching.cache.ICache;
+import dev.paprikar.caching.cache.ILongCache;
+import dev.paprikar.caching.cache.IntrusiveLruCache;
+import dev.paprikar.caching.cache.LfuAgingPolicy;
+import dev.paprikar.caching.cache.LfuCache;
+import dev.paprikar.caching.cache.LoadingCache;
+import dev.paprikar.caching.cache.LruCache;
+import dev.paprikar.caching.cache.OversizePolicy;
+import dev.paprikar.caching.cache.RemovalCause;
+import dev.paprikar.caching.cache.RemovalListener;
+import dev.paprikar.caching.cache.S3FifoCache;
+import dev.paprikar.caching.cache.Serializer;
+import dev.paprikar.caching.cache.TieredCache;
+import dev.paprikar.caching.cache.WTinyLfuCache;
+import dev.paprikar.caching.simulator.CacheSimulator;
+import dev.paprikar.caching.simulator.SimulationResult;
+import dev.paprikar.caching.simulator.TraceFormat;
+import dev.paprikar.caching.simulator.TraceReader;
+import dev.paprikar.caching.simulator.TraceWriter;
+import dev.paprikar.caching.spring.CachingProperties;
+import dev.paprikar.caching.spring.SpringCacheManager;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class CachingApplicationTests {
 
+    @Autowired
+    CacheManager cacheManager;
+
     @Test
     void testCacheExceptions() {
-        assertThrows(IllegalArgumentException.class, () ->
-                new Cache<>(10, CacheDeletionStrategy.SOME_NEW_STRATEGY)
-        );
         assertThrows(IllegalArgumentException.class, () ->
                 new Cache<>(0, CacheDeletionStrategy.LRU)
         );
@@ -27,6 +94,9 @@ class CachingApplicationTests {
         assertThrows(IllegalArgumentException.class, () ->
                 new Cache<>(-10, CacheDeletionStrategy.LFU)
         );
+        assertThrows(IllegalArgumentException.class, () ->
+                new Cache<>(0, CacheDeletionStrategy.W_TINY_LFU)
+        );
     }
 
     @Test
@@ -45,6 +115,50 @@ class CachingApplicationTests {
         assertEquals(5, cache.remove(4));
     }
 
+    @Test
+    void testCacheIntrusiveLru() {
+        IntrusiveLruCache<Integer, Integer> cache = new IntrusiveLruCache<>(2);
+        assertNull(cache.put(1, 1));
+        assertNull(cache.put(2, 2));
+        assertEquals(1, cache.get(1));
+        assertNull(cache.put(3, 3));
+        assertNull(cache.get(2));
+        assertEquals(3, cache.put(3, 4));
+        assertNull(cache.put(4, 5));
+        assertNull(cache.get(1));
+        assertEquals(4, cache.get(3));
+        assertEquals(5, cache.get(4));
+        assertEquals(Arrays.asList(3, 4), new ArrayList<>(cache.keySet()));
+        assertEquals(5, cache.remove(4));
+        assertNull(cache.remove(4));
+
+        // the eviction order is the same as the one of LruCache
+        LruCache<Integer, Integer> expected = new LruCache<>(64);
+        IntrusiveLruCache<Integer, Integer> actual = new IntrusiveLruCache<>(64, 1.0f);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            Integer key = random.nextInt(192);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.get(key), actual.get(key));
+                    break;
+                case 2:
+                    assertEquals(expected.put(key, i), actual.put(key, i));
+                    break;
+                default:
+                    assertEquals(expected.remove(key), actual.remove(key));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+        Iterator<Integer> it = actual.keySet().iterator();
+        it.next();
+        it.remove();
+        assertEquals(expected.size() - 1, actual.size());
+        actual.get(it.next());
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+
     @Test
     void testCacheLfu() {
         Cache<Integer, Integer> cache = new Cache<>(2, CacheDeletionStrategy.LFU);
@@ -60,5 +174,1201 @@ class CachingApplicationTests {
         assertEquals(5, cache.get(4));
         assertEquals(4, cache.remove(3));
         assertEquals(5, cache.remove(4));
+
+        // removing the only node of a frequency leaves no stale bucket behind
+        LfuCache<Integer, Integer> lfu = new LfuCache<>(3);
+        lfu.put(1, 1);
+        lfu.put(2, 2);
+        lfu.put(3, 3);
+        assertEquals(1, lfu.get(1));
+        assertEquals(1, lfu.remove(1));
+        assertEquals(2, lfu.get(2));
+        assertNull(lfu.put(4, 4));
+        assertEquals(Arrays.asList(3, 4, 2), new ArrayList<>(lfu.keySet()));
+
+        // the iteration continues after a removal through the iterator
+        lfu = new LfuCache<>(10);
+        for (int key = 0; key < 10; key++) {
+            lfu.put(key, key);
+        }
+        assertTrue(lfu.keySet().removeIf(key -> key % 2 == 0));
+        assertEquals(5, lfu.size());
+        assertTrue(lfu.values().removeIf(value -> value < 5));
+        assertEquals(Arrays.asList(5, 7, 9), new ArrayList<>(lfu.keySet()));
+        Iterator<Integer> it = lfu.keySet().iterator();
+        it.next();
+        lfu.remove(9);
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+
+    @Test
+    void testCacheArrayLfu() {
+        ArrayLfuCache<Integer, Integer> cache = new ArrayLfuCache<>(2);
+        assertNull(cache.put(1, 1));
+        assertNull(cache.put(2, 2));
+        assertEquals(1, cache.get(1));
+        assertNull(cache.put(3, 3));
+        assertNull(cache.get(2));
+        assertEquals(3, cache.put(3, 4));
+        assertNull(cache.put(4, 5));
+        assertNull(cache.get(1));
+        assertEquals(4, cache.get(3));
+        assertEquals(5, cache.get(4));
+        assertEquals(4, cache.remove(3));
+        assertEquals(5, cache.remove(4));
+        assertTrue(cache.isEmpty());
+
+        // freed slots are reused, and null keys are supported
+        for (int key = 0; key < 100; key++) {
+            cache.put(key, key);
+            cache.get(key);
+        }
+        assertNull(cache.put(null, -1));
+        assertEquals(-1, cache.get(null));
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey(99));
+        assertEquals(-1, cache.remove(null));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testCacheOffHeap() {
+        assertThrows(IllegalArgumentException.class, () -> Cache.newOffHeapCache(2, CacheDeletionStrategy.LRU, 1024));
+        assertThrows(IllegalArgumentException.class,
+                () -> Cache.newOffHeapCache(2, CacheDeletionStrategy.W_TINY_LFU, 1 << 20));
+
+        ICache<Integer, ByteBuffer> cache = Cache.newOffHeapCache(2, CacheDeletionStrategy.LFU, 8 << 20);
+        ByteBuffer one = ByteBuffer.wrap("one".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache.put(1, one));
+        assertEquals(0, one.position());
+        assertNull(cache.put(2, ByteBuffer.wrap(new byte[1000])));
+        ByteBuffer view = cache.get(1);
+        assertTrue(view.isReadOnly());
+        assertEquals(one, view);
+        assertNull(cache.put(3, ByteBuffer.wrap(new byte[10])));
+        assertNull(cache.get(2));
+        assertEquals(ByteBuffer.wrap(new byte[10]), cache.put(3, ByteBuffer.wrap(new byte[5000])));
+        assertEquals(5000, cache.get(3).remaining());
+        assertEquals(one, cache.remove(1));
+        assertEquals(1, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> cache.put(4, ByteBuffer.allocate((1 << 20) + 1)));
+
+        // the off-heap memory bounds the cache as well as the capacity
+        ICache<Integer, ByteBuffer> bounded = Cache.newOffHeapCache(100, CacheDeletionStrategy.LRU, 1 << 20);
+        for (int key = 0; key < 100; key++) {
+            bounded.put(key, ByteBuffer.allocate(100 * 1024));
+        }
+        assertEquals(8, bounded.size());
+        assertTrue(bounded.containsKey(99));
+        assertFalse(bounded.containsKey(91));
+    }
+
+    @Test
+    void testCacheSnapshot() throws Exception {
+        Path file = Files.createTempFile("cache", ".snapshot");
+        try {
+            Cache<Integer, String> lru = new Cache<>(100, CacheDeletionStrategy.LRU);
+            LfuCache<Integer, String> lfu = new LfuCache<>(100, 1.5f, LfuAgingPolicy.DYNAMIC);
+            for (int i = 0; i < 1000; i++) {
+                int key = ThreadLocalRandom.current().nextInt(300);
+                lru.put(key, "v" + key);
+                lfu.put(key, "v" + key);
+                lru.get(key / 2);
+                lfu.get(key / 2);
+            }
+
+            CacheSnapshots.save(lru, file, Serializer.INTEGER, Serializer.STRING);
+            Cache<Integer, String> restoredLru = new Cache<>(100, CacheDeletionStrategy.LRU);
+            CacheSnapshots.restore(restoredLru, file, Serializer.INTEGER, Serializer.STRING);
+            assertEquals(new ArrayList<>(lru.keySet()), new ArrayList<>(restoredLru.keySet()));
+
+            CacheSnapshots.save(lfu, file, Serializer.INTEGER, Serializer.STRING);
+            LfuCache<Integer, String> restoredLfu = new LfuCache<>(100, 1.5f, LfuAgingPolicy.DYNAMIC);
+            CacheSnapshots.restore(restoredLfu, file, Serializer.INTEGER, Serializer.STRING);
+            assertEquals(new ArrayList<>(lfu.entrySet()), new ArrayList<>(restoredLfu.entrySet()));
+            List<Integer> keys = new ArrayList<>(restoredLfu.keySet());
+
+            // the restored caches make the same eviction decisions
+            for (int i = 0; i < 1000; i++) {
+                int key = ThreadLocalRandom.current().nextInt(300);
+                assertEquals(lru.put(key, "w"), restoredLru.put(key, "w"));
+                assertEquals(lfu.put(key, "w"), restoredLfu.put(key, "w"));
+                assertEquals(lru.get(key / 3), restoredLru.get(key / 3));
+                assertEquals(lfu.get(key / 3), restoredLfu.get(key / 3));
+            }
+            assertEquals(new ArrayList<>(lru.keySet()), new ArrayList<>(restoredLru.keySet()));
+            assertEquals(new ArrayList<>(lfu.keySet()), new ArrayList<>(restoredLfu.keySet()));
+
+            // a smaller cache keeps the last entries of the eviction order
+            LfuCache<Integer, String> smaller = new LfuCache<>(10);
+            CacheSnapshots.restore(smaller, file, Serializer.INTEGER, Serializer.STRING);
+            assertEquals(keys.subList(keys.size() - 10, keys.size()), new ArrayList<>(smaller.keySet()));
+
+            assertThrows(IOException.class, () ->
+                    CacheSnapshots.restore(new LruCache<Integer, String>(10), file, Serializer.INTEGER, Serializer.STRING)
+            );
+            assertThrows(IllegalArgumentException.class, () ->
+                    CacheSnapshots.save(new Cache<Integer, String>(10, CacheDeletionStrategy.W_TINY_LFU), file,
+                            Serializer.INTEGER, Serializer.STRING)
+            );
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testCacheWeighted() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new Cache<Integer, String>(10, 1.5f, CacheDeletionStrategy.LRU, 0, (k, v) -> v.length(),
+                        OversizePolicy.REJECT)
+        );
+        assertThrows(IllegalArgumentException.class, () ->
+                new Cache<Integer, String>(10, 1.5f, CacheDeletionStrategy.W_TINY_LFU, 10, (k, v) -> v.length(),
+                        OversizePolicy.REJECT)
+        );
+
+        for (CacheDeletionStrategy strategy : new CacheDeletionStrategy[]{
+                CacheDeletionStrategy.LRU, CacheDeletionStrategy.LFU}) {
+            Cache<Integer, String> cache = new Cache<>(100, 1.5f, strategy, 10, (k, v) -> v.length(),
+                    OversizePolicy.REJECT);
+            assertNull(cache.put(1, "aaaa"));
+            assertNull(cache.put(2, "bbbb"));
+            assertNull(cache.put(3, "cc"));
+            assertEquals(3, cache.size());
+            // the eldest entry is evicted to fit the new one
+            assertNull(cache.put(4, "dd"));
+            assertFalse(cache.containsKey(1));
+            // the replacement is reweighed
+            assertEquals("cc", cache.put(3, "c"));
+            assertNull(cache.put(5, "e"));
+            assertEquals(4, cache.size());
+            // the oversized entry is rejected and the previous mapping is removed
+            assertEquals("e", cache.put(5, "eeeeeeeeeee"));
+            assertFalse(cache.containsKey(5));
+            assertEquals(3, cache.size());
+        }
+
+        Cache<Integer, String> admitting = new Cache<>(100, 1.5f, CacheDeletionStrategy.LFU, 10,
+                (k, v) -> v.length(), OversizePolicy.ADMIT);
+        admitting.put(1, "a");
+        admitting.put(2, "bbbbbbbbbbbb");
+        assertEquals(1, admitting.size());
+        assertTrue(admitting.containsKey(2));
+        admitting.put(3, "c");
+        assertEquals(1, admitting.size());
+        assertTrue(admitting.containsKey(3));
+
+        // the weights are kept as they were put, even if the weigher changes its mind
+        int[] scale = {1};
+        List<ICache<Integer, String>> engines = Arrays.asList(
+                new LruCache<>(100, 1.5f, 10, (k, v) -> v.length() * scale[0], OversizePolicy.REJECT),
+                new LfuCache<>(100, 1.5f, 10, (k, v) -> v.length() * scale[0], OversizePolicy.REJECT));
+        for (ICache<Integer, String> engine : engines) {
+            scale[0] = 1;
+            engine.put(1, "aaa");
+            engine.put(2, "bbb");
+            engine.put(3, "ccc");
+            scale[0] = 2;
+            assertEquals("aaa", engine.remove(1));
+            assertEquals("bbb", engine.put(2, "b"));
+            // 3 + 2 + 6 exceeds the maximum weight, so the entry of 3 is evicted
+            engine.put(4, "ddd");
+            assertEquals(new HashSet<>(Arrays.asList(2, 4)), new HashSet<>(engine.keySet()));
+            long weight = engine instanceof LruCache ?
+                    ((LruCache<Integer, String>) engine).weight() : ((LfuCache<Integer, String>) engine).weight();
+            assertEquals(8, weight);
+        }
+    }
+
+    @Test
+    void testCacheExpiring() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new Cache<Integer, String>(10, CacheDeletionStrategy.LRU, -1, 0, TimeUnit.SECONDS)
+        );
+
+        long[] time = {0};
+        for (CacheDeletionStrategy strategy : new CacheDeletionStrategy[]{
+                CacheDeletionStrategy.LRU, CacheDeletionStrategy.LFU, CacheDeletionStrategy.W_TINY_LFU}) {
+            ICache<Integer, String> engine = strategy == CacheDeletionStrategy.LRU
+                    ? new LruCache<>(10, 1.5f) : strategy == CacheDeletionStrategy.LFU
+                    ? new LfuCache<>(10, 1.5f) : new WTinyLfuCache<>(10, 1.5f);
+            ExpiringCache<Integer, String> cache = new ExpiringCache<>(engine, 10, 3, TimeUnit.SECONDS,
+                    () -> time[0]);
+            cache.put(1, "1");
+            cache.put(2, "2");
+            cache.put(3, "3", 1, TimeUnit.SECONDS);
+            time[0] += TimeUnit.MILLISECONDS.toNanos(1500);
+            // the per-entry duration has passed
+            assertNull(cache.get(3));
+            assertEquals("1", cache.get(1));
+            time[0] += TimeUnit.MILLISECONDS.toNanos(2000);
+            // expired after access, the read one is still alive
+            assertFalse(cache.containsKey(2));
+            assertEquals("1", cache.get(1));
+            assertEquals(1, cache.size());
+            for (int i = 0; i < 3; i++) {
+                time[0] += TimeUnit.SECONDS.toNanos(2);
+                assertEquals("1", cache.get(1));
+            }
+            time[0] += TimeUnit.SECONDS.toNanos(5);
+            // expired after write despite the reads
+            assertNull(cache.get(1));
+            // the expired entries are reclaimed without being accessed
+            for (int i = 0; i < 5; i++) {
+                cache.put(i, String.valueOf(i));
+            }
+            time[0] += TimeUnit.SECONDS.toNanos(5);
+            cache.cleanUp();
+            assertEquals(0, engine.size());
+            assertTrue(cache.isEmpty());
+        }
+
+        Cache<Integer, String> cache = new Cache<>(2, CacheDeletionStrategy.LFU, 1, 0, TimeUnit.HOURS);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        assertEquals(2, cache.size());
+        assertEquals("3", cache.get(3));
+
+        // the misses reach the engine, so the admission filter sees the key read before its put
+        Cache<Integer, String> tinyLfu = new Cache<>(100, CacheDeletionStrategy.W_TINY_LFU, 1, 0, TimeUnit.HOURS);
+        for (int key = 0; key < 100; key++) {
+            tinyLfu.put(key, String.valueOf(key));
+        }
+        for (int key = 0; key < 100; key++) {
+            assertEquals(String.valueOf(key), tinyLfu.get(key));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNull(tinyLfu.get(1000));
+        }
+        tinyLfu.put(1000, "1000");
+        // moves the key out of the admission window
+        tinyLfu.put(2000, "2000");
+        assertEquals("1000", tinyLfu.get(1000));
+        assertEquals(100, tinyLfu.size());
+    }
+
+    @Test
+    void testCacheLoading() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<Integer, String> cache = new LoadingCache<>(100, CacheDeletionStrategy.LRU,
+                CacheConcurrencyMode.STRIPED, key -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await();
+            return String.valueOf(key);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> cache.getOrLoad(1)));
+            }
+            started.await();
+            // the other threads join the load in flight
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("1", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals("1", cache.getOrLoad(1));
+        assertEquals(1, loads.get());
+
+        // the failures are not cached
+        AtomicInteger failures = new AtomicInteger();
+        CacheLoader<Integer, String> failing = key -> {
+            if (failures.incrementAndGet() == 1) {
+                throw new IOException("Unavailable");
+            }
+            return "loaded";
+        };
+        CompletionException e = assertThrows(CompletionException.class, () -> cache.get(2, failing));
+        assertTrue(e.getCause() instanceof IOException);
+        assertFalse(cache.containsKey(2));
+        assertEquals("loaded", cache.get(2, failing));
+        assertEquals("loaded", cache.get(2));
+        assertNull(cache.get(3, key -> null));
+        assertFalse(cache.containsKey(3));
+    }
+
+    @Test
+    void testCacheAsync() throws Exception {
+        long[] time = {0};
+        AtomicInteger version = new AtomicInteger();
+        AtomicBoolean blocking = new AtomicBoolean();
+        CountDownLatch slow = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AsyncCache<Integer, String> cache = new AsyncCache<>(100, CacheDeletionStrategy.LRU, key -> {
+                if (key < 0) {
+                    throw new IOException("Unavailable");
+                }
+                if (blocking.get()) {
+                    slow.await();
+                }
+                return key + "-" + version.incrementAndGet();
+            }, executor, 1000, 200, TimeUnit.MILLISECONDS, () -> time[0]);
+
+            CompletableFuture<String> first = cache.get(1);
+            assertSame(first, cache.get(1));
+            assertEquals("1-1", first.get());
+
+            // the stale value is served while it is reloaded in the background
+            time[0] += TimeUnit.SECONDS.toNanos(1);
+            assertEquals("1-1", cache.get(1).get());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!"1-2".equals(cache.getIfPresent(1).get()) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("1-2", cache.get(1).get());
+
+            // the reload exceeding the deadline keeps the stale value
+            assertEquals("0-3", cache.get(0).get());
+            blocking.set(true);
+            time[0] += TimeUnit.SECONDS.toNanos(1);
+            assertEquals("0-3", cache.get(0).get());
+            Thread.sleep(400);
+            assertEquals("0-3", cache.get(0).get());
+            blocking.set(false);
+            slow.countDown();
+
+            // the failed loads are not cached
+            ExecutionException e = assertThrows(ExecutionException.class, () -> cache.get(-1).get());
+            assertTrue(e.getCause() instanceof IOException);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.getIfPresent(-1) != null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNull(cache.getIfPresent(-1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCacheBulk() {
+        // a batch ends in the same state as putting the entries one by one
+        LruCache<Integer, Integer> batched = new LruCache<>(10, 1.5f);
+        LruCache<Integer, Integer> sequential = new LruCache<>(10, 1.5f);
+        Map<Integer, Integer> batch = new LinkedHashMap<>();
+        for (int i = 0; i < 25; i++) {
+            batch.put(i * 7 % 30, i);
+        }
+        sequential.put(3, -1);
+        batched.put(3, -1);
+        batched.putAll(batch);
+        batch.forEach(sequential::put);
+        assertEquals(new ArrayList<>(sequential.entrySet()), new ArrayList<>(batched.entrySet()));
+
+        LfuCache<Integer, Integer> lfu = new LfuCache<>(10, 1.5f);
+        lfu.put(100, 100);
+        lfu.get(100);
+        lfu.putAll(batch);
+        assertEquals(10, lfu.size());
+        // the frequently used entry survives the batch
+        assertEquals(100, lfu.get(100));
+
+        // a batch into a full cache of hot entries keeps the same entries as the puts one by one
+        for (LfuAgingPolicy policy : LfuAgingPolicy.values()) {
+            for (int size : new int[]{2, 5}) {
+                LfuCache<Integer, Integer> batchedLfu = new LfuCache<>(3, 1.5f, policy);
+                LfuCache<Integer, Integer> sequentialLfu = new LfuCache<>(3, 1.5f, policy);
+                Map<Integer, Integer> newKeys = new LinkedHashMap<>();
+                for (int key = 0; key < 3; key++) {
+                    batchedLfu.put(key, key);
+                    batchedLfu.get(key);
+                    sequentialLfu.put(key, key);
+                    sequentialLfu.get(key);
+                }
+                for (int key = 10; key < 10 + size; key++) {
+                    newKeys.put(key, key);
+                }
+                batchedLfu.putAll(newKeys);
+                newKeys.forEach(sequentialLfu::put);
+                assertEquals(new ArrayList<>(sequentialLfu.keySet()), new ArrayList<>(batchedLfu.keySet()),
+                        policy + " " + size);
+                assertTrue(batchedLfu.containsKey(9 + size));
+            }
+        }
+
+        AtomicInteger batches = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(100, CacheDeletionStrategy.LFU,
+                CacheConcurrencyMode.STRIPED, new CacheLoader<Integer, String>() {
+            public String load(Integer key) {
+                return String.valueOf(key);
+            }
+
+            public Map<Integer, String> loadAll(Set<? extends Integer> keys) {
+                batches.incrementAndGet();
+                Map<Integer, String> values = new HashMap<>();
+                for (Integer key : keys) {
+                    if (key % 10 != 0) {
+                        values.put(key, String.valueOf(key));
+                    }
+                }
+                return values;
+            }
+        });
+        cache.put(1, "one");
+        Map<Integer, String> values = cache.getAllOrLoad(Arrays.asList(3, 1, 2, 10, 2));
+        assertEquals(Arrays.asList(3, 1, 2), new ArrayList<>(values.keySet()));
+        assertEquals("one", values.get(1));
+        assertEquals(1, batches.get());
+        assertEquals(values, cache.getAll(Arrays.asList(3, 1, 2, 10)));
+        assertFalse(cache.containsKey(10));
+        cache.getAllOrLoad(Arrays.asList(1, 2, 3));
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    void testCacheStats() throws Exception {
+        Cache<Integer, String> cache = new Cache<>(2, CacheDeletionStrategy.LFU);
+        assertEquals(CacheStats.EMPTY, cache.stats());
+        cache.put(0, "0");
+        cache.recordStats();
+        cache.put(1, "1");
+        cache.put(2, "2");
+        assertEquals("1", cache.get(1));
+        assertNull(cache.get(3));
+        assertEquals("1", cache.remove(1));
+        assertNull(cache.remove(1));
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(0.5, stats.hitRate());
+        assertEquals(2, stats.putCount());
+        assertEquals(1, stats.removeCount());
+        assertEquals(1, stats.evictionCount(RemovalCause.SIZE));
+
+        long[] time = {0};
+        ExpiringCache<Integer, String> expiring = new ExpiringCache<>(new LruCache<>(10, 1.5f), 1, 0,
+                TimeUnit.SECONDS, () -> time[0]);
+        expiring.recordStats();
+        expiring.put(1, "1");
+        expiring.put(2, "2");
+        time[0] += TimeUnit.SECONDS.toNanos(2);
+        assertNull(expiring.get(1));
+        assertNull(expiring.remove(2));
+        stats = expiring.stats();
+        assertEquals(0, stats.removeCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(2, stats.evictionCount(RemovalCause.EXPIRED));
+
+        LoadingCache<Integer, String> loading = new LoadingCache<>(10, CacheDeletionStrategy.LRU,
+                CacheConcurrencyMode.STRIPED, key -> {
+            if (key < 0) {
+                throw new IOException("Unavailable");
+            }
+            return String.valueOf(key);
+        });
+        loading.recordStats();
+        loading.getOrLoad(1);
+        loading.getOrLoad(1);
+        assertThrows(CompletionException.class, () -> loading.getOrLoad(-1));
+        stats = loading.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(1, stats.loadSuccessCount());
+        assertEquals(1, stats.loadFailureCount());
+        assertEquals(2, LongStream.of(stats.loadTimeHistogram()).sum());
+        assertTrue(stats.loadTimePercentile(99) >= stats.loadTimePercentile(50));
+
+        ObjectName name = CacheMBeans.register("test", loading::stats);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "LoadSuccessCount"));
+            assertEquals(1L, server.getAttribute(name, "HitCount"));
+        } finally {
+            CacheMBeans.unregister("test");
+        }
+        assertThrows(UnsupportedOperationException.class, () -> new ArrayLfuCache<Integer, String>(10).recordStats());
+    }
+
+    @Test
+    void testCacheRemovalListener() throws Exception {
+        List<String> removals = new ArrayList<>();
+        RemovalListener<Integer, String> listener = (key, value, cause) -> removals.add(key + "=" + value + " " + cause);
+        for (CacheDeletionStrategy strategy : Arrays.asList(CacheDeletionStrategy.LRU, CacheDeletionStrategy.LFU)) {
+            removals.clear();
+            Cache<Integer, String> cache = new Cache<>(2, strategy);
+            cache.setRemovalListener(listener);
+            cache.put(1, "1");
+            cache.put(1, "2");
+            cache.put(2, "2");
+            cache.get(1);
+            cache.get(1);
+            cache.put(3, "3");
+            cache.remove(1);
+            cache.clear();
+            assertEquals(Arrays.asList("1=1 REPLACED", "2=2 SIZE", "1=2 EXPLICIT", "3=3 EXPLICIT"),
+                    removals, strategy.toString());
+        }
+
+        // the removals through the views are reported and counted like the explicit ones
+        for (ICache<Integer, String> engine : Arrays.<ICache<Integer, String>>asList(
+                new LruCache<>(10), new AdaptiveCache<>(10))) {
+            removals.clear();
+            engine.setRemovalListener(listener);
+            engine.recordStats();
+            for (int i = 0; i < 4; i++) {
+                engine.put(i, String.valueOf(i));
+            }
+            Iterator<Integer> it = engine.keySet().iterator();
+            assertEquals(0, it.next());
+            it.remove();
+            assertEquals(1, it.next());
+            assertTrue(engine.keySet().remove(1));
+            assertTrue(engine.values().removeIf("2"::equals));
+            assertEquals(Collections.singleton(3), engine.keySet());
+            assertEquals(Arrays.asList("0=0 EXPLICIT", "1=1 EXPLICIT", "2=2 EXPLICIT"), removals);
+            assertEquals(3, engine.stats().removeCount());
+        }
+
+        removals.clear();
+        long[] time = {0};
+        ExpiringCache<Integer, String> expiring = new ExpiringCache<>(new LruCache<>(10, 1.5f), 1, 0,
+                TimeUnit.SECONDS, () -> time[0]);
+        expiring.setRemovalListener(listener);
+        expiring.put(1, "1");
+        expiring.put(2, "2");
+        time[0] += TimeUnit.SECONDS.toNanos(2);
+        expiring.cleanUp();
+        assertEquals(Arrays.asList("1=1 EXPIRED", "2=2 EXPIRED"), removals);
+
+        // the listener of a concurrent cache is called without holding the locks
+        Cache<Integer, String> striped = new Cache<>(16, CacheDeletionStrategy.LRU, CacheConcurrencyMode.STRIPED);
+        Cache<Integer, String> buffered = new Cache<>(16, CacheDeletionStrategy.LRU, CacheConcurrencyMode.BUFFERED);
+        for (Cache<Integer, String> cache : Arrays.asList(striped, buffered)) {
+            AtomicInteger evictions = new AtomicInteger();
+            cache.setRemovalListener((key, value, cause) -> {
+                assertDoesNotThrow(() -> CompletableFuture.runAsync(() -> cache.remove(-key))
+                        .get(10, TimeUnit.SECONDS));
+                evictions.incrementAndGet();
+            });
+            for (int i = 1; i <= 32; i++) {
+                cache.put(i, String.valueOf(i));
+            }
+            assertTrue(evictions.get() >= 16);
+            cache.setRemovalListener(null);
+        }
+
+        List<String> batched = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            LruCache<Integer, String> lru = new LruCache<>(2);
+            lru.setRemovalListener(RemovalListener.async((key, value, cause) -> batched.add(key + " " + cause),
+                    executor));
+            for (int i = 0; i < 10; i++) {
+                lru.put(i, String.valueOf(i));
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList("0 SIZE", "1 SIZE", "2 SIZE", "3 SIZE", "4 SIZE", "5 SIZE", "6 SIZE", "7 SIZE"),
+                batched);
+    }
+
+    @Test
+    void testCacheArc() {
+        Cache<Integer, Integer> cache = new Cache<>(10, CacheDeletionStrategy.ARC);
+        for (int i = 0; i < 5; i++) {
+            cache.put(i, i);
+            assertEquals(i, cache.get(i));
+        }
+        // a scan of keys seen once does not flush the keys seen twice
+        for (int i = 100; i < 200; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.get(i));
+        }
+
+        ArcCache<Integer, Integer> arc = new ArcCache<>(4);
+        for (int i = 0; i < 4; i++) {
+            arc.put(i, i);
+            arc.get(i);
+        }
+        arc.put(4, 4);
+        arc.put(5, 5);
+        assertEquals(0, arc.target());
+        // the key evicted from the recent list comes back, so the recent list grows
+        arc.put(6, 6);
+        arc.put(4, 4);
+        assertTrue(arc.target() > 0);
+        assertTrue(arc.containsKey(4));
+        assertEquals(4, arc.size());
+    }
+
+    @Test
+    void testCacheS3Fifo() {
+        Cache<Integer, Integer> cache = new Cache<>(10, CacheDeletionStrategy.S3_FIFO);
+        for (int i = 0; i < 5; i++) {
+            cache.put(i, i);
+            assertEquals(i, cache.get(i));
+        }
+        // a scan passes through the small queue, the entries read since the insertion move to the main queue
+        for (int i = 100; i < 200; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.get(i));
+        }
+
+        S3FifoCache<Integer, Integer> s3Fifo = new S3FifoCache<>(10);
+        for (int i = 0; i < 11; i++) {
+            s3Fifo.put(i, i);
+        }
+        assertFalse(s3Fifo.containsKey(0));
+        // the key remembered by the ghost queue goes straight to the main queue
+        s3Fifo.put(0, 0);
+        for (int i = 100; i < 120; i++) {
+            s3Fifo.put(i, i);
+        }
+        assertTrue(s3Fifo.containsKey(0));
+    }
+
+    @Test
+    void testCacheClockPro() {
+        Cache<Integer, Integer> cache = new Cache<>(10, CacheDeletionStrategy.CLOCK_PRO);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.get(i));
+        }
+        // a scan passes through the cold entries, the referenced ones become hot
+        for (int i = 100; i < 200; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.get(i));
+        }
+
+        ClockProCache<Integer, Integer> clockPro = new ClockProCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            clockPro.put(i, i);
+        }
+        // the hits do not modify the structure
+        for (Integer key : clockPro.keySet()) {
+            assertEquals(key, clockPro.get(key));
+        }
+        clockPro.put(10, 10);
+        assertEquals(10, clockPro.size());
+        int coldTarget = clockPro.coldTarget();
+        for (int i = 20; i < 30; i++) {
+            clockPro.put(i, i);
+        }
+        // the key evicted while being tested comes back, so more cold entries are targeted
+        Integer evicted = null;
+        for (int i = 20; i < 30 && evicted == null; i++) {
+            if (!clockPro.containsKey(i)) {
+                evicted = i;
+            }
+        }
+        assertNotNull(evicted);
+        clockPro.put(evicted, evicted);
+        assertTrue(clockPro.coldTarget() > coldTarget);
+        assertEquals(10, clockPro.size());
+    }
+
+    @Test
+    void testCacheSimulator() throws Exception {
+        Path text = Files.createTempFile("trace", ".txt");
+        Path binary = Files.createTempFile("trace", ".bin");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 200_000; i++) {
+                int key = ThreadLocalRandom.current().nextInt(i % 2 == 0 ? 100 : 5000);
+                lines.add(i % 3 == 0 ? "key" + key : Integer.toString(key));
+            }
+            lines.add("");
+            Files.write(text, lines, StandardCharsets.UTF_8);
+            assertEquals(TraceFormat.TEXT, TraceReader.detectFormat(text));
+            try (TraceReader reader = new TraceReader(text, TraceFormat.TEXT);
+                 TraceWriter writer = new TraceWriter(binary)) {
+                writer.writeAll(reader);
+            }
+            assertEquals(TraceFormat.BINARY, TraceReader.detectFormat(binary));
+
+            List<CacheDeletionStrategy> strategies = Arrays.asList(CacheDeletionStrategy.LRU,
+                    CacheDeletionStrategy.LFU, CacheDeletionStrategy.CLOCK_PRO);
+            int[] capacities = {10, 1000};
+            CacheSimulator simulator = new CacheSimulator(strategies, capacities);
+            List<SimulationResult> textResults;
+            try (TraceReader reader = new TraceReader(text, TraceFormat.TEXT)) {
+                textResults = simulator.run(reader);
+            }
+            List<SimulationResult> binaryResults;
+            try (TraceReader reader = new TraceReader(binary, TraceFormat.BINARY)) {
+                binaryResults = simulator.run(reader);
+            }
+            assertEquals(6, textResults.size());
+            for (int i = 0; i < textResults.size(); i++) {
+                SimulationResult r = textResults.get(i);
+                assertEquals(strategies.get(i / 2), r.strategy());
+                assertEquals(capacities[i % 2], r.capacity());
+                assertEquals(200_000, r.requestCount());
+                assertEquals(r.missCount() - r.capacity(), r.evictionCount());
+                assertEquals(r.hitCount(), binaryResults.get(i).hitCount());
+                assertEquals(r.evictionCount(), binaryResults.get(i).evictionCount());
+            }
+            // the same keys replayed directly give the same hits
+            Cache<Long, Long> lru = new Cache<>(1000, CacheDeletionStrategy.LRU);
+            long hits = 0;
+            try (TraceReader reader = new TraceReader(binary, TraceFormat.BINARY)) {
+                long[] keys = new long[4096];
+                int count;
+                while ((count = reader.read(keys)) >= 0) {
+                    for (int i = 0; i < count; i++) {
+                        if (lru.get(keys[i]) != null) {
+                            hits++;
+                        } else {
+                            lru.put(keys[i], keys[i]);
+                        }
+                    }
+                }
+            }
+            assertEquals(hits, textResults.get(1).hitCount());
+            assertTrue(CacheSimulator.format(textResults).contains("CLOCK_PRO"));
+
+            assertThrows(IOException.class, () -> new TraceReader(text, TraceFormat.BINARY));
+            assertThrows(IllegalArgumentException.class, () -> new CacheSimulator(strategies, new int[]{0}));
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(binary);
+        }
+    }
+
+    @Test
+    void testCacheAdaptive() {
+        assertThrows(IllegalArgumentException.class, () -> new Cache<>(0, CacheDeletionStrategy.ADAPTIVE));
+
+        AdaptiveCache<Integer, Integer> cache = new AdaptiveCache<>(100);
+        List<RemovalCause> causes = new ArrayList<>();
+        cache.setRemovalListener((key, value, cause) -> causes.add(cause));
+        cache.recordStats();
+        assertEquals(CacheDeletionStrategy.LRU, cache.strategy());
+        // a hot set read twice per round and a scan: only LFU keeps the hot set
+        int scanKey = 1000;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.computeIfAbsent(i % 50, key -> key);
+            }
+            for (int i = 0; i < 200; i++) {
+                cache.computeIfAbsent(scanKey++, key -> key);
+            }
+        }
+        assertEquals(CacheDeletionStrategy.LFU, cache.strategy());
+        assertTrue(cache.containsKey(0));
+        assertEquals(100, cache.size());
+
+        // a new working set: the old frequent keys pin the LFU cache
+        for (int phase = 0; phase < 20; phase++) {
+            for (int i = 0; i < 2000; i++) {
+                cache.computeIfAbsent(100_000 + phase * 1000 + i % 80, key -> key);
+            }
+        }
+        assertEquals(CacheDeletionStrategy.LRU, cache.strategy());
+        assertEquals(100, cache.size());
+        // no entry is dropped or notified by the switches
+        CacheStats stats = cache.stats();
+        assertEquals(stats.missCount() - 100, stats.evictionCount());
+        assertEquals(stats.evictionCount(), causes.size());
+        assertTrue(causes.stream().allMatch(cause -> cause == RemovalCause.SIZE));
+    }
+
+    @Test
+    void testCacheTiered() throws Exception {
+        Path directory = Files.createTempDirectory("tiered");
+        List<RemovalCause> causes = new ArrayList<>();
+        try (TieredCache<Integer, String> cache = new TieredCache<>(10, 1.5f, CacheDeletionStrategy.LRU, directory,
+                Serializer.INTEGER, Serializer.STRING, 8 << 10, 4 << 10, Runnable::run)) {
+            cache.setRemovalListener((key, value, cause) -> causes.add(cause));
+            cache.recordStats();
+            for (int i = 0; i < 100; i++) {
+                assertNull(cache.put(i, "v" + i));
+            }
+            // the evicted entries are spilled to disk instead of being lost
+            assertEquals(100, cache.size());
+            assertEquals(90, cache.diskEntries());
+            // a hit on disk moves the entry back and spills the eldest one
+            assertEquals("v0", cache.get(0));
+            assertEquals(90, cache.diskEntries());
+            assertEquals("v50", cache.put(50, "w50"));
+            assertEquals("w50", cache.get(50));
+            assertEquals("v60", cache.remove(60));
+            assertFalse(cache.containsKey(60));
+            assertEquals(99, cache.entrySet().size());
+            for (Map.Entry<Integer, String> e : cache.entrySet()) {
+                assertEquals(e.getKey() == 50 ? "w50" : "v" + e.getKey(), e.getValue());
+            }
+
+            // the promotions leave dead space, which is compacted
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 100; i++) {
+                    cache.get(i);
+                }
+            }
+            assertEquals(99, cache.size());
+            assertEquals(4 << 10, cache.diskSize());
+            assertEquals(Arrays.asList(RemovalCause.REPLACED, RemovalCause.EXPLICIT), causes);
+
+            // the oldest segment is dropped when the disk is full
+            for (int i = 1000; i < 2000; i++) {
+                cache.put(i, "a long value of the key " + i);
+            }
+            assertEquals(8 << 10, cache.diskSize());
+            assertTrue(cache.containsKey(1999));
+            assertFalse(cache.containsKey(0));
+            assertEquals(1099 - cache.size(), cache.stats().evictionCount());
+            assertEquals(cache.stats().evictionCount(), causes.stream().filter(c -> c == RemovalCause.SIZE).count());
+            assertThrows(UnsupportedOperationException.class, () -> cache.keySet().remove(1999));
+        }
+
+        // the replaced record on disk is not evicted by the spill of its own put
+        List<String> removals = new ArrayList<>();
+        char[] filler = new char[1300];
+        Arrays.fill(filler, 'v');
+        String value = new String(filler);
+        try (TieredCache<Integer, String> cache = new TieredCache<>(1, 1.5f, CacheDeletionStrategy.LRU, directory,
+                Serializer.INTEGER, Serializer.STRING, 8 << 10, 4 << 10, Runnable::run)) {
+            cache.setRemovalListener((key, v, cause) -> removals.add(key + " " + cause));
+            // three records per segment, the first segment holds the keys 0, 1 and 2
+            for (int i = 0; i <= 6; i++) {
+                cache.put(i, i + value);
+            }
+            assertEquals(6, cache.diskEntries());
+            assertEquals(0 + value, cache.put(0, "w"));
+            assertEquals(Arrays.asList("1 SIZE", "2 SIZE", "0 REPLACED"), removals);
+            assertEquals("w", cache.get(0));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testCacheSpring() throws Exception {
+        // the auto-configured manager replaces the unbounded ConcurrentMapCacheManager
+        assertTrue(cacheManager instanceof SpringCacheManager);
+        assertNotNull(cacheManager.getCache("dynamic"));
+
+        CachingProperties properties = new CachingProperties();
+        CachingProperties.Spec spec = new CachingProperties.Spec();
+        spec.setCapacity(2);
+        spec.setStrategy(CacheDeletionStrategy.LFU);
+        spec.setConcurrencyMode(CacheConcurrencyMode.NONE);
+        properties.getCaches().put("lfu", spec);
+        properties.getCaches().put("lru", new CachingProperties.Spec());
+        properties.setDynamic(false);
+        SpringCacheManager manager = new SpringCacheManager(properties);
+        manager.initializeCaches();
+        assertEquals(new HashSet<>(Arrays.asList("lfu", "lru")), new HashSet<>(manager.getCacheNames()));
+        assertNull(manager.getCache("missing"));
+
+        org.springframework.cache.Cache cache = manager.getCache("lfu");
+        assertNotNull(cache);
+        cache.put(1, "1");
+        cache.put(2, null);
+        assertEquals("1", cache.get(1, String.class));
+        assertNotNull(cache.get(2));
+        assertNull(cache.get(2).get());
+        // the least frequently used key is evicted
+        cache.put(3, "3");
+        assertEquals(2, ((ICache<?, ?>) cache.getNativeCache()).size());
+        assertNull(cache.get(1));
+        assertEquals("3", cache.putIfAbsent(3, "three").get());
+        assertTrue(cache.evictIfPresent(3));
+        assertFalse(cache.evictIfPresent(3));
+        // the settings missing in the named cache are taken from the defaults
+        cache = manager.getCache("lru");
+        for (int i = 0; i < 2000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(1000, ((ICache<?, ?>) cache.getNativeCache()).size());
+
+        // the concurrent loads of a key share a single call
+        org.springframework.cache.Cache loading = manager.getCache("lru");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> loading.get("key", () -> {
+                    loads.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return "value";
+                })));
+            }
+            started.await();
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("value", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertNull(loading.get("null", () -> null));
+        assertNotNull(loading.get("null"));
+
+        // the failures are not cached
+        assertThrows(org.springframework.cache.Cache.ValueRetrievalException.class, () ->
+                loading.get("failed", () -> {
+                    throw new IOException("Unavailable");
+                })
+        );
+        assertNull(loading.get("failed"));
+        assertTrue(loading.invalidate());
+        assertFalse(loading.invalidate());
+    }
+
+    @Test
+    void testCacheLongKeys() {
+        assertThrows(IllegalArgumentException.class, () ->
+                Cache.newLongCache(0, CacheDeletionStrategy.LRU)
+        );
+        assertThrows(IllegalArgumentException.class, () ->
+                Cache.newLongCache(10, CacheDeletionStrategy.W_TINY_LFU)
+        );
+
+        ILongCache<String> lru = Cache.newLongCache(2, CacheDeletionStrategy.LRU);
+        assertNull(lru.put(1L, "1"));
+        assertNull(lru.put(2L, "2"));
+        assertEquals("1", lru.get(1L));
+        assertNull(lru.put(3L, "3"));
+        assertNull(lru.get(2L));
+        assertEquals("3", lru.put(3L, "4"));
+        assertNull(lru.put(4L, "5"));
+        assertNull(lru.get(1L));
+        assertEquals("4", lru.get(3L));
+        assertEquals("5", lru.get(Long.valueOf(4L)));
+        assertEquals("5", lru.remove(4L));
+
+        ILongCache<String> lfu = Cache.newLongCache(2, CacheDeletionStrategy.LFU);
+        assertNull(lfu.put(1L, "1"));
+        assertNull(lfu.put(2L, "2"));
+        assertEquals("1", lfu.get(1L));
+        assertNull(lfu.put(3L, "3"));
+        assertNull(lfu.get(2L));
+        assertEquals("3", lfu.put(3L, "4"));
+        assertNull(lfu.put(4L, "5"));
+        assertNull(lfu.get(1L));
+        assertEquals("4", lfu.get(3L));
+        assertEquals("5", lfu.get(4L));
+        assertEquals("4", lfu.remove(3L));
+        assertEquals("5", lfu.remove(Long.valueOf(4L)));
+        assertTrue(lfu.isEmpty());
+
+        // the slots of removed keys are reused
+        ILongCache<String> cache = Cache.newLongCache(100, CacheDeletionStrategy.LFU);
+        for (long key = 0; key <= 1000; key++) {
+            cache.put(key * 31, "v");
+            if (key % 3 == 0) {
+                cache.remove(key * 31);
+            }
+        }
+        assertEquals(100, cache.size());
+        cache.keySet().removeIf(key -> key % 2 == 0);
+        assertTrue(cache.keySet().stream().allMatch(key -> key % 2 != 0));
+        assertEquals(cache.size(), cache.keySet().stream().count());
+    }
+
+    @Test
+    void testCacheLfuAging() {
+        for (LfuAgingPolicy policy : LfuAgingPolicy.values()) {
+            LfuCache<Integer, Integer> cache = new LfuCache<>(2, 1.5f, policy, 4);
+            // the key was hot in the past
+            cache.put(0, 0);
+            for (int i = 0; i < 5; i++) {
+                cache.get(0);
+            }
+            // the traffic pattern shifts to keys which are read twice
+            for (int key = 1; key <= 20; key++) {
+                cache.put(key, key);
+                assertEquals(key, cache.get(key));
+            }
+            if (policy == LfuAgingPolicy.NONE) {
+                assertTrue(cache.containsKey(0), "policy: " + policy);
+            } else {
+                assertFalse(cache.containsKey(0), "policy: " + policy);
+            }
+            assertTrue(cache.containsKey(20), "policy: " + policy);
+            assertEquals(20, cache.remove(20));
+            assertEquals(1, cache.size());
+        }
+
+        // the cache age grows even if the new keys are evicted before their first hit
+        LfuCache<Integer, Integer> cache = new LfuCache<>(10, 1.5f, LfuAgingPolicy.DYNAMIC);
+        for (int key = 0; key < 5; key++) {
+            cache.put(key, key);
+            for (int i = 0; i < 1000; i++) {
+                cache.get(key);
+            }
+        }
+        for (int i = 0; i < 100_000; i++) {
+            int key = 100 + i % 16;
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        for (int key = 0; key < 5; key++) {
+            assertFalse(cache.containsKey(key), "key: " + key);
+        }
+    }
+
+    @Test
+    void testCacheWTinyLfu() {
+        Cache<Integer, Integer> cache = new Cache<>(100, CacheDeletionStrategy.W_TINY_LFU);
+        // make the keys popular
+        for (int i = 0; i < 10; i++) {
+            for (int key = 0; key < 100; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+        }
+        assertEquals(100, cache.size());
+        // a scan of one-hit wonders must not flush the popular keys
+        for (int key = 1000; key < 2000; key++) {
+            assertNull(cache.put(key, key));
+        }
+        assertEquals(100, cache.size());
+        int hits = 0;
+        for (int key = 0; key < 100; key++) {
+            if (cache.containsKey(key)) {
+                hits++;
+            }
+        }
+        assertTrue(hits >= 95, "hits: " + hits);
+        assertEquals(100, cache.keySet().stream().count());
+        Integer key = cache.keySet().iterator().next();
+        assertEquals(key, cache.remove(key));
+        assertNull(cache.get(key));
+        assertEquals(99, cache.size());
+
+        // the iteration continues after a removal through the iterator
+        WTinyLfuCache<Integer, Integer> engine = new WTinyLfuCache<>(10, 1.5f);
+        for (int i = 0; i < 10; i++) {
+            engine.put(i, i);
+        }
+        assertTrue(engine.keySet().removeIf(k -> k % 2 == 0));
+        assertEquals(5, engine.size());
+        assertTrue(engine.keySet().stream().allMatch(k -> k % 2 != 0));
+        Iterator<Integer> it = engine.keySet().iterator();
+        it.next();
+        engine.remove(9);
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+
+    @Test
+    void testCacheStriped() throws Exception {
+        // small caches consist of a single segment and behave like the underlying engine
+        Cache<Integer, Integer> lru = new Cache<>(2, CacheDeletionStrategy.LRU, CacheConcurrencyMode.STRIPED);
+        assertNull(lru.put(1, 1));
+        assertNull(lru.put(2, 2));
+        assertEquals(1, lru.get(1));
+        assertNull(lru.put(3, 3));
+        assertNull(lru.get(2));
+        assertEquals(1, lru.putIfAbsent(1, 10));
+
+        for (CacheDeletionStrategy strategy : new CacheDeletionStrategy[]{
+                CacheDeletionStrategy.LRU, CacheDeletionStrategy.LFU}) {
+            Cache<Integer, Integer> cache = new Cache<>(1024, strategy, CacheConcurrencyMode.STRIPED);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    futures.add(executor.submit(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < 100_000; i++) {
+                            int key = random.nextInt(4096);
+                            if (random.nextBoolean()) {
+                                cache.put(key, key);
+                            } else {
+                                Integer value = cache.get(key);
+                                if (value != null) {
+                                    assertEquals(key, value);
+                                }
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertTrue(cache.size() <= 1024);
+            assertEquals(cache.size(), cache.keySet().stream().count());
+            cache.keySet().removeIf(key -> key % 2 == 0);
+            assertTrue(cache.keySet().stream().allMatch(key -> key % 2 == 1));
+        }
+    }
+
+    @Test
+    void testCacheBuffered() throws Exception {
+        assertThrows(IllegalArgumentException.class, () ->
+                new Cache<>(10, CacheDeletionStrategy.LFU, CacheConcurrencyMode.BUFFERED)
+        );
+
+        // the recorded reads are applied before every write, so a single thread observes the exact LRU order
+        Cache<Integer, Integer> cache = new Cache<>(2, CacheDeletionStrategy.LRU, CacheConcurrencyMode.BUFFERED);
+        assertNull(cache.put(1, 1));
+        assertNull(cache.put(2, 2));
+        assertEquals(1, cache.get(1));
+        assertNull(cache.put(3, 3));
+        assertNull(cache.get(2));
+        assertEquals(3, cache.put(3, 4));
+        assertNull(cache.put(4, 5));
+        assertNull(cache.get(1));
+        assertEquals(4, cache.get(3));
+        assertEquals(5, cache.get(4));
+        assertEquals(5, cache.remove(4));
+
+        Cache<Integer, Integer> shared = new Cache<>(1024, CacheDeletionStrategy.LRU, CacheConcurrencyMode.BUFFERED);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100_000; i++) {
+                        int key = random.nextInt(4096);
+                        if (random.nextInt(20) == 0) {
+                            shared.put(key, key);
+                        } else {
+                            Integer value = shared.get(key);
+                            if (value != null) {
+                                assertEquals(key, value);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(shared.size() <= 1024);
+        assertEquals(shared.size(), shared.keySet().stream().count());
     }
 }